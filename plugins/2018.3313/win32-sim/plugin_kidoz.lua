@@ -15,6 +15,9 @@ local lib = Library:new{ name="plugin.kidoz", publisherId="com.coronalabs", vers
 --    PLUGIN_NAME:showPopup()
 --    
 
+-- kidoz.state is only kept up to date on devices
+lib.state = { banner="idle", interstitial="idle", rewardedVideo="idle" }
+
 local function showWarning(functionName)
     print( functionName .. " WARNING: The KIDOZ plugin is only supported on Android & iOS devices. Please build for device");
 end
@@ -27,6 +30,10 @@ function lib.load()
     showWarning("kidoz.load()")
 end
 
+function lib.preload()
+    showWarning("kidoz.preload()")
+end
+
 function lib.isLoaded()
     showWarning("kidoz.isLoaded()")
 end
@@ -39,6 +46,22 @@ function lib.hide()
     showWarning("kidoz.hide()")
 end
 
+function lib.start()
+    showWarning("kidoz.start()")
+end
+
+function lib.getMetrics()
+    showWarning("kidoz.getMetrics()")
+end
+
+function lib.addEventListener()
+    showWarning("kidoz.addEventListener()")
+end
+
+function lib.removeEventListener()
+    showWarning("kidoz.removeEventListener()")
+end
+
 -------------------------------------------------------------------------------
 -- END
 -------------------------------------------------------------------------------
@@ -0,0 +1,128 @@
+//
+// EventDispatchBenchmark.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package plugin.kidoz;
+
+import android.util.Log;
+
+import com.naef.jnlua.JavaFunction;
+import com.naef.jnlua.LuaState;
+import com.naef.jnlua.LuaTable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one ad event, from the SDK callback handing it to the plugin until the Lua listener returns.
+ * <p/>
+ * Every invocation dispatches a frame's worth of events and then runs the runtime tasks, so batched and
+ * unbatched delivery are compared at the same event rate. "displayed" events are written to the event
+ * journal and acknowledged after delivery, "loaded" events are not journaled. Without a subscription
+ * the listener has unsubscribed from the phase, so the events are dropped before they are queued.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EventDispatchBenchmark
+{
+    private static final int EVENTS_PER_FRAME = 16;
+
+    private static final MethodHandle DISPATCH_LUA_EVENT;
+    private static final MethodHandle EVENT_QUEUE;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(LuaLoader.class, MethodHandles.lookup());
+            DISPATCH_LUA_EVENT = lookup.findVirtual(LuaLoader.class, "dispatchLuaEvent", MethodType.methodType(void.class, KidozEvent.class));
+            EVENT_QUEUE = lookup.findStaticGetter(LuaLoader.class, "eventQueue", EventQueue.class);
+        }
+        catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    @Param({ "false", "true" })
+    public boolean batchEvents;
+
+    @Param({ "loaded", "displayed" })
+    public String phase;
+
+    @Param({ "true", "false" })
+    public boolean subscribed;
+
+    private File filesDir;
+    private PluginHarness harness;
+    private EventQueue eventQueue;
+    private int delivered;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable
+    {
+        Log.setEnabled(false);
+
+        filesDir = BenchmarkFiles.createDirectory();
+        harness = new PluginHarness(filesDir);
+        eventQueue = (EventQueue)EVENT_QUEUE.invokeExact();
+
+        JavaFunction listener = new JavaFunction() {
+            @Override
+            public int invoke(LuaState L)
+            {
+                delivered++;
+                return 0;
+            }
+        };
+
+        LuaTable options = new LuaTable()
+                .set("publisherID", "benchmark")
+                .set("securityToken", "benchmark")
+                .set("batchEvents", batchEvents);
+
+        harness.call("init", listener, options);
+        harness.runFrame();
+
+        if (! subscribed) {
+            harness.call("removeEventListener", "interstitial", phase, listener);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        harness.close();
+        BenchmarkFiles.delete(filesDir);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS_PER_FRAME)
+    public int dispatch() throws Throwable
+    {
+        for (int i = 0; i < EVENTS_PER_FRAME; i++) {
+            DISPATCH_LUA_EVENT.invokeExact(harness.loader, eventQueue.obtain(phase, "interstitial"));
+        }
+
+        harness.runtime.runPendingTasks();
+
+        return delivered;
+    }
+}
@@ -0,0 +1,221 @@
+//
+// LuaBridgeBenchmark.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package plugin.kidoz;
+
+import android.util.Log;
+
+import com.naef.jnlua.JavaFunction;
+import com.naef.jnlua.LuaState;
+import com.naef.jnlua.LuaTable;
+import com.naef.jnlua.NamedJavaFunction;
+
+import com.ansca.corona.CoronaLua;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the Lua facing functions on the runtime thread: argument and option parsing, validation,
+ * and the hand off to the UI thread, which runs inline in the harness.
+ * <p/>
+ * After the first call, load() measures the single flight path, since the stand-in SDK never finishes
+ * loading and every later call joins the load in flight. The same holds for preload(), which is
+ * compared against warming the three ad types up with one load() each. Since the UI thread hops run
+ * inline here, that comparison covers argument parsing and validation only.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LuaBridgeBenchmark
+{
+    private static final MethodHandle GET_CORONA_LISTENER;
+    private static final MethodHandle SET_CORONA_LISTENER;
+    private static final MethodHandle VALID_AD_TYPES;
+    private static final MethodHandle AD_TYPE_INDEX;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(LuaLoader.class, MethodHandles.lookup());
+            GET_CORONA_LISTENER = lookup.findStaticGetter(LuaLoader.class, "coronaListener", int.class);
+            SET_CORONA_LISTENER = lookup.findStaticSetter(LuaLoader.class, "coronaListener", int.class);
+            VALID_AD_TYPES = lookup.findStaticGetter(LuaLoader.class, "validAdTypes", List.class);
+            AD_TYPE_INDEX = lookup.findStatic(LuaLoader.class, "adTypeIndex", MethodType.methodType(int.class, String.class));
+        }
+        catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private File filesDir;
+    private PluginHarness harness;
+    private LuaState L;
+
+    private JavaFunction listener;
+    private LuaTable initOptions;
+    private LuaTable bannerOptions;
+    private LuaTable preloadSpec;
+    private List<String> validAdTypes;
+
+    private NamedJavaFunction init;
+    private NamedJavaFunction load;
+    private NamedJavaFunction preload;
+    private NamedJavaFunction isLoaded;
+
+    // not a constant, so the lookups cannot be folded
+    public String adType = "rewardedVideo";
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Throwable
+    {
+        Log.setEnabled(false);
+
+        filesDir = BenchmarkFiles.createDirectory();
+        harness = new PluginHarness(filesDir);
+        L = harness.L;
+
+        listener = new JavaFunction() {
+            @Override
+            public int invoke(LuaState L)
+            {
+                return 0;
+            }
+        };
+
+        initOptions = new LuaTable()
+                .set("publisherID", "benchmark")
+                .set("securityToken", "benchmark")
+                .set("poolSize", new LuaTable().set("interstitial", 2).set("rewardedVideo", 2))
+                .set("batchEvents", true);
+
+        bannerOptions = new LuaTable()
+                .set("adPosition", "top");
+
+        preloadSpec = new LuaTable()
+                .set("banner", bannerOptions)
+                .set("interstitial", true)
+                .set("rewardedVideo", true);
+
+        validAdTypes = (List<String>)VALID_AD_TYPES.invokeExact();
+
+        init = harness.function("init");
+        load = harness.function("load");
+        preload = harness.function("preload");
+        isLoaded = harness.function("isLoaded");
+
+        harness.call("init", listener, initOptions);
+        harness.runFrame();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        harness.close();
+        BenchmarkFiles.delete(filesDir);
+    }
+
+    @Benchmark
+    public int init() throws Throwable
+    {
+        // init() only runs once per listener, so forget the previous one
+        CoronaLua.deleteRef(L, (int)GET_CORONA_LISTENER.invokeExact());
+        SET_CORONA_LISTENER.invokeExact(CoronaLua.REFNIL);
+
+        L.setTop(0);
+        L.pushJavaFunction(listener);
+        L.pushTable(initOptions);
+        int results = init.invoke(L);
+
+        harness.runtime.runPendingTasks();
+
+        return results;
+    }
+
+    @Benchmark
+    public int load()
+    {
+        L.setTop(0);
+        L.pushString("interstitial");
+
+        return load.invoke(L);
+    }
+
+    @Benchmark
+    public int loadBanner()
+    {
+        L.setTop(0);
+        L.pushString("banner");
+        L.pushTable(bannerOptions);
+
+        return load.invoke(L);
+    }
+
+    @Benchmark
+    public int preload()
+    {
+        L.setTop(0);
+        L.pushTable(preloadSpec);
+
+        return preload.invoke(L);
+    }
+
+    @Benchmark
+    public int loadEach()
+    {
+        L.setTop(0);
+        L.pushString("banner");
+        L.pushTable(bannerOptions);
+        int results = load.invoke(L);
+
+        L.setTop(0);
+        L.pushString("interstitial");
+        results += load.invoke(L);
+
+        L.setTop(0);
+        L.pushString("rewardedVideo");
+        results += load.invoke(L);
+
+        return results;
+    }
+
+    @Benchmark
+    public int isLoaded()
+    {
+        L.setTop(0);
+        L.pushString(adType);
+
+        return isLoaded.invoke(L);
+    }
+
+    @Benchmark
+    public boolean adTypeListLookup()
+    {
+        return validAdTypes.contains(adType);
+    }
+
+    @Benchmark
+    public int adTypeSwitchLookup() throws Throwable
+    {
+        return (int)AD_TYPE_INDEX.invokeExact(adType);
+    }
+}
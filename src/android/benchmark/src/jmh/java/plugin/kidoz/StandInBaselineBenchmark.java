@@ -0,0 +1,96 @@
+//
+// StandInBaselineBenchmark.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package plugin.kidoz;
+
+import com.naef.jnlua.JavaFunction;
+import com.naef.jnlua.LuaState;
+import com.naef.jnlua.LuaTable;
+
+import com.ansca.corona.CoronaLua;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What the stand-ins themselves cost, to subtract from the plugin benchmarks: the same stack and
+ * event operations the plugin performs, without any plugin code in between.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StandInBaselineBenchmark
+{
+    private final LuaState L = new LuaState();
+    private LuaTable options;
+    private int listener;
+
+    @Setup
+    public void setUp()
+    {
+        options = new LuaTable()
+                .set("publisherID", "benchmark")
+                .set("securityToken", "benchmark")
+                .set("poolSize", new LuaTable().set("interstitial", 2).set("rewardedVideo", 2))
+                .set("batchEvents", true);
+
+        L.pushJavaFunction(new JavaFunction() {
+            @Override
+            public int invoke(LuaState L)
+            {
+                return 0;
+            }
+        });
+        listener = CoronaLua.newRef(L, 1);
+        L.setTop(0);
+    }
+
+    @Benchmark
+    public int iterateOptions()
+    {
+        int seen = 0;
+
+        L.setTop(0);
+        L.pushTable(options);
+
+        for (L.pushNil(); L.next(1); L.pop(1)) {
+            if (L.toString(-2) != null) {
+                seen++;
+            }
+        }
+
+        return seen;
+    }
+
+    @Benchmark
+    public int dispatchEvent() throws Exception
+    {
+        L.setTop(0);
+
+        CoronaLua.newEvent(L, "adsRequest");
+        L.pushString("kidoz");
+        L.setField(-2, "provider");
+        L.pushString("loaded");
+        L.setField(-2, "phase");
+        L.pushString("interstitial");
+        L.setField(-2, "type");
+        L.pushBoolean(false);
+        L.setField(-2, "isError");
+
+        CoronaLua.dispatchEvent(L, listener, 0);
+
+        return L.getTop();
+    }
+}
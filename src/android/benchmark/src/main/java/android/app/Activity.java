@@ -0,0 +1,59 @@
+//
+// Activity.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package android.app;
+
+import android.content.Context;
+
+/**
+ * JVM stand-in. The harness plays the UI thread itself, so UI runnables run right away.
+ * <p/>
+ * Each activity carries a payload the size of a small view hierarchy, so that a leaked one shows in the heap.
+ */
+public class Activity extends Context
+{
+    private static final int PAYLOAD_BYTES = 64 * 1024;
+
+    private final byte[] payload = new byte[PAYLOAD_BYTES];
+    private Application application = null;
+    private boolean destroyed = false;
+
+    public void runOnUiThread(Runnable action)
+    {
+        action.run();
+    }
+
+    public final Application getApplication()
+    {
+        return application;
+    }
+
+    public boolean isDestroyed()
+    {
+        return destroyed;
+    }
+
+    public boolean isFinishing()
+    {
+        return destroyed;
+    }
+
+    // -------------------------------------------------------------------
+    // Stand-in only
+    // -------------------------------------------------------------------
+
+    public void setApplication(Application application)
+    {
+        this.application = application;
+    }
+
+    public void destroy()
+    {
+        destroyed = true;
+    }
+}
@@ -0,0 +1,83 @@
+//
+// Application.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package android.app;
+
+import android.content.Context;
+import android.os.Bundle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JVM stand-in. The harness plays the system and reports activity lifecycle changes itself.
+ */
+public class Application extends Context
+{
+    public interface ActivityLifecycleCallbacks
+    {
+        void onActivityCreated(Activity activity, Bundle savedInstanceState);
+
+        void onActivityStarted(Activity activity);
+
+        void onActivityResumed(Activity activity);
+
+        void onActivityPaused(Activity activity);
+
+        void onActivityStopped(Activity activity);
+
+        void onActivitySaveInstanceState(Activity activity, Bundle outState);
+
+        void onActivityDestroyed(Activity activity);
+    }
+
+    private final List<ActivityLifecycleCallbacks> activityCallbacks = new ArrayList<>();
+
+    public void registerActivityLifecycleCallbacks(ActivityLifecycleCallbacks callback)
+    {
+        activityCallbacks.add(callback);
+    }
+
+    public void unregisterActivityLifecycleCallbacks(ActivityLifecycleCallbacks callback)
+    {
+        activityCallbacks.remove(callback);
+    }
+
+    // -------------------------------------------------------------------
+    // Stand-in only, plays the system moving an activity through its lifecycle
+    // -------------------------------------------------------------------
+
+    public void dispatchActivityCreated(Activity activity)
+    {
+        for (ActivityLifecycleCallbacks callback : new ArrayList<>(activityCallbacks)) {
+            callback.onActivityCreated(activity, null);
+            callback.onActivityStarted(activity);
+        }
+    }
+
+    public void dispatchActivityResumed(Activity activity)
+    {
+        for (ActivityLifecycleCallbacks callback : new ArrayList<>(activityCallbacks)) {
+            callback.onActivityResumed(activity);
+        }
+    }
+
+    public void dispatchActivityDestroyed(Activity activity)
+    {
+        for (ActivityLifecycleCallbacks callback : new ArrayList<>(activityCallbacks)) {
+            callback.onActivityPaused(activity);
+            callback.onActivityStopped(activity);
+        }
+
+        activity.destroy();
+
+        for (ActivityLifecycleCallbacks callback : new ArrayList<>(activityCallbacks)) {
+            callback.onActivityDestroyed(activity);
+        }
+    }
+}
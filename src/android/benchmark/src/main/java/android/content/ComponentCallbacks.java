@@ -0,0 +1,18 @@
+//
+// ComponentCallbacks.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package android.content;
+
+import android.content.res.Configuration;
+
+public interface ComponentCallbacks
+{
+    void onConfigurationChanged(Configuration newConfig);
+
+    void onLowMemory();
+}
@@ -0,0 +1,55 @@
+//
+// Context.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package android.content;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+public class Context
+{
+    private File filesDir = new File(System.getProperty("java.io.tmpdir"));
+    private final List<ComponentCallbacks> componentCallbacks = new ArrayList<>();
+
+    public File getFilesDir()
+    {
+        return filesDir;
+    }
+
+    public Context getApplicationContext()
+    {
+        return this;
+    }
+
+    public void registerComponentCallbacks(ComponentCallbacks callback)
+    {
+        componentCallbacks.add(callback);
+    }
+
+    public void unregisterComponentCallbacks(ComponentCallbacks callback)
+    {
+        componentCallbacks.remove(callback);
+    }
+
+    // stand-in only, plays the system asking the app to trim its memory
+    public void trimMemory(int level)
+    {
+        for (ComponentCallbacks callback : new ArrayList<>(componentCallbacks)) {
+            if (callback instanceof ComponentCallbacks2) {
+                ((ComponentCallbacks2)callback).onTrimMemory(level);
+            }
+        }
+    }
+
+    // stand-in only
+    public void setFilesDir(File directory)
+    {
+        filesDir = directory;
+    }
+}
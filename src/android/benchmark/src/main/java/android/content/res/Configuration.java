@@ -0,0 +1,13 @@
+//
+// Configuration.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package android.content.res;
+
+public class Configuration
+{
+}
@@ -0,0 +1,15 @@
+//
+// Point.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package android.graphics;
+
+public class Point
+{
+    public int x;
+    public int y;
+}
@@ -0,0 +1,58 @@
+//
+// Handler.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package android.os;
+
+public class Handler
+{
+    private final Looper looper;
+
+    public Handler()
+    {
+        this(Looper.myLooper());
+    }
+
+    public Handler(Looper looper)
+    {
+        this.looper = looper;
+    }
+
+    public final Looper getLooper()
+    {
+        return looper;
+    }
+
+    public final boolean post(Runnable r)
+    {
+        looper.enqueue(r, SystemClock.uptimeMillis());
+        return true;
+    }
+
+    public final boolean postDelayed(Runnable r, long delayMillis)
+    {
+        looper.enqueue(r, SystemClock.uptimeMillis() + Math.max(0, delayMillis));
+        return true;
+    }
+
+    public final boolean postAtTime(Runnable r, long uptimeMillis)
+    {
+        looper.enqueue(r, uptimeMillis);
+        return true;
+    }
+
+    public final boolean postAtFrontOfQueue(Runnable r)
+    {
+        looper.enqueue(r, Long.MIN_VALUE);
+        return true;
+    }
+
+    public final void removeCallbacks(Runnable r)
+    {
+        looper.remove(r);
+    }
+}
@@ -0,0 +1,43 @@
+//
+// HandlerThread.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package android.os;
+
+/**
+ * JVM stand-in. No thread is started; the harness runs the looper's messages itself.
+ */
+public class HandlerThread extends Thread
+{
+    private final Looper looper = new Looper();
+
+    public HandlerThread(String name)
+    {
+        super(name);
+    }
+
+    public HandlerThread(String name, int priority)
+    {
+        super(name);
+    }
+
+    @Override
+    public synchronized void start()
+    {
+    }
+
+    public Looper getLooper()
+    {
+        return looper;
+    }
+
+    public boolean quitSafely()
+    {
+        looper.quitSafely();
+        return true;
+    }
+}
@@ -0,0 +1,132 @@
+//
+// Looper.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package android.os;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JVM stand-in holding a message queue that runs only when the harness asks it to, against the
+ * virtual {@link SystemClock}. The harness plays the main thread, so {@link #myLooper()} is always
+ * the main looper.
+ */
+public class Looper
+{
+    // every looper with messages to run, the main looper first
+    private static final List<Looper> loopers = new ArrayList<>();
+    private static final Looper mainLooper = new Looper();
+
+    private final List<Runnable> callbacks = new ArrayList<>();
+    private final List<Long> times = new ArrayList<>();
+    private final MessageQueue queue = new MessageQueue();
+    private boolean quit = false;
+
+    Looper()
+    {
+        loopers.add(this);
+    }
+
+    public static Looper getMainLooper()
+    {
+        return mainLooper;
+    }
+
+    public static Looper myLooper()
+    {
+        return mainLooper;
+    }
+
+    public static MessageQueue myQueue()
+    {
+        return mainLooper.queue;
+    }
+
+    public void quitSafely()
+    {
+        runDue();
+        quit = true;
+        callbacks.clear();
+        times.clear();
+        loopers.remove(this);
+    }
+
+    // -------------------------------------------------------------------
+    // Stand-in only
+    // -------------------------------------------------------------------
+
+    /**
+     * Runs every message due at the current virtual time, then the idle handlers. Returns how many messages ran.
+     */
+    public int runDue()
+    {
+        int count = 0;
+
+        while ((! times.isEmpty()) && (times.get(0) <= SystemClock.uptimeMillis())) {
+            times.remove(0);
+            callbacks.remove(0).run();
+            count++;
+        }
+
+        queue.idle();
+
+        return count;
+    }
+
+    /**
+     * Runs the due messages of every looper, including those of handler threads. Returns how many messages ran.
+     */
+    public static int runAllDue()
+    {
+        int count = 0;
+
+        for (Looper looper : loopers.toArray(new Looper[0])) {
+            count += looper.runDue();
+        }
+
+        return count;
+    }
+
+    /**
+     * Time of the next queued message, or Long.MAX_VALUE if the queue is empty.
+     */
+    public long nextMessageTime()
+    {
+        return times.isEmpty() ? Long.MAX_VALUE : times.get(0);
+    }
+
+    public int size()
+    {
+        return times.size();
+    }
+
+    void enqueue(Runnable callback, long when)
+    {
+        if (quit) {
+            return;
+        }
+
+        int i = times.size();
+        while ((i > 0) && (times.get(i - 1) > when)) {
+            i--;
+        }
+
+        times.add(i, when);
+        callbacks.add(i, callback);
+    }
+
+    void remove(Runnable callback)
+    {
+        for (int i = callbacks.size() - 1; i >= 0; i--) {
+            if (callbacks.get(i) == callback) {
+                callbacks.remove(i);
+                times.remove(i);
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+//
+// MessageQueue.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package android.os;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MessageQueue
+{
+    public interface IdleHandler
+    {
+        boolean queueIdle();
+    }
+
+    private final List<IdleHandler> idleHandlers = new ArrayList<>();
+
+    public void addIdleHandler(IdleHandler handler)
+    {
+        idleHandlers.add(handler);
+    }
+
+    public void removeIdleHandler(IdleHandler handler)
+    {
+        idleHandlers.remove(handler);
+    }
+
+    // runs the idle handlers once, dropping those that return false
+    void idle()
+    {
+        IdleHandler[] handlers = idleHandlers.toArray(new IdleHandler[0]);
+
+        for (IdleHandler handler : handlers) {
+            if (! handler.queueIdle()) {
+                idleHandlers.remove(handler);
+            }
+        }
+    }
+}
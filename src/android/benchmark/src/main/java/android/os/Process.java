@@ -0,0 +1,15 @@
+//
+// Process.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package android.os;
+
+public class Process
+{
+    public static final int THREAD_PRIORITY_DEFAULT    = 0;
+    public static final int THREAD_PRIORITY_BACKGROUND = 10;
+}
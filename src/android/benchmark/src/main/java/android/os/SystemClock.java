@@ -0,0 +1,42 @@
+//
+// SystemClock.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package android.os;
+
+/**
+ * JVM stand-in driven by a virtual clock, so that timers and latencies are deterministic.
+ * Uptime and elapsed real time are the same clock.
+ */
+public class SystemClock
+{
+    private static volatile long now = 0;
+
+    public static long uptimeMillis()
+    {
+        return now;
+    }
+
+    public static long elapsedRealtime()
+    {
+        return now;
+    }
+
+    // -------------------------------------------------------------------
+    // Stand-in only
+    // -------------------------------------------------------------------
+
+    public static void advance(long ms)
+    {
+        now += ms;
+    }
+
+    public static void setTime(long ms)
+    {
+        now = ms;
+    }
+}
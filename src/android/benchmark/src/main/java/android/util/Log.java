@@ -0,0 +1,48 @@
+//
+// Log.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package android.util;
+
+public class Log
+{
+    private static volatile boolean enabled = true;
+
+    public static int d(String tag, String msg)
+    {
+        return print("D", tag, msg);
+    }
+
+    public static int i(String tag, String msg)
+    {
+        return print("I", tag, msg);
+    }
+
+    public static int w(String tag, String msg)
+    {
+        return print("W", tag, msg);
+    }
+
+    public static int e(String tag, String msg)
+    {
+        return print("E", tag, msg);
+    }
+
+    // stand-in only
+    public static void setEnabled(boolean logEnabled)
+    {
+        enabled = logEnabled;
+    }
+
+    private static int print(String level, String tag, String msg)
+    {
+        if (enabled) {
+            System.out.println(level + "/" + tag + ": " + msg);
+        }
+        return 0;
+    }
+}
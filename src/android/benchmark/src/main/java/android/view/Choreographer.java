@@ -0,0 +1,53 @@
+//
+// Choreographer.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package android.view;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JVM stand-in. Frames are produced by the harness through {@link #doFrame(long)}.
+ */
+public class Choreographer
+{
+    public interface FrameCallback
+    {
+        void doFrame(long frameTimeNanos);
+    }
+
+    private static final Choreographer instance = new Choreographer();
+
+    private final List<FrameCallback> callbacks = new ArrayList<>();
+
+    public static Choreographer getInstance()
+    {
+        return instance;
+    }
+
+    public void postFrameCallback(FrameCallback callback)
+    {
+        callbacks.add(callback);
+    }
+
+    public void removeFrameCallback(FrameCallback callback)
+    {
+        callbacks.remove(callback);
+    }
+
+    // stand-in only: runs the callbacks posted before this frame
+    public void doFrame(long frameTimeNanos)
+    {
+        FrameCallback[] frame = callbacks.toArray(new FrameCallback[0]);
+        callbacks.clear();
+
+        for (FrameCallback callback : frame) {
+            callback.doFrame(frameTimeNanos);
+        }
+    }
+}
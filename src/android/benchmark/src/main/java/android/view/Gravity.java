@@ -0,0 +1,18 @@
+//
+// Gravity.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package android.view;
+
+public class Gravity
+{
+    public static final int TOP    = 48;
+    public static final int BOTTOM = 80;
+    public static final int LEFT   = 3;
+    public static final int RIGHT  = 5;
+    public static final int CENTER = 17;
+}
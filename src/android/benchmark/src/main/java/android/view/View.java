@@ -0,0 +1,29 @@
+//
+// View.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package android.view;
+
+public class View
+{
+    public static final int VISIBLE   = 0;
+    public static final int INVISIBLE = 4;
+    public static final int GONE      = 8;
+
+    private ViewParent parent = null;
+
+    public final ViewParent getParent()
+    {
+        return parent;
+    }
+
+    // stand-in only
+    public void setParent(ViewParent parent)
+    {
+        this.parent = parent;
+    }
+}
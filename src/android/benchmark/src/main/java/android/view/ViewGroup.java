@@ -0,0 +1,19 @@
+//
+// ViewGroup.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package android.view;
+
+public class ViewGroup extends View implements ViewParent
+{
+    public void removeView(View view)
+    {
+        if (view.getParent() == this) {
+            view.setParent(null);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+//
+// ViewParent.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package android.view;
+
+public interface ViewParent
+{
+}
@@ -0,0 +1,15 @@
+//
+// RelativeLayout.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package android.widget;
+
+import android.view.View;
+
+public class RelativeLayout extends View
+{
+}
@@ -0,0 +1,15 @@
+//
+// CoronaActivity.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package com.ansca.corona;
+
+import android.app.Activity;
+
+public class CoronaActivity extends Activity
+{
+}
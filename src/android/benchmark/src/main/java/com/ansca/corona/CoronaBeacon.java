@@ -0,0 +1,34 @@
+//
+// CoronaBeacon.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package com.ansca.corona;
+
+import com.naef.jnlua.JavaFunction;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JVM stand-in for the Corona beacon. Nothing is sent; calls are only counted.
+ */
+public class CoronaBeacon
+{
+    public static final String REQUEST    = "request";
+    public static final String IMPRESSION = "impression";
+
+    private static final AtomicLong sent = new AtomicLong();
+
+    public static void sendDeviceDataToBeacon(CoronaRuntimeTaskDispatcher dispatcher, String pluginName, String pluginVersion, String eventType, String placementID, JavaFunction listener)
+    {
+        sent.incrementAndGet();
+    }
+
+    public static long getSentCount()
+    {
+        return sent.get();
+    }
+}
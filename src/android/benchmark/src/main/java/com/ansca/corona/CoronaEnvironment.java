@@ -0,0 +1,58 @@
+//
+// CoronaEnvironment.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package com.ansca.corona;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JVM stand-in for the Corona environment. The harness sets the activity and context.
+ */
+public class CoronaEnvironment
+{
+    private static final List<CoronaRuntimeListener> listeners = new ArrayList<>();
+    private static CoronaActivity activity = null;
+    private static Context applicationContext = null;
+
+    public static void addRuntimeListener(CoronaRuntimeListener listener)
+    {
+        listeners.add(listener);
+    }
+
+    public static CoronaActivity getCoronaActivity()
+    {
+        return activity;
+    }
+
+    public static Context getApplicationContext()
+    {
+        return applicationContext;
+    }
+
+    // -------------------------------------------------------------------
+    // Stand-in only
+    // -------------------------------------------------------------------
+
+    public static void setCoronaActivity(CoronaActivity coronaActivity)
+    {
+        activity = coronaActivity;
+    }
+
+    public static void setApplicationContext(Context context)
+    {
+        applicationContext = context;
+    }
+
+    public static List<CoronaRuntimeListener> getRuntimeListeners()
+    {
+        return listeners;
+    }
+}
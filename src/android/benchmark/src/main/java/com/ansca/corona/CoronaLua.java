@@ -0,0 +1,88 @@
+//
+// CoronaLua.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package com.ansca.corona;
+
+import com.naef.jnlua.JavaFunction;
+import com.naef.jnlua.LuaState;
+import com.naef.jnlua.LuaTable;
+import com.naef.jnlua.LuaType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JVM stand-in for Corona's Lua helpers. References point into a registry kept here, and listeners
+ * must be Java functions, which receive the event table on top of the stack.
+ */
+public class CoronaLua
+{
+    public static final int REFNIL = -1;
+    public static final int NOREF  = -2;
+
+    private static final List<Object> registry = new ArrayList<>();
+    private static final List<Integer> freeRefs = new ArrayList<>();
+
+    // the event table is consumed by dispatchEvent() before the next one is created, so it is reused
+    private static final LuaTable eventTable = new LuaTable();
+
+    public static int newRef(LuaState L, int index)
+    {
+        Object value = (L.type(index) == LuaType.FUNCTION) ? L.toJavaFunction(index) : L.toTable(index);
+
+        if (! freeRefs.isEmpty()) {
+            int ref = freeRefs.remove(freeRefs.size() - 1);
+            registry.set(ref, value);
+            return ref;
+        }
+
+        registry.add(value);
+        return registry.size() - 1;
+    }
+
+    /**
+     * Stand-in only: returns the value a reference points to, or null.
+     */
+    public static Object getRef(int ref)
+    {
+        return ((ref >= 0) && (ref < registry.size())) ? registry.get(ref) : null;
+    }
+
+    public static void deleteRef(LuaState L, int ref)
+    {
+        if ((ref >= 0) && (ref < registry.size()) && (registry.get(ref) != null)) {
+            registry.set(ref, null);
+            freeRefs.add(ref);
+        }
+    }
+
+    public static boolean isListener(LuaState L, int index, String eventName)
+    {
+        return (L.type(index) == LuaType.FUNCTION) || (L.type(index) == LuaType.TABLE);
+    }
+
+    public static void newEvent(LuaState L, String eventName)
+    {
+        eventTable.clear();
+        L.pushTable(eventTable);
+        L.pushString(eventName);
+        L.setField(-2, "name");
+    }
+
+    public static void dispatchEvent(LuaState L, int ref, int resultCount) throws Exception
+    {
+        int base = L.getTop() - 1;
+        Object listener = getRef(ref);
+
+        if (listener instanceof JavaFunction) {
+            ((JavaFunction)listener).invoke(L);
+        }
+
+        L.setTop(base);
+    }
+}
@@ -0,0 +1,19 @@
+//
+// CoronaLuaEvent.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package com.ansca.corona;
+
+public class CoronaLuaEvent
+{
+    public static final String NAME_KEY     = "name";
+    public static final String PROVIDER_KEY = "provider";
+    public static final String PHASE_KEY    = "phase";
+    public static final String TYPE_KEY     = "type";
+    public static final String ISERROR_KEY  = "isError";
+    public static final String RESPONSE_KEY = "response";
+}
@@ -0,0 +1,69 @@
+//
+// CoronaRuntime.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package com.ansca.corona;
+
+import com.naef.jnlua.LuaState;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CoronaRuntime
+{
+    private final LuaState luaState;
+    private final List<CoronaRuntimeTaskDispatcher> dispatchers = new ArrayList<>();
+
+    public CoronaRuntime(LuaState luaState)
+    {
+        this.luaState = luaState;
+    }
+
+    public LuaState getLuaState()
+    {
+        return luaState;
+    }
+
+    public boolean isRunning()
+    {
+        return true;
+    }
+
+    // -------------------------------------------------------------------
+    // Stand-in only
+    // -------------------------------------------------------------------
+
+    void addDispatcher(CoronaRuntimeTaskDispatcher dispatcher)
+    {
+        dispatchers.add(dispatcher);
+    }
+
+    /**
+     * Runs the tasks queued by every dispatcher created for this runtime, as the runtime does once per frame.
+     * Returns how many tasks ran.
+     */
+    public int runPendingTasks()
+    {
+        int count = 0;
+
+        for (CoronaRuntimeTaskDispatcher dispatcher : dispatchers) {
+            count += dispatcher.runPendingTasks();
+        }
+
+        return count;
+    }
+
+    /**
+     * Makes every dispatcher of this runtime drop tasks, as they do while the runtime is unavailable.
+     */
+    public void setAvailable(boolean available)
+    {
+        for (CoronaRuntimeTaskDispatcher dispatcher : dispatchers) {
+            dispatcher.setRuntimeAvailable(available);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+//
+// CoronaRuntimeListener.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package com.ansca.corona;
+
+public interface CoronaRuntimeListener
+{
+    void onLoaded(CoronaRuntime runtime);
+    void onStarted(CoronaRuntime runtime);
+    void onSuspended(CoronaRuntime runtime);
+    void onResumed(CoronaRuntime runtime);
+    void onExiting(CoronaRuntime runtime);
+}
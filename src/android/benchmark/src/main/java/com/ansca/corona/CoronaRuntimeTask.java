@@ -0,0 +1,14 @@
+//
+// CoronaRuntimeTask.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package com.ansca.corona;
+
+public interface CoronaRuntimeTask
+{
+    void executeUsing(CoronaRuntime runtime);
+}
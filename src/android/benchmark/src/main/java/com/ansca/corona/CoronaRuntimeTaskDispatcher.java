@@ -0,0 +1,75 @@
+//
+// CoronaRuntimeTaskDispatcher.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package com.ansca.corona;
+
+import java.util.ArrayDeque;
+
+/**
+ * JVM stand-in for the runtime task dispatcher. Tasks are queued until {@link #runPendingTasks()},
+ * which plays the part of the runtime picking them up at the start of a frame.
+ */
+public class CoronaRuntimeTaskDispatcher
+{
+    private final CoronaRuntime runtime;
+    private final ArrayDeque<CoronaRuntimeTask> tasks = new ArrayDeque<>();
+    private boolean runtimeAvailable = true;
+
+    public CoronaRuntimeTaskDispatcher(CoronaRuntime runtime)
+    {
+        this.runtime = runtime;
+        runtime.addDispatcher(this);
+    }
+
+    public void send(CoronaRuntimeTask task)
+    {
+        if (runtimeAvailable) {
+            tasks.add(task);
+        }
+    }
+
+    public boolean isRuntimeAvailable()
+    {
+        return runtimeAvailable;
+    }
+
+    public boolean isRuntimeUnavailable()
+    {
+        return ! runtimeAvailable;
+    }
+
+    // -------------------------------------------------------------------
+    // Stand-in only
+    // -------------------------------------------------------------------
+
+    public void setRuntimeAvailable(boolean available)
+    {
+        runtimeAvailable = available;
+    }
+
+    public int getPendingTaskCount()
+    {
+        return tasks.size();
+    }
+
+    /**
+     * Executes every queued task, including tasks queued while running, and returns how many ran.
+     */
+    public int runPendingTasks()
+    {
+        int count = 0;
+        CoronaRuntimeTask task;
+
+        while ((task = tasks.poll()) != null) {
+            task.executeUsing(runtime);
+            count++;
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,14 @@
+//
+// JavaFunction.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package com.naef.jnlua;
+
+public interface JavaFunction
+{
+    int invoke(LuaState L);
+}
@@ -0,0 +1,354 @@
+//
+// LuaState.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package com.naef.jnlua;
+
+import com.ansca.corona.CoronaLua;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * JVM stand-in for the JNLua state, implementing the subset of the stack API the plugin uses.
+ * <p/>
+ * Values live in parallel arrays so that pushing numbers and booleans does not box. Tables are
+ * {@link LuaTable} instances with string keys, which is all the plugin ever reads or writes.
+ * Nothing here is thread safe, just like the real Lua state.
+ */
+public class LuaState
+{
+    public static final int REGISTRYINDEX = -10000;
+
+    private static final int MAX_STACK = 256;
+
+    private final LuaType[] types = new LuaType[MAX_STACK];
+    private final double[] numbers = new double[MAX_STACK];
+    private final Object[] refs = new Object[MAX_STACK];
+    private int top = 0;
+
+    private final Map<String, NamedJavaFunction> registered = new HashMap<>();
+
+    // -------------------------------------------------------------------
+    // Stand-in only
+    // -------------------------------------------------------------------
+
+    /**
+     * Returns a function registered through {@link #register(String, NamedJavaFunction[])}.
+     */
+    public NamedJavaFunction getRegisteredFunction(String name)
+    {
+        return registered.get(name);
+    }
+
+    public void pushTable(LuaTable table)
+    {
+        push(LuaType.TABLE, 0, table);
+    }
+
+    public LuaTable toTable(int index)
+    {
+        int i = slot(index);
+        return (types[i] == LuaType.TABLE) ? (LuaTable)refs[i] : null;
+    }
+
+    public JavaFunction toJavaFunction(int index)
+    {
+        int i = slot(index);
+        return (types[i] == LuaType.FUNCTION) ? (JavaFunction)refs[i] : null;
+    }
+
+    // -------------------------------------------------------------------
+    // JNLua API
+    // -------------------------------------------------------------------
+
+    /**
+     * Registers the functions and pushes the module table, which only holds the fields the loader sets.
+     */
+    public void register(String moduleName, NamedJavaFunction[] functions)
+    {
+        for (NamedJavaFunction function : functions) {
+            registered.put(function.getName(), function);
+        }
+
+        pushTable(new LuaTable());
+    }
+
+    public int getTop()
+    {
+        return top;
+    }
+
+    public void setTop(int index)
+    {
+        int newTop = (index < 0) ? top + index + 1 : index;
+
+        for (int i = newTop; i < top; i++) {
+            refs[i] = null;
+        }
+        for (int i = top; i < newTop; i++) {
+            types[i] = LuaType.NIL;
+        }
+
+        top = newTop;
+    }
+
+    public int absIndex(int index)
+    {
+        return ((index > 0) || (index <= REGISTRYINDEX)) ? index : top + index + 1;
+    }
+
+    public LuaType type(int index)
+    {
+        return isValid(index) ? types[slot(index)] : null;
+    }
+
+    public String typeName(int index)
+    {
+        LuaType type = type(index);
+        return (type == null) ? "no value" : type.name().toLowerCase();
+    }
+
+    public boolean isNoneOrNil(int index)
+    {
+        return (! isValid(index)) || (types[slot(index)] == LuaType.NIL);
+    }
+
+    public boolean isTable(int index)
+    {
+        return type(index) == LuaType.TABLE;
+    }
+
+    public boolean isFunction(int index)
+    {
+        return type(index) == LuaType.FUNCTION;
+    }
+
+    public void pushNil()
+    {
+        push(LuaType.NIL, 0, null);
+    }
+
+    public void pushBoolean(boolean value)
+    {
+        push(LuaType.BOOLEAN, value ? 1 : 0, null);
+    }
+
+    public void pushNumber(double value)
+    {
+        push(LuaType.NUMBER, value, null);
+    }
+
+    public void pushInteger(int value)
+    {
+        push(LuaType.NUMBER, value, null);
+    }
+
+    public void pushString(String value)
+    {
+        if (value == null) {
+            pushNil();
+        }
+        else {
+            push(LuaType.STRING, 0, value);
+        }
+    }
+
+    public void pushJavaFunction(JavaFunction function)
+    {
+        push(LuaType.FUNCTION, 0, function);
+    }
+
+    public void pushValue(int index)
+    {
+        int i = slot(index);
+        push(types[i], numbers[i], refs[i]);
+    }
+
+    public void newTable()
+    {
+        pushTable(new LuaTable());
+    }
+
+    public void newTable(int arrayCount, int recordCount)
+    {
+        pushTable(new LuaTable());
+    }
+
+    public boolean toBoolean(int index)
+    {
+        int i = slot(index);
+        return (types[i] == LuaType.BOOLEAN) ? numbers[i] != 0 : types[i] != LuaType.NIL;
+    }
+
+    public double toNumber(int index)
+    {
+        int i = slot(index);
+        return (types[i] == LuaType.NUMBER) ? numbers[i] : 0;
+    }
+
+    public int toInteger(int index)
+    {
+        return (int)toNumber(index);
+    }
+
+    public String toString(int index)
+    {
+        int i = slot(index);
+
+        switch (types[i]) {
+            case STRING:
+                return (String)refs[i];
+            case NUMBER:
+                return (numbers[i] == Math.rint(numbers[i])) ? Long.toString((long)numbers[i]) : Double.toString(numbers[i]);
+            default:
+                return null;
+        }
+    }
+
+    public void pop(int count)
+    {
+        setTop(top - count);
+    }
+
+    public void remove(int index)
+    {
+        int i = slot(index);
+        System.arraycopy(types, i + 1, types, i, top - i - 1);
+        System.arraycopy(numbers, i + 1, numbers, i, top - i - 1);
+        System.arraycopy(refs, i + 1, refs, i, top - i - 1);
+        top--;
+        refs[top] = null;
+    }
+
+    public void insert(int index)
+    {
+        int i = slot(index);
+        LuaType type = types[top - 1];
+        double number = numbers[top - 1];
+        Object ref = refs[top - 1];
+
+        System.arraycopy(types, i, types, i + 1, top - i - 1);
+        System.arraycopy(numbers, i, numbers, i + 1, top - i - 1);
+        System.arraycopy(refs, i, refs, i + 1, top - i - 1);
+
+        types[i] = type;
+        numbers[i] = number;
+        refs[i] = ref;
+    }
+
+    public void setField(int index, String key)
+    {
+        LuaTable table = (LuaTable)refs[slot(index)];
+        int value = top - 1;
+
+        table.put(key, types[value], numbers[value], refs[value]);
+        pop(1);
+    }
+
+    public void rawSet(int index, String key)
+    {
+        setField(index, key);
+    }
+
+    /**
+     * Only supports pushing a reference from the registry.
+     */
+    public void rawGet(int index, int key)
+    {
+        if (index != REGISTRYINDEX) {
+            throw new UnsupportedOperationException("rawGet on a table");
+        }
+
+        Object value = CoronaLua.getRef(key);
+
+        if (value instanceof LuaTable) {
+            pushTable((LuaTable)value);
+        }
+        else if (value instanceof JavaFunction) {
+            pushJavaFunction((JavaFunction)value);
+        }
+        else {
+            pushNil();
+        }
+    }
+
+    public boolean rawEqual(int index1, int index2)
+    {
+        if (! (isValid(index1) && isValid(index2))) {
+            return false;
+        }
+
+        int i = slot(index1);
+        int j = slot(index2);
+
+        return (types[i] == types[j]) && (numbers[i] == numbers[j]) && Objects.equals(refs[i], refs[j]);
+    }
+
+    public void getField(int index, String key)
+    {
+        LuaTable table = (LuaTable)refs[slot(index)];
+        int entry = table.find(key);
+
+        if (entry < 0) {
+            pushNil();
+        }
+        else {
+            push(table.typeAt(entry), table.numberAt(entry), table.refAt(entry));
+        }
+    }
+
+    /**
+     * Pops a key and pushes the next key and value of the table, or pushes nothing and returns false at the end.
+     */
+    public boolean next(int index)
+    {
+        LuaTable table = (LuaTable)refs[slot(index)];
+        String key = (types[top - 1] == LuaType.NIL) ? null : (String)refs[top - 1];
+        pop(1);
+
+        int entry = (key == null) ? 0 : table.find(key) + 1;
+        if ((entry <= 0 && key != null) || (entry >= table.size())) {
+            return false;
+        }
+
+        push(LuaType.STRING, 0, table.keyAt(entry));
+        push(table.typeAt(entry), table.numberAt(entry), table.refAt(entry));
+
+        return true;
+    }
+
+    private void push(LuaType type, double number, Object ref)
+    {
+        if (top == MAX_STACK) {
+            throw new IllegalStateException("stack overflow");
+        }
+
+        types[top] = type;
+        numbers[top] = number;
+        refs[top] = ref;
+        top++;
+    }
+
+    private boolean isValid(int index)
+    {
+        int i = (index > 0) ? index : top + index + 1;
+        return (i >= 1) && (i <= top);
+    }
+
+    private int slot(int index)
+    {
+        int i = (index > 0) ? index : top + index + 1;
+
+        if ((i < 1) || (i > top)) {
+            throw new IllegalArgumentException("illegal index " + index);
+        }
+
+        return i - 1;
+    }
+}
@@ -0,0 +1,154 @@
+//
+// LuaTable.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package com.naef.jnlua;
+
+import java.util.Arrays;
+
+/**
+ * Table value of the stand-in {@link LuaState}: string keys in insertion order, values stored unboxed.
+ * Lookups are linear, which is faster than hashing for the handful of keys plugin tables hold.
+ */
+public class LuaTable
+{
+    private String[] keys = new String[8];
+    private LuaType[] types = new LuaType[8];
+    private double[] numbers = new double[8];
+    private Object[] refs = new Object[8];
+    private int size = 0;
+
+    public int size()
+    {
+        return size;
+    }
+
+    public void clear()
+    {
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(refs, 0, size, null);
+        size = 0;
+    }
+
+    public int find(String key)
+    {
+        for (int i = 0; i < size; i++) {
+            if (keys[i].equals(key)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    public void put(String key, LuaType type, double number, Object ref)
+    {
+        int i = find(key);
+
+        if (type == LuaType.NIL) {
+            if (i >= 0) {
+                remove(i);
+            }
+            return;
+        }
+
+        if (i < 0) {
+            if (size == keys.length) {
+                grow();
+            }
+            i = size++;
+            keys[i] = key;
+        }
+
+        types[i] = type;
+        numbers[i] = number;
+        refs[i] = ref;
+    }
+
+    // convenience setters for building option tables in Java
+    public LuaTable set(String key, String value)
+    {
+        put(key, LuaType.STRING, 0, value);
+        return this;
+    }
+
+    public LuaTable set(String key, double value)
+    {
+        put(key, LuaType.NUMBER, value, null);
+        return this;
+    }
+
+    public LuaTable set(String key, boolean value)
+    {
+        put(key, LuaType.BOOLEAN, value ? 1 : 0, null);
+        return this;
+    }
+
+    public LuaTable set(String key, LuaTable value)
+    {
+        put(key, LuaType.TABLE, 0, value);
+        return this;
+    }
+
+    public String keyAt(int i)
+    {
+        return keys[i];
+    }
+
+    public LuaType typeAt(int i)
+    {
+        return types[i];
+    }
+
+    public double numberAt(int i)
+    {
+        return numbers[i];
+    }
+
+    public Object refAt(int i)
+    {
+        return refs[i];
+    }
+
+    public Object get(String key)
+    {
+        int i = find(key);
+
+        if (i < 0) {
+            return null;
+        }
+
+        switch (types[i]) {
+            case NUMBER:
+                return numbers[i];
+            case BOOLEAN:
+                return numbers[i] != 0;
+            default:
+                return refs[i];
+        }
+    }
+
+    private void remove(int i)
+    {
+        System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+        System.arraycopy(types, i + 1, types, i, size - i - 1);
+        System.arraycopy(numbers, i + 1, numbers, i, size - i - 1);
+        System.arraycopy(refs, i + 1, refs, i, size - i - 1);
+        size--;
+        keys[size] = null;
+        refs[size] = null;
+    }
+
+    private void grow()
+    {
+        int capacity = keys.length * 2;
+        keys = Arrays.copyOf(keys, capacity);
+        types = Arrays.copyOf(types, capacity);
+        numbers = Arrays.copyOf(numbers, capacity);
+        refs = Arrays.copyOf(refs, capacity);
+    }
+}
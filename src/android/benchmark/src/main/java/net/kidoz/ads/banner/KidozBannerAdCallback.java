@@ -0,0 +1,21 @@
+//
+// KidozBannerAdCallback.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package net.kidoz.ads.banner;
+
+import net.kidoz.sdk.KidozError;
+
+public interface KidozBannerAdCallback
+{
+    void onAdLoaded();
+    void onAdFailedToLoad(KidozError error);
+    void onAdShown();
+    void onAdFailedToShow(KidozError error);
+    void onAdImpression();
+    void onAdClosed();
+}
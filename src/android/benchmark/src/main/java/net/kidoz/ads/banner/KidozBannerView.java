@@ -0,0 +1,51 @@
+//
+// KidozBannerView.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package net.kidoz.ads.banner;
+
+import android.app.Activity;
+import android.widget.FrameLayout;
+
+/**
+ * JVM stand-in. Loads never complete.
+ */
+public class KidozBannerView extends FrameLayout
+{
+    public enum Position
+    {
+        TOP_CENTER, TOP_LEFT, TOP_RIGHT, BOTTOM_CENTER, BOTTOM_LEFT, BOTTOM_RIGHT
+    }
+
+    public KidozBannerView(Activity activity)
+    {
+    }
+
+    public void setBannerCallback(KidozBannerAdCallback callback)
+    {
+    }
+
+    public void setAutoShow(boolean autoShow)
+    {
+    }
+
+    public void setBannerPosition(Position position)
+    {
+    }
+
+    public void load()
+    {
+    }
+
+    public void show()
+    {
+    }
+
+    public void close()
+    {
+    }
+}
@@ -0,0 +1,25 @@
+//
+// KidozInterstitialAd.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package net.kidoz.ads.fullscreen.interstial;
+
+import android.app.Activity;
+
+/**
+ * JVM stand-in. Loads never complete.
+ */
+public class KidozInterstitialAd
+{
+    public static void load(Activity activity, KidozInterstitialAdCallback callback)
+    {
+    }
+
+    public void show()
+    {
+    }
+}
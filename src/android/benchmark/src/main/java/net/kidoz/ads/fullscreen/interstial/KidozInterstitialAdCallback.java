@@ -0,0 +1,21 @@
+//
+// KidozInterstitialAdCallback.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package net.kidoz.ads.fullscreen.interstial;
+
+import net.kidoz.sdk.KidozError;
+
+public interface KidozInterstitialAdCallback
+{
+    void onAdLoaded(KidozInterstitialAd ad);
+    void onAdFailedToLoad(KidozError error);
+    void onAdShown(KidozInterstitialAd ad);
+    void onAdFailedToShow(KidozInterstitialAd ad, KidozError error);
+    void onAdImpression(KidozInterstitialAd ad);
+    void onAdClosed(KidozInterstitialAd ad);
+}
@@ -0,0 +1,25 @@
+//
+// KidozRewardedAd.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package net.kidoz.ads.fullscreen.rewarded;
+
+import android.app.Activity;
+
+/**
+ * JVM stand-in. Loads never complete.
+ */
+public class KidozRewardedAd
+{
+    public static void load(Activity activity, KidozRewardedAdCallback callback)
+    {
+    }
+
+    public void show()
+    {
+    }
+}
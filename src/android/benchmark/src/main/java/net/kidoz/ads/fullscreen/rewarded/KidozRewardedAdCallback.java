@@ -0,0 +1,22 @@
+//
+// KidozRewardedAdCallback.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package net.kidoz.ads.fullscreen.rewarded;
+
+import net.kidoz.sdk.KidozError;
+
+public interface KidozRewardedAdCallback
+{
+    void onAdLoaded(KidozRewardedAd ad);
+    void onAdFailedToLoad(KidozError error);
+    void onAdShown(KidozRewardedAd ad);
+    void onAdFailedToShow(KidozRewardedAd ad, KidozError error);
+    void onAdImpression(KidozRewardedAd ad);
+    void onRewardReceived(KidozRewardedAd ad);
+    void onAdClosed(KidozRewardedAd ad);
+}
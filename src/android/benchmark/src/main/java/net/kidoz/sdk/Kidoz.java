@@ -0,0 +1,22 @@
+//
+// Kidoz.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package net.kidoz.sdk;
+
+import android.app.Activity;
+
+/**
+ * JVM stand-in. Initialization succeeds right away.
+ */
+public class Kidoz
+{
+    public static void initialize(Activity activity, String publisherID, String securityToken, KidozInitializationListener listener)
+    {
+        listener.onInitSuccess();
+    }
+}
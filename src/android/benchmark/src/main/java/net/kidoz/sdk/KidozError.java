@@ -0,0 +1,24 @@
+//
+// KidozError.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package net.kidoz.sdk;
+
+public class KidozError
+{
+    private final String message;
+
+    public KidozError(String message)
+    {
+        this.message = message;
+    }
+
+    public String getMessage()
+    {
+        return message;
+    }
+}
@@ -0,0 +1,15 @@
+//
+// KidozInitializationListener.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package net.kidoz.sdk;
+
+public interface KidozInitializationListener
+{
+    void onInitSuccess();
+    void onInitError(KidozError error);
+}
@@ -0,0 +1,37 @@
+//
+// BenchmarkFiles.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package plugin.kidoz;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Scratch files directories for the plugin's event journal.
+ */
+class BenchmarkFiles
+{
+    static File createDirectory() throws IOException
+    {
+        return Files.createTempDirectory("kidoz-benchmark").toFile();
+    }
+
+    static void delete(File dir)
+    {
+        File[] files = dir.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+
+        dir.delete();
+    }
+}
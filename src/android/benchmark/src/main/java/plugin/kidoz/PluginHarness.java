@@ -0,0 +1,216 @@
+//
+// PluginHarness.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package plugin.kidoz;
+
+import android.app.Application;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import com.naef.jnlua.JavaFunction;
+import com.naef.jnlua.LuaState;
+import com.naef.jnlua.LuaTable;
+import com.naef.jnlua.NamedJavaFunction;
+
+import com.ansca.corona.CoronaActivity;
+import com.ansca.corona.CoronaEnvironment;
+import com.ansca.corona.CoronaRuntime;
+
+import java.io.File;
+
+/**
+ * Loads the plugin into the stand-in runtime and drives it from a single thread, which plays both
+ * the Corona runtime thread and the UI thread.
+ * <p/>
+ * The plugin keeps its state in statics, so only one harness may be open at a time.
+ */
+class PluginHarness
+{
+    static final String LIBRARY_NAME = "plugin.kidoz";
+    static final long FRAME_MS = 16;
+
+    final LuaState L = new LuaState();
+    final CoronaRuntime runtime = new CoronaRuntime(L);
+    final Application application = new Application();
+    CoronaActivity activity = new CoronaActivity();
+    final LuaLoader loader;
+    final LuaTable library;
+
+    private boolean suspended = false;
+    private int lastFrameTasks = 0;
+
+    PluginHarness(File filesDir)
+    {
+        this(filesDir, new KidozAdNetwork());
+    }
+
+    PluginHarness(File filesDir, AdNetwork network)
+    {
+        LuaLoader.setAdNetwork(network);
+
+        application.setFilesDir(filesDir);
+        activity.setApplication(application);
+        activity.setFilesDir(filesDir);
+        CoronaEnvironment.setCoronaActivity(activity);
+        CoronaEnvironment.setApplicationContext(application);
+
+        loader = new LuaLoader();
+
+        L.pushString(LIBRARY_NAME);
+        loader.invoke(L);
+        library = L.toTable(L.getTop());
+        L.setTop(0);
+
+        loader.onLoaded(runtime);
+        loader.onStarted(runtime);
+
+        application.dispatchActivityCreated(activity);
+        application.dispatchActivityResumed(activity);
+    }
+
+    NamedJavaFunction function(String name)
+    {
+        return L.getRegisteredFunction(name);
+    }
+
+    /**
+     * Calls a plugin function with the given arguments and returns its first result, or null if it returned none.
+     * Arguments may be strings, numbers, booleans, tables, Java functions or null for nil.
+     */
+    Object call(String name, Object... args)
+    {
+        L.setTop(0);
+
+        for (Object arg : args) {
+            push(arg);
+        }
+
+        int results = function(name).invoke(L);
+        Object result = null;
+
+        if (results > 0) {
+            int index = L.getTop() - results + 1;
+
+            switch (L.type(index)) {
+                case BOOLEAN:
+                    result = L.toBoolean(index);
+                    break;
+                case NUMBER:
+                    result = L.toNumber(index);
+                    break;
+                case STRING:
+                    result = L.toString(index);
+                    break;
+                case TABLE:
+                    result = L.toTable(index);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        L.setTop(0);
+
+        return result;
+    }
+
+    /**
+     * Advances the virtual clock by a frame and runs it: due messages and idle handlers, frame callbacks,
+     * then the runtime tasks. While suspended only the messages run, like in the background.
+     */
+    void runFrame()
+    {
+        SystemClock.advance(FRAME_MS);
+        Looper.runAllDue();
+
+        if (! suspended) {
+            Choreographer.getInstance().doFrame(SystemClock.uptimeMillis() * 1000000);
+            lastFrameTasks = runtime.runPendingTasks();
+        }
+    }
+
+    /**
+     * Returns how many runtime tasks the last frame ran.
+     */
+    int getLastFrameTasks()
+    {
+        return lastFrameTasks;
+    }
+
+    void suspend()
+    {
+        suspended = true;
+        loader.onSuspended(runtime);
+    }
+
+    void resume()
+    {
+        suspended = false;
+        loader.onResumed(runtime);
+    }
+
+    /**
+     * Delivers a ComponentCallbacks2 trim level, like the system does on the UI thread.
+     */
+    void trimMemory(int level)
+    {
+        application.trimMemory(level);
+    }
+
+    /**
+     * Destroys the activity and replaces it with a new one, like a configuration change does, while the
+     * runtime keeps running. Returns the destroyed activity.
+     */
+    CoronaActivity recreateActivity()
+    {
+        CoronaActivity destroyed = activity;
+        application.dispatchActivityDestroyed(destroyed);
+
+        activity = new CoronaActivity();
+        activity.setApplication(application);
+        activity.setFilesDir(destroyed.getFilesDir());
+        CoronaEnvironment.setCoronaActivity(activity);
+
+        application.dispatchActivityCreated(activity);
+        application.dispatchActivityResumed(activity);
+
+        return destroyed;
+    }
+
+    void close()
+    {
+        loader.onExiting(runtime);
+        CoronaEnvironment.setCoronaActivity(null);
+    }
+
+    private void push(Object arg)
+    {
+        if (arg == null) {
+            L.pushNil();
+        }
+        else if (arg instanceof String) {
+            L.pushString((String)arg);
+        }
+        else if (arg instanceof Number) {
+            L.pushNumber(((Number)arg).doubleValue());
+        }
+        else if (arg instanceof Boolean) {
+            L.pushBoolean((Boolean)arg);
+        }
+        else if (arg instanceof LuaTable) {
+            L.pushTable((LuaTable)arg);
+        }
+        else if (arg instanceof JavaFunction) {
+            L.pushJavaFunction((JavaFunction)arg);
+        }
+        else {
+            throw new IllegalArgumentException("unsupported argument " + arg);
+        }
+    }
+}
@@ -0,0 +1,499 @@
+//
+// SimulatedAdNetwork.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package plugin.kidoz;
+
+import android.app.Activity;
+import android.os.Handler;
+import android.os.Looper;
+
+import net.kidoz.ads.banner.KidozBannerView;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic, in-process stand-in for the KIDOZ SDK.
+ * <p/>
+ * Every callback is posted to the main looper after a latency drawn from a seeded random generator,
+ * so with the virtual clock of the stand-ins a given {@link Config} always plays out the same way.
+ * Loads fill, come back empty or fail at configurable rates, shows can fail, and any load or close
+ * callback can go missing, as they occasionally do with the real SDK. A filled fullscreen load can also
+ * be answered late, after the plugin gave up on it, while later loads are answered in the meantime.
+ * <p/>
+ * The network also checks how the plugin uses it: showing an ad twice, one that never loaded, or one
+ * made for an activity that was destroyed, and using a banner after destroying it, are counted as
+ * misuses. Like the SDK's, ads and banners hold on to their activity. Every ad it hands out is tracked
+ * weakly, so {@link #liveAds()} tells how many the plugin still holds on to.
+ */
+class SimulatedAdNetwork implements AdNetwork
+{
+    static final String ERROR_NO_FILL   = "No fill";
+    static final String ERROR_NETWORK   = "Network error";
+    static final String ERROR_SHOW      = "Ad failed to show";
+    static final String ERROR_INIT      = "Invalid publisher";
+    static final String ERROR_NOT_READY = "Ad not ready";
+    static final String ERROR_NOT_INITIALIZED = "SDK not initialized";
+
+    // -------------------------------------------------------------------
+    // Configuration
+    // -------------------------------------------------------------------
+
+    /**
+     * A latency distribution in milliseconds.
+     */
+    interface Latency
+    {
+        long sample(Random random);
+    }
+
+    static Latency fixed(final long ms)
+    {
+        return new Latency() {
+            @Override
+            public long sample(Random random)
+            {
+                return ms;
+            }
+        };
+    }
+
+    static Latency uniform(final long minMs, final long maxMs)
+    {
+        return new Latency() {
+            @Override
+            public long sample(Random random)
+            {
+                return minMs + (long)(random.nextDouble() * (maxMs - minMs));
+            }
+        };
+    }
+
+    /**
+     * Log-normal around the median, the usual shape of network latencies: most samples close to the
+     * median and a long tail. Samples are capped at the given maximum.
+     */
+    static Latency logNormal(final long medianMs, final double sigma, final long maxMs)
+    {
+        return new Latency() {
+            @Override
+            public long sample(Random random)
+            {
+                return Math.min(maxMs, Math.round(medianMs * Math.exp(sigma * random.nextGaussian())));
+            }
+        };
+    }
+
+    static class Config
+    {
+        long seed = 1;
+
+        Latency initLatency = fixed(300);
+        boolean initFails = false;
+
+        Latency loadLatency = logNormal(800, 0.6, 20000);
+        double fillRate = 0.9;
+        double loadErrorRate = 0.02;
+
+        Latency showLatency = uniform(30, 120);
+        double showFailureRate = 0.01;
+        Latency displayTime = uniform(2000, 15000);
+        double rewardRate = 0.95;
+
+        double missingLoadCallbackRate = 0;
+        double missingCloseCallbackRate = 0;
+
+        // filled fullscreen loads answered after lateLoadLatency instead
+        double lateLoadCallbackRate = 0;
+        Latency lateLoadLatency = fixed(60000);
+    }
+
+    // -------------------------------------------------------------------
+    // Counters
+    // -------------------------------------------------------------------
+
+    static final int LOADS            = 0;
+    static final int FILLED           = 1;
+    static final int NO_FILLS         = 2;
+    static final int LOAD_ERRORS      = 3;
+    static final int SHOWS            = 4;
+    static final int SHOWN            = 5;
+    static final int SHOW_FAILURES    = 6;
+    static final int REWARDS          = 7;
+    static final int CLOSED           = 8;
+    static final int DROPPED_LOADS    = 9;
+    static final int DROPPED_CLOSES   = 10;
+    static final int MISUSES          = 11;
+    static final int LATE_LOADS       = 12;
+    static final int COUNTER_COUNT    = 13;
+
+    static final String[] COUNTER_NAMES = {
+            "loads", "filled", "noFills", "loadErrors", "shows", "shown", "showFailures",
+            "rewards", "closed", "droppedLoads", "droppedCloses", "misuses", "lateLoads"
+    };
+
+    // indexed like the plugin's ad types
+    static final int BANNER        = 0;
+    static final int INTERSTITIAL  = 1;
+    static final int REWARDEDVIDEO = 2;
+    static final int TYPE_COUNT    = 3;
+
+    private final Config config;
+    private final Random random;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final long[] counters = new long[TYPE_COUNT * COUNTER_COUNT];
+    private final int[] ready = new int[TYPE_COUNT];
+    private final List<WeakReference<SimulatedAd>> issuedAds = new ArrayList<>();
+    private boolean initialized = false;
+
+    SimulatedAdNetwork(Config config)
+    {
+        this.config = config;
+        this.random = new Random(config.seed);
+    }
+
+    long get(int adType, int counter)
+    {
+        return counters[adType * COUNTER_COUNT + counter];
+    }
+
+    /**
+     * Returns how many fullscreen ads of the type were loaded and handed to the plugin, and not shown yet.
+     */
+    int getReady(int adType)
+    {
+        return ready[adType];
+    }
+
+    /**
+     * Returns how many of the ads handed out are still reachable. Call after a garbage collection.
+     */
+    int liveAds()
+    {
+        int live = 0;
+
+        for (Iterator<WeakReference<SimulatedAd>> it = issuedAds.iterator(); it.hasNext(); ) {
+            if (it.next().get() == null) {
+                it.remove();
+            }
+            else {
+                live++;
+            }
+        }
+
+        return live;
+    }
+
+    private void count(int adType, int counter)
+    {
+        counters[adType * COUNTER_COUNT + counter]++;
+    }
+
+    private boolean chance(double rate)
+    {
+        return (rate > 0) && (random.nextDouble() < rate);
+    }
+
+    private void post(Runnable callback, Latency latency)
+    {
+        handler.postDelayed(callback, latency.sample(random));
+    }
+
+    // outcome of a load: the error to report, null if it filled, or DROPPED if the callback never comes
+    private static final String DROPPED = "";
+
+    private String loadOutcome(int adType)
+    {
+        count(adType, LOADS);
+
+        // like the SDK, refuse to load anything before initialization succeeded
+        if (! initialized) {
+            count(adType, LOAD_ERRORS);
+            return ERROR_NOT_INITIALIZED;
+        }
+        if (chance(config.missingLoadCallbackRate)) {
+            count(adType, DROPPED_LOADS);
+            return DROPPED;
+        }
+        if (chance(config.loadErrorRate)) {
+            count(adType, LOAD_ERRORS);
+            return ERROR_NETWORK;
+        }
+        if (! chance(config.fillRate)) {
+            count(adType, NO_FILLS);
+            return ERROR_NO_FILL;
+        }
+
+        count(adType, FILLED);
+        return null;
+    }
+
+    // -------------------------------------------------------------------
+    // AdNetwork
+    // -------------------------------------------------------------------
+
+    @Override
+    public void initialize(Activity activity, String publisherID, String securityToken, final InitListener listener)
+    {
+        post(new Runnable() {
+            @Override
+            public void run()
+            {
+                if (config.initFails) {
+                    listener.onInitError(ERROR_INIT);
+                }
+                else {
+                    initialized = true;
+                    listener.onInitSuccess();
+                }
+            }
+        }, config.initLatency);
+    }
+
+    @Override
+    public FullscreenAd createInterstitial(Activity activity, FullscreenAdListener listener)
+    {
+        return new SimulatedAd(INTERSTITIAL, activity, listener);
+    }
+
+    @Override
+    public FullscreenAd createRewarded(Activity activity, FullscreenAdListener listener)
+    {
+        return new SimulatedAd(REWARDEDVIDEO, activity, listener);
+    }
+
+    @Override
+    public Banner createBanner(Activity activity, BannerListener listener)
+    {
+        return new SimulatedBanner(activity, listener);
+    }
+
+    // -------------------------------------------------------------------
+    // Ads
+    // -------------------------------------------------------------------
+
+    private class SimulatedAd implements FullscreenAd
+    {
+        private final int adType;
+        private final Activity activity;
+        private final FullscreenAdListener listener;
+        private boolean loadIssued = false;
+        private boolean loaded = false;
+        private boolean shown = false;
+
+        SimulatedAd(int adType, Activity activity, FullscreenAdListener listener)
+        {
+            this.adType = adType;
+            this.activity = activity;
+            this.listener = listener;
+        }
+
+        @Override
+        public void load()
+        {
+            if (loadIssued) {
+                count(adType, MISUSES);
+                return;
+            }
+
+            loadIssued = true;
+
+            final String error = loadOutcome(adType);
+            if (error == DROPPED) {
+                return;
+            }
+
+            Latency latency = config.loadLatency;
+            if ((error == null) && chance(config.lateLoadCallbackRate)) {
+                count(adType, LATE_LOADS);
+                latency = config.lateLoadLatency;
+            }
+
+            final SimulatedAd ad = this;
+
+            post(new Runnable() {
+                @Override
+                public void run()
+                {
+                    if (error != null) {
+                        listener.onAdFailedToLoad(ad, error, error == ERROR_NO_FILL);
+                        return;
+                    }
+
+                    loaded = true;
+                    issuedAds.add(new WeakReference<>(ad));
+                    ready[adType]++;
+                    listener.onAdLoaded(ad);
+                }
+            }, latency);
+        }
+
+        @Override
+        public void show()
+        {
+            if ((! loaded) || shown || activity.isDestroyed()) {
+                count(adType, MISUSES);
+                listener.onAdFailedToShow(this, ERROR_NOT_READY);
+                return;
+            }
+
+            shown = true;
+            ready[adType]--;
+            count(adType, SHOWS);
+
+            final FullscreenAd ad = this;
+
+            if (chance(config.showFailureRate)) {
+                count(adType, SHOW_FAILURES);
+                post(new Runnable() {
+                    @Override
+                    public void run()
+                    {
+                        listener.onAdFailedToShow(ad, ERROR_SHOW);
+                    }
+                }, config.showLatency);
+                return;
+            }
+
+            final boolean reward = (adType == REWARDEDVIDEO) && chance(config.rewardRate);
+            final boolean dropClose = chance(config.missingCloseCallbackRate);
+
+            post(new Runnable() {
+                @Override
+                public void run()
+                {
+                    count(adType, SHOWN);
+                    listener.onAdShown(ad);
+
+                    post(new Runnable() {
+                        @Override
+                        public void run()
+                        {
+                            if (reward) {
+                                count(adType, REWARDS);
+                                listener.onRewardReceived(ad);
+                            }
+
+                            if (dropClose) {
+                                count(adType, DROPPED_CLOSES);
+                            }
+                            else {
+                                count(adType, CLOSED);
+                                listener.onAdClosed(ad);
+                            }
+                        }
+                    }, config.displayTime);
+                }
+            }, config.showLatency);
+        }
+    }
+
+    private class SimulatedBanner implements Banner
+    {
+        private final Activity activity;
+        private final BannerListener listener;
+        private boolean loaded = false;
+        private boolean visible = false;
+        private boolean destroyed = false;
+
+        SimulatedBanner(Activity activity, BannerListener listener)
+        {
+            this.activity = activity;
+            this.listener = listener;
+        }
+
+        @Override
+        public void setPosition(KidozBannerView.Position position)
+        {
+        }
+
+        @Override
+        public void load()
+        {
+            if (destroyed || activity.isDestroyed()) {
+                count(BANNER, MISUSES);
+                return;
+            }
+
+            final String error = loadOutcome(BANNER);
+            if (error == DROPPED) {
+                return;
+            }
+
+            post(new Runnable() {
+                @Override
+                public void run()
+                {
+                    if (error != null) {
+                        loaded = false;
+                        listener.onAdFailedToLoad(error, error == ERROR_NO_FILL);
+                    }
+                    else {
+                        loaded = true;
+                        listener.onAdLoaded();
+                    }
+                }
+            }, config.loadLatency);
+        }
+
+        @Override
+        public void show()
+        {
+            if ((! loaded) || destroyed || activity.isDestroyed()) {
+                count(BANNER, MISUSES);
+                listener.onAdFailedToShow(ERROR_NOT_READY);
+                return;
+            }
+
+            count(BANNER, SHOWS);
+
+            if (chance(config.showFailureRate)) {
+                count(BANNER, SHOW_FAILURES);
+                post(new Runnable() {
+                    @Override
+                    public void run()
+                    {
+                        listener.onAdFailedToShow(ERROR_SHOW);
+                    }
+                }, config.showLatency);
+                return;
+            }
+
+            post(new Runnable() {
+                @Override
+                public void run()
+                {
+                    visible = true;
+                    count(BANNER, SHOWN);
+                    listener.onAdShown();
+                }
+            }, config.showLatency);
+        }
+
+        @Override
+        public void close()
+        {
+            if (visible) {
+                visible = false;
+                count(BANNER, CLOSED);
+                listener.onAdClosed();
+            }
+        }
+
+        @Override
+        public void destroy()
+        {
+            close();
+            destroyed = true;
+        }
+    }
+}
@@ -0,0 +1,787 @@
+//
+// SoakRunner.java
+// Kidoz Plugin benchmarks
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package plugin.kidoz;
+
+import android.util.Log;
+
+import com.naef.jnlua.JavaFunction;
+import com.naef.jnlua.LuaState;
+import com.naef.jnlua.LuaTable;
+
+import com.ansca.corona.CoronaActivity;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Runs thousands of load and show cycles against the {@link SimulatedAdNetwork} and checks that the
+ * plugin stays consistent with it.
+ * <p/>
+ * Each cycle picks an ad type, loads it, shows it if it loaded, and waits for the ad to close, all on
+ * the virtual clock. Along the way the runner checks that the plugin's view of what is loaded agrees
+ * with what the network handed out, that every displayed, reward and closed callback reached Lua exactly
+ * once, that getMetrics() agrees with the network's own counts, that the plugin never shows an ad twice,
+ * and that it lets go of every ad it no longer needs. Wall clock throughput is reported at the end.
+ * <p/>
+ * Between cycles the app can be sent to the background for a while, to check that the plugin catches
+ * up after resuming without flooding a single frame with runtime tasks. The system can also ask the
+ * app to trim its memory, after which the ads the plugin reports as evicted must be released. And the
+ * activity can be recreated, after which every destroyed activity must be collectable, however many
+ * banners and ads were made for it, so that retained memory stays flat over any number of recreations.
+ * <p/>
+ * With banner refresh on, banners are swapped while on screen, and sometimes the app goes to the background
+ * while one is shown. The swapped out banners must not be reported as closed, and no banner may be loaded
+ * while the app is in the background.
+ * <p/>
+ * With named placements, fullscreen cycles are spread over the default placement of each ad type and
+ * the named ones. Every ad type event must name its placement, kidoz.state.placements must agree with
+ * isLoaded() for every named placement, and the metrics of an ad type plus those of its placements must
+ * add up to the network's counts.
+ * <p/>
+ * With late load callbacks, some filled fullscreen loads are answered after the plugin gave up on them,
+ * while later loads of the same placement are answered in the meantime. Each answer must settle its own
+ * load, so the late ones are counted as timeouts and never as the answer to another load.
+ * <p/>
+ * The plugin's UI thread work is batched, optionally aligned to frames; the number of batches and the
+ * UI thread time they took are reported at the end.
+ * <p/>
+ * Options are given as --name=value, see {@link #usage()}. Exits with status 1 if any check failed.
+ */
+class SoakRunner
+{
+    private static final String[] AD_TYPE_NAMES = { "banner", "interstitial", "rewardedVideo" };
+
+    private static final String[] PHASES = { "loaded", "failed", "displayed", "closed", "reward" };
+    private static final int LOADED    = 0;
+    private static final int FAILED    = 1;
+    private static final int DISPLAYED = 2;
+    private static final int CLOSED    = 3;
+    private static final int REWARD    = 4;
+
+    private static final long LOAD_TIMEOUT_MS   = 30000;
+    // the plugin gives up on unanswered loads before the runner does
+    private static final long PLUGIN_LOAD_TIMEOUT_MS = 25000;
+    private static final long SHOW_TIMEOUT_MS   = 60000;
+    private static final long SETTLE_TIME_MS    = 60000;
+    private static final long MIN_BACKGROUND_MS = 1000;
+    private static final long MAX_BACKGROUND_MS = 120000;
+    private static final int MAX_REPORTED_VIOLATIONS = 20;
+
+    // trim levels the system may send, from ComponentCallbacks2
+    private static final int[] TRIM_LEVELS = { 5, 10, 15, 20, 40, 60, 80 };
+
+    private final SimulatedAdNetwork.Config config;
+    private final int cycles;
+    private final int poolSize;
+    private final boolean batchEvents;
+    private final boolean alignToFrame;
+    private final double backgroundRate;
+    private final double trimRate;
+    private final double recreateRate;
+    private final double bannerRefresh;
+    private final int placements;
+
+    private final Random random;
+    private SimulatedAdNetwork network;
+    private PluginHarness harness;
+
+    // the default placement of each ad type, then the named placements, and the ad type of each
+    private final String[] slotPlacements;
+    private final int[] slotTypes;
+
+    // Lua events received, by placement slot and phase
+    private final int[][] events;
+    private boolean initialized = false;
+    private boolean initFailed = false;
+    private int preloaded = 0;
+    private int subscribedRewards = 0;
+    private final int[] evictedAds = new int[AD_TYPE_NAMES.length];
+    private long foldedEvictions = 0;
+
+    private final List<String> violations = new ArrayList<>();
+    private int cycle = 0;
+    private int stalledLoads = 0;
+    private int stalledShows = 0;
+    private long frames = 0;
+    private int backgrounded = 0;
+    private int trimmed = 0;
+    private final List<WeakReference<CoronaActivity>> destroyedActivities = new ArrayList<>();
+    private long maxQueuedEvents = 0;
+    private long bannerRefreshes = 0;
+    private int maxFrameTasks = 0;
+    private LuaTable uiMetrics = null;
+
+    SoakRunner(SimulatedAdNetwork.Config config, int cycles, int poolSize, boolean batchEvents, boolean alignToFrame, double backgroundRate,
+            double trimRate, double recreateRate, double bannerRefresh, int placements)
+    {
+        this.config = config;
+        this.cycles = cycles;
+        this.poolSize = poolSize;
+        this.batchEvents = batchEvents;
+        this.alignToFrame = alignToFrame;
+        this.backgroundRate = backgroundRate;
+        this.trimRate = trimRate;
+        this.recreateRate = recreateRate;
+        this.bannerRefresh = bannerRefresh;
+        this.placements = placements;
+        this.random = new Random(config.seed + 1);
+
+        slotPlacements = new String[AD_TYPE_NAMES.length + placements];
+        slotTypes = new int[slotPlacements.length];
+
+        for (int slot = 0; slot < slotPlacements.length; slot++) {
+            if (slot < AD_TYPE_NAMES.length) {
+                slotPlacements[slot] = "default";
+                slotTypes[slot] = slot;
+            }
+            else {
+                // named placements alternate between the fullscreen ad types
+                slotPlacements[slot] = "placement" + (slot - AD_TYPE_NAMES.length + 1);
+                slotTypes[slot] = SimulatedAdNetwork.INTERSTITIAL + (slot - AD_TYPE_NAMES.length) % 2;
+            }
+        }
+
+        events = new int[slotPlacements.length][PHASES.length];
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        SimulatedAdNetwork.Config config = new SimulatedAdNetwork.Config();
+        int cycles = 5000;
+        int poolSize = AdPool.DEFAULT_DEPTH;
+        boolean batchEvents = false;
+        boolean alignToFrame = false;
+        double backgroundRate = 0;
+        double trimRate = 0;
+        double recreateRate = 0;
+        double bannerRefresh = 0;
+        int placements = 0;
+
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if ((! arg.startsWith("--")) || (split < 0)) {
+                usage();
+                return;
+            }
+
+            String name = arg.substring(2, split);
+            String value = arg.substring(split + 1);
+
+            switch (name) {
+                case "cycles":
+                    cycles = Integer.parseInt(value);
+                    break;
+                case "seed":
+                    config.seed = Long.parseLong(value);
+                    break;
+                case "poolSize":
+                    poolSize = Integer.parseInt(value);
+                    break;
+                case "batchEvents":
+                    batchEvents = Boolean.parseBoolean(value);
+                    break;
+                case "alignToFrame":
+                    alignToFrame = Boolean.parseBoolean(value);
+                    break;
+                case "background":
+                    backgroundRate = Double.parseDouble(value);
+                    break;
+                case "trimMemory":
+                    trimRate = Double.parseDouble(value);
+                    break;
+                case "recreateActivity":
+                    recreateRate = Double.parseDouble(value);
+                    break;
+                case "bannerRefresh":
+                    bannerRefresh = Double.parseDouble(value);
+                    break;
+                case "placements":
+                    placements = Integer.parseInt(value);
+                    break;
+                case "loadLatency":
+                    config.loadLatency = SimulatedAdNetwork.logNormal(Long.parseLong(value), 0.6, LOAD_TIMEOUT_MS * 2 / 3);
+                    break;
+                case "fillRate":
+                    config.fillRate = Double.parseDouble(value);
+                    break;
+                case "loadErrorRate":
+                    config.loadErrorRate = Double.parseDouble(value);
+                    break;
+                case "showFailureRate":
+                    config.showFailureRate = Double.parseDouble(value);
+                    break;
+                case "missingLoadCallbacks":
+                    config.missingLoadCallbackRate = Double.parseDouble(value);
+                    break;
+                case "lateLoadCallbacks":
+                    config.lateLoadCallbackRate = Double.parseDouble(value);
+                    config.lateLoadLatency = SimulatedAdNetwork.uniform(PLUGIN_LOAD_TIMEOUT_MS + 1000, PLUGIN_LOAD_TIMEOUT_MS * 2);
+                    break;
+                case "missingCloseCallbacks":
+                    config.missingCloseCallbackRate = Double.parseDouble(value);
+                    break;
+                case "initFails":
+                    config.initFails = Boolean.parseBoolean(value);
+                    break;
+                default:
+                    usage();
+                    return;
+            }
+        }
+
+        int violations = new SoakRunner(config, cycles, poolSize, batchEvents, alignToFrame, backgroundRate, trimRate, recreateRate, bannerRefresh,
+                placements).run();
+        System.exit((violations == 0) ? 0 : 1);
+    }
+
+    private static void usage()
+    {
+        System.err.println("options: --cycles=N --seed=N --poolSize=N --batchEvents=BOOL --alignToFrame=BOOL --background=P --trimMemory=P --recreateActivity=P --bannerRefresh=SECONDS --placements=N"
+                + " --loadLatency=MEDIAN_MS"
+                + " --fillRate=P --loadErrorRate=P --showFailureRate=P"
+                + " --missingLoadCallbacks=P --lateLoadCallbacks=P --missingCloseCallbacks=P --initFails=BOOL");
+        System.exit(2);
+    }
+
+    int run() throws Exception
+    {
+        Log.setEnabled(false);
+
+        File filesDir = BenchmarkFiles.createDirectory();
+        network = new SimulatedAdNetwork(config);
+        harness = new PluginHarness(filesDir, network);
+
+        long heapBefore = usedHeap();
+        long startedAt = System.nanoTime();
+
+        harness.call("init", new Listener(), new LuaTable()
+                .set("publisherID", "soak")
+                .set("securityToken", "soak")
+                .set("batchEvents", batchEvents)
+                .set("alignToFrame", alignToFrame)
+                .set("loadTimeout", PLUGIN_LOAD_TIMEOUT_MS / 1000.0)
+                .set("poolSize", new LuaTable().set("interstitial", poolSize).set("rewardedVideo", poolSize))
+                .set("bannerRefresh", bannerRefresh));
+
+        // a second listener that only hears about rewards
+        harness.call("addEventListener", "rewardedVideo", "reward", new JavaFunction() {
+            @Override
+            public int invoke(LuaState L)
+            {
+                subscribedRewards++;
+                return 0;
+            }
+        });
+
+        // warm every ad type up in one call, answered by one preloaded event
+        harness.call("preload", new LuaTable()
+                .set("banner", new LuaTable().set("adPosition", "bottom"))
+                .set("interstitial", true)
+                .set("rewardedVideo", true));
+
+        for (cycle = 1; cycle <= cycles; cycle++) {
+            runCycle(random.nextInt(slotPlacements.length));
+
+            if ((backgroundRate > 0) && (random.nextDouble() < backgroundRate)) {
+                runInBackground(MIN_BACKGROUND_MS + (long)(random.nextDouble() * (MAX_BACKGROUND_MS - MIN_BACKGROUND_MS)));
+            }
+
+            if ((trimRate > 0) && (random.nextDouble() < trimRate)) {
+                trimmed++;
+                harness.trimMemory(TRIM_LEVELS[random.nextInt(TRIM_LEVELS.length)]);
+                runFrame();
+            }
+
+            if ((recreateRate > 0) && (random.nextDouble() < recreateRate)) {
+                destroyedActivities.add(new WeakReference<>(harness.recreateActivity()));
+                runFrame();
+            }
+        }
+
+        cycle = 0;
+        runFor(SETTLE_TIME_MS);
+
+        long wallNanos = System.nanoTime() - startedAt;
+
+        checkTotals();
+        checkRetention();
+
+        long heapAfter = usedHeap();
+
+        harness.close();
+        BenchmarkFiles.delete(filesDir);
+
+        report(wallNanos, heapBefore, heapAfter);
+
+        return violations.size();
+    }
+
+    private void runCycle(int slot)
+    {
+        int adType = slotTypes[slot];
+        String name = AD_TYPE_NAMES[adType];
+        int settled = events[slot][LOADED] + events[slot][FAILED];
+
+        if (adType == SimulatedAdNetwork.BANNER) {
+            harness.call("load", name, new LuaTable().set("adPosition", "bottom"));
+        }
+        else if (slot >= AD_TYPE_NAMES.length) {
+            harness.call("load", name, placementOptions(slot));
+        }
+        else {
+            harness.call("load", name);
+        }
+
+        if (! runUntil(slot, new int[] { LOADED, FAILED }, settled, LOAD_TIMEOUT_MS)) {
+            stalledLoads++;
+            // requests made before a failed init are only reported by the init failure
+            if (! initFailed) {
+                violation(slotName(slot) + " load never completed");
+            }
+            return;
+        }
+
+        checkLoadedState(adType);
+
+        if (! isLoaded(slot)) {
+            return;
+        }
+
+        if (adType == SimulatedAdNetwork.BANNER) {
+            showBanner();
+        }
+        else {
+            showFullscreen(slot);
+        }
+
+        checkLoadedState(adType);
+    }
+
+    private void showFullscreen(int slot)
+    {
+        int adType = slotTypes[slot];
+        int finished = events[slot][CLOSED] + events[slot][FAILED];
+
+        if (slot >= AD_TYPE_NAMES.length) {
+            harness.call("show", AD_TYPE_NAMES[adType], placementOptions(slot));
+        }
+        else {
+            harness.call("show", AD_TYPE_NAMES[adType]);
+        }
+
+        if (! runUntil(slot, new int[] { CLOSED, FAILED }, finished, SHOW_TIMEOUT_MS)) {
+            stalledShows++;
+            if (network.get(adType, SimulatedAdNetwork.DROPPED_CLOSES) == 0) {
+                violation(slotName(slot) + " never closed");
+            }
+        }
+    }
+
+    private LuaTable placementOptions(int slot)
+    {
+        return new LuaTable().set("placement", slotPlacements[slot]);
+    }
+
+    private String slotName(int slot)
+    {
+        return (slot < AD_TYPE_NAMES.length) ? AD_TYPE_NAMES[slot] : AD_TYPE_NAMES[slotTypes[slot]] + " " + slotPlacements[slot];
+    }
+
+    private boolean isLoaded(int slot)
+    {
+        if (slot < AD_TYPE_NAMES.length) {
+            return Boolean.TRUE.equals(harness.call("isLoaded", AD_TYPE_NAMES[slot]));
+        }
+
+        return Boolean.TRUE.equals(harness.call("isLoaded", AD_TYPE_NAMES[slotTypes[slot]], placementOptions(slot)));
+    }
+
+    private void showBanner()
+    {
+        int adType = SimulatedAdNetwork.BANNER;
+        int shown = events[adType][DISPLAYED] + events[adType][FAILED];
+
+        harness.call("show", AD_TYPE_NAMES[adType]);
+
+        if (runUntil(adType, new int[] { DISPLAYED, FAILED }, shown, SHOW_TIMEOUT_MS)) {
+            runFor(config.displayTime.sample(random));
+
+            // refreshes must stop while the app is in the background, with the banner still on screen
+            if ((bannerRefresh > 0) && (backgroundRate > 0) && (random.nextDouble() < backgroundRate)) {
+                runInBackground(MIN_BACKGROUND_MS + (long)(random.nextDouble() * (MAX_BACKGROUND_MS - MIN_BACKGROUND_MS)));
+            }
+        }
+        else {
+            stalledShows++;
+            violation("banner never displayed");
+        }
+
+        harness.call("hide", AD_TYPE_NAMES[adType]);
+        harness.runFrame();
+    }
+
+    private void runInBackground(long ms)
+    {
+        backgrounded++;
+
+        long bannerLoads = network.get(SimulatedAdNetwork.BANNER, SimulatedAdNetwork.LOADS);
+
+        harness.suspend();
+        runFor(ms);
+        harness.resume();
+
+        expect("banner loads in the background", bannerLoads, network.get(SimulatedAdNetwork.BANNER, SimulatedAdNetwork.LOADS));
+
+        // the catch-up after resuming should reach Lua as a task or two, not as a backlog
+        for (long elapsed = 0; elapsed < 2000; elapsed += PluginHarness.FRAME_MS) {
+            runFrame();
+            maxFrameTasks = Math.max(maxFrameTasks, harness.getLastFrameTasks());
+        }
+    }
+
+    // the plugin has a fullscreen ad ready, in the default placement or a named one, exactly when the
+    // network has handed one out that was not shown
+    private void checkLoadedState(int adType)
+    {
+        boolean pluginLoaded = isLoaded(adType);
+
+        // kidoz.state is updated before the event that reported the change is delivered
+        Object state = ((LuaTable)harness.library.get("state")).get(AD_TYPE_NAMES[adType]);
+        if ("ready".equals(state) != pluginLoaded) {
+            violation(AD_TYPE_NAMES[adType] + " isLoaded() is " + pluginLoaded + " but kidoz.state is " + state);
+        }
+
+        if (adType == SimulatedAdNetwork.BANNER) {
+            return;
+        }
+
+        LuaTable placementStates = (LuaTable)((LuaTable)harness.library.get("state")).get("placements");
+
+        for (int slot = AD_TYPE_NAMES.length; slot < slotPlacements.length; slot++) {
+            if (slotTypes[slot] == adType) {
+                boolean placementLoaded = isLoaded(slot);
+                Object placementState = placementStates.get(slotPlacements[slot]);
+
+                if ("ready".equals(placementState) != placementLoaded) {
+                    violation(slotName(slot) + " isLoaded() is " + placementLoaded + " but kidoz.state is " + placementState);
+                }
+                pluginLoaded |= placementLoaded;
+            }
+        }
+
+        boolean networkLoaded = readyAds(adType) > 0;
+
+        if (pluginLoaded != networkLoaded) {
+            violation(AD_TYPE_NAMES[adType] + " isLoaded() is " + pluginLoaded + " but the network has " + readyAds(adType) + " ready");
+        }
+    }
+
+    // fullscreen ads the network handed out that were neither shown nor evicted by the plugin
+    private int readyAds(int adType)
+    {
+        if (adType == SimulatedAdNetwork.BANNER) {
+            return network.getReady(adType);
+        }
+
+        return network.getReady(adType) - evictedAds[adType];
+    }
+
+    private void checkTotals()
+    {
+        if (initialized == initFailed) {
+            violation("expected either an init or an init failed event");
+        }
+        expect("preloaded events", 1, preloaded);
+        expect("subscribed reward events", network.get(SimulatedAdNetwork.REWARDEDVIDEO, SimulatedAdNetwork.REWARDS), subscribedRewards);
+
+        LuaTable metrics = (LuaTable)harness.call("getMetrics");
+
+        LuaTable placementMetrics = (LuaTable)metrics.get("placements");
+        expect("placements in metrics", placements, placementMetrics.size());
+
+        for (int adType = 0; adType < AD_TYPE_NAMES.length; adType++) {
+            String name = AD_TYPE_NAMES[adType];
+            long[] received = new long[PHASES.length];
+            List<LuaTable> typeMetrics = new ArrayList<>();
+
+            typeMetrics.add((LuaTable)metrics.get(name));
+
+            for (int slot = 0; slot < slotPlacements.length; slot++) {
+                if (slotTypes[slot] != adType) {
+                    continue;
+                }
+
+                for (int phase = 0; phase < PHASES.length; phase++) {
+                    received[phase] += events[slot][phase];
+                }
+
+                if (slot >= AD_TYPE_NAMES.length) {
+                    typeMetrics.add((LuaTable)placementMetrics.get(slotPlacements[slot]));
+                }
+            }
+
+            expect(name + " displayed events", network.get(adType, SimulatedAdNetwork.SHOWN), received[DISPLAYED]);
+            // banners swapped out by a refresh are closed without a closed event
+            long refreshes = sum(typeMetrics, "refreshes");
+            expect(name + " closed events", network.get(adType, SimulatedAdNetwork.CLOSED) - refreshes, received[CLOSED]);
+            bannerRefreshes += refreshes;
+            expect(name + " reward events", network.get(adType, SimulatedAdNetwork.REWARDS), received[REWARD]);
+            expect(name + " misuses", 0, network.get(adType, SimulatedAdNetwork.MISUSES));
+
+            expect(name + " metrics.requests", network.get(adType, SimulatedAdNetwork.LOADS), sum(typeMetrics, "requests"));
+            // every filled load is either loaded or timed out, a late one times out unless its answer
+            // arrived while the app was in the background, when timeouts wait for it to resume
+            long dropped = network.get(adType, SimulatedAdNetwork.DROPPED_LOADS);
+            long lateLoads = network.get(adType, SimulatedAdNetwork.LATE_LOADS);
+            long timeouts = sum(typeMetrics, "timeouts");
+            expect(name + " metrics.loaded", network.get(adType, SimulatedAdNetwork.FILLED) + dropped - timeouts, sum(typeMetrics, "loaded"));
+            expect(name + " metrics.noFill", network.get(adType, SimulatedAdNetwork.NO_FILLS), sum(typeMetrics, "noFill"));
+            expect(name + " metrics.evictions", evictedAds[adType], sum(typeMetrics, "evictions"));
+            if ((timeouts < dropped) || (timeouts > dropped + lateLoads) || ((backgroundRate == 0) && (timeouts != dropped + lateLoads))) {
+                violation(name + " metrics.timeouts: expected " + dropped + " dropped plus up to " + lateLoads + " late loads, got " + timeouts);
+            }
+            expect(name + " metrics.failed",
+                    network.get(adType, SimulatedAdNetwork.NO_FILLS) + network.get(adType, SimulatedAdNetwork.LOAD_ERRORS) + timeouts,
+                    sum(typeMetrics, "failed"));
+        }
+
+        // the backgrounded stretches are short enough for the default event queue bound, which only
+        // folds evictions together, and those still add up to every ad released
+        LuaTable eventMetrics = (LuaTable)metrics.get("events");
+        maxQueuedEvents = (long)(double)(Double)eventMetrics.get("maxQueued");
+        expect("dropped events", 0, (long)(double)(Double)eventMetrics.get("dropped"));
+        expect("collapsed events", foldedEvictions, (long)(double)(Double)eventMetrics.get("collapsed"));
+
+        uiMetrics = (LuaTable)metrics.get("ui");
+
+        expect("undelivered runtime tasks", 0, undeliveredTasks());
+    }
+
+    // adds up a counter of the metrics of an ad type and its placements
+    private static long sum(List<LuaTable> metrics, String counter)
+    {
+        long total = 0;
+        for (LuaTable table : metrics) {
+            total += (long)(double)(Double)table.get(counter);
+        }
+
+        return total;
+    }
+
+    // every ad the plugin let go of must be collectable, only the ones still pooled may be reachable
+    private void checkRetention()
+    {
+        int pooled = 0;
+        for (int adType = 0; adType < AD_TYPE_NAMES.length; adType++) {
+            pooled += readyAds(adType);
+        }
+
+        int live = Integer.MAX_VALUE;
+        for (int attempt = 0; (attempt < 5) && (live > pooled); attempt++) {
+            System.gc();
+            live = network.liveAds();
+        }
+
+        if (live > pooled) {
+            violation((live - pooled) + " ads retained after the plugin was done with them");
+        }
+
+        int retained = Integer.MAX_VALUE;
+        for (int attempt = 0; (attempt < 5) && (retained > 0); attempt++) {
+            System.gc();
+            retained = 0;
+            for (WeakReference<CoronaActivity> activity : destroyedActivities) {
+                retained += (activity.get() != null) ? 1 : 0;
+            }
+        }
+
+        if (retained > 0) {
+            violation(retained + " of " + destroyedActivities.size() + " destroyed activities retained");
+        }
+    }
+
+    // tasks still queued for the runtime after a frame has run them all
+    private int undeliveredTasks()
+    {
+        harness.runFrame();
+        return harness.runtime.runPendingTasks();
+    }
+
+    private boolean runUntil(int slot, int[] phases, int baseline, long timeoutMs)
+    {
+        for (long waited = 0; waited < timeoutMs; waited += PluginHarness.FRAME_MS) {
+            int total = 0;
+            for (int phase : phases) {
+                total += events[slot][phase];
+            }
+
+            if (total > baseline) {
+                return true;
+            }
+
+            runFrame();
+        }
+
+        return false;
+    }
+
+    private void runFor(long ms)
+    {
+        for (long elapsed = 0; elapsed < ms; elapsed += PluginHarness.FRAME_MS) {
+            runFrame();
+        }
+    }
+
+    private void runFrame()
+    {
+        harness.runFrame();
+        frames++;
+    }
+
+    private void expect(String what, long expected, long actual)
+    {
+        if (expected != actual) {
+            violation(what + ": expected " + expected + ", got " + actual);
+        }
+    }
+
+    private void violation(String message)
+    {
+        violations.add((cycle > 0) ? "cycle " + cycle + ": " + message : message);
+    }
+
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private void report(long wallNanos, long heapBefore, long heapAfter)
+    {
+        double seconds = wallNanos / 1e9;
+
+        System.out.printf("cycles %d, seed %d, pool size %d, batched events %b, frame aligned UI work %b%n",
+                cycles, config.seed, poolSize, batchEvents, alignToFrame);
+        System.out.printf("virtual time %.1f h in %.2f s wall clock: %.0f cycles/s, %.0f frames/s%n",
+                frames * PluginHarness.FRAME_MS / 3600000.0, seconds, cycles / seconds, frames / seconds);
+        System.out.printf("heap after GC: %d KB before, %d KB after%n", heapBefore / 1024, heapAfter / 1024);
+        System.out.printf("stalled loads %d, stalled shows %d%n", stalledLoads, stalledShows);
+        if (uiMetrics != null) {
+            LuaTable batchTime = (LuaTable)uiMetrics.get("batchTime");
+            System.out.printf("UI thread: %.0f batches of %.0f tasks, at most %.0f tasks, batch time p99 %.0f us, max %.0f us%n",
+                    (Double)uiMetrics.get("batches"), (Double)uiMetrics.get("tasks"), (Double)uiMetrics.get("maxTasks"),
+                    (Double)batchTime.get("p99") * 1e6, (Double)batchTime.get("max") * 1e6);
+        }
+        if (trimmed > 0) {
+            System.out.printf("trimmed memory %d times, evicted %d banners, %d interstitials, %d rewarded videos%n",
+                    trimmed, evictedAds[0], evictedAds[1], evictedAds[2]);
+        }
+        if (bannerRefresh > 0) {
+            System.out.printf("banner refreshed every %.0f s, %d banners swapped in on screen%n", bannerRefresh, bannerRefreshes);
+        }
+        if (placements > 0) {
+            System.out.printf("%d named placements besides the default ones%n", placements);
+        }
+        if (! destroyedActivities.isEmpty()) {
+            System.out.printf("recreated the activity %d times%n", destroyedActivities.size());
+        }
+        if (backgrounded > 0) {
+            System.out.printf("backgrounded %d times, at most %d runtime tasks in a frame after resuming, at most %d events held%n",
+                    backgrounded, maxFrameTasks, maxQueuedEvents);
+        }
+
+        for (int adType = 0; adType < AD_TYPE_NAMES.length; adType++) {
+            StringBuilder line = new StringBuilder(AD_TYPE_NAMES[adType]).append(':');
+
+            for (int counter = 0; counter < SimulatedAdNetwork.COUNTER_COUNT; counter++) {
+                line.append(' ').append(SimulatedAdNetwork.COUNTER_NAMES[counter]).append('=').append(network.get(adType, counter));
+            }
+
+            System.out.println(line);
+        }
+
+        if (violations.isEmpty()) {
+            System.out.println("OK");
+            return;
+        }
+
+        System.out.println(violations.size() + " violations");
+        for (int i = 0; (i < violations.size()) && (i < MAX_REPORTED_VIOLATIONS); i++) {
+            System.out.println("  " + violations.get(i));
+        }
+    }
+
+    private class Listener implements JavaFunction
+    {
+        @Override
+        public int invoke(LuaState L)
+        {
+            LuaTable event = L.toTable(L.getTop());
+            String phase = (String)event.get("phase");
+            String type = (String)event.get("type");
+
+            if ("preloaded".equals(phase)) {
+                LuaTable results = (LuaTable)event.get("results");
+                if ((results == null) || (results.size() != AD_TYPE_NAMES.length)) {
+                    violation("preloaded event without a result per ad type");
+                }
+                preloaded++;
+                return 0;
+            }
+
+            if (type == null) {
+                initialized |= "init".equals(phase);
+                initFailed |= "failed".equals(phase);
+                return 0;
+            }
+
+            // events replayed from the journal keep their placement too
+            String placement = (String)event.get("placement");
+            if (placement == null) {
+                violation(type + " " + phase + " event without a placement");
+            }
+
+            if ("evicted".equals(phase)) {
+                evictedAds[indexOf(AD_TYPE_NAMES, type)] += (int)(double)(Double)event.get("count");
+                if (event.get("collapsed") != null) {
+                    foldedEvictions += (long)(double)(Double)event.get("collapsed");
+                }
+                return 0;
+            }
+
+            int slot = indexOf(AD_TYPE_NAMES, type);
+            int index = indexOf(PHASES, phase);
+
+            if (! "default".equals(placement)) {
+                slot = indexOf(slotPlacements, placement);
+            }
+
+            if ((slot >= 0) && (index >= 0)) {
+                events[slot][index]++;
+            }
+
+            return 0;
+        }
+    }
+
+    private static int indexOf(String[] values, String value)
+    {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i].equals(value)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
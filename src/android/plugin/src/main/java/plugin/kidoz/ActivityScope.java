@@ -0,0 +1,109 @@
+//
+// ActivityScope.java
+// Kidoz Plugin
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package plugin.kidoz;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * The activity that view-bound ad objects were created for.
+ * <p/>
+ * The activity is only referenced weakly, so the scope itself never keeps a destroyed activity alive.
+ * Registered for the application's activity lifecycle callbacks, it tells its listener when the bound
+ * activity is destroyed, so the objects made for it can be detached and destroyed, and whenever an
+ * activity of the host class resumes, so they can be rebuilt for it. Activities of other classes, such
+ * as the ones the SDK shows its fullscreen ads in, are ignored.
+ * <p/>
+ * Not thread safe. All methods must be called on the UI thread, where lifecycle callbacks arrive.
+ */
+class ActivityScope implements Application.ActivityLifecycleCallbacks
+{
+    interface Listener
+    {
+        void onActivityResumed(Activity activity);
+
+        void onActivityDestroyed(Activity activity);
+    }
+
+    private static final WeakReference<Activity> NONE = new WeakReference<>(null);
+
+    private final Class<? extends Activity> hostClass;
+    private final Listener listener;
+    private WeakReference<Activity> bound = NONE;
+
+    ActivityScope(Class<? extends Activity> hostClass, Listener listener)
+    {
+        this.hostClass = hostClass;
+        this.listener = listener;
+    }
+
+    boolean isBound()
+    {
+        return bound.get() != null;
+    }
+
+    boolean isBoundTo(Activity activity)
+    {
+        return bound.get() == activity;
+    }
+
+    void bind(Activity activity)
+    {
+        bound = new WeakReference<>(activity);
+    }
+
+    void release()
+    {
+        bound = NONE;
+    }
+
+    @Override
+    public void onActivityResumed(Activity activity)
+    {
+        if (hostClass.isInstance(activity)) {
+            listener.onActivityResumed(activity);
+        }
+    }
+
+    @Override
+    public void onActivityDestroyed(Activity activity)
+    {
+        if (isBoundTo(activity)) {
+            listener.onActivityDestroyed(activity);
+        }
+    }
+
+    @Override
+    public void onActivityCreated(Activity activity, Bundle savedInstanceState)
+    {
+    }
+
+    @Override
+    public void onActivityStarted(Activity activity)
+    {
+    }
+
+    @Override
+    public void onActivityPaused(Activity activity)
+    {
+    }
+
+    @Override
+    public void onActivityStopped(Activity activity)
+    {
+    }
+
+    @Override
+    public void onActivitySaveInstanceState(Activity activity, Bundle outState)
+    {
+    }
+}
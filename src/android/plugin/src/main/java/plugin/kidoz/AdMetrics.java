@@ -0,0 +1,175 @@
+//
+// AdMetrics.java
+// Kidoz Plugin
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package plugin.kidoz;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Load and show timings and counters for every ad type, indexed by ad type.
+ * <p/>
+ * The UI thread records the start of each SDK show as the SDK is called, and closes it as its callbacks
+ * arrive. Loads can be answered in any order, so their durations are measured by the {@link LoadWatchdog},
+ * which matches each answer with its own load, and handed in as they complete.
+ * <p/>
+ * Counters and histograms can be read and reset from any thread; everything else is UI thread only.
+ */
+class AdMetrics
+{
+    // counters
+    static final int REQUESTS      = 0;
+    static final int LOADED        = 1;
+    static final int FAILED        = 2;
+    static final int NO_FILL       = 3;
+    static final int SHOWS         = 4;
+    static final int SHOW_FAILURES = 5;
+    static final int RETRIES       = 6;
+    static final int TIMEOUTS      = 7;
+    static final int EVICTIONS     = 8;
+    static final int REFRESHES     = 9;
+    static final int COUNTER_COUNT = 10;
+
+    // histograms
+    static final int LOAD_TIME      = 0;
+    static final int LOAD_FAIL_TIME = 1;
+    static final int SHOW_TIME      = 2;
+    static final int DISPLAY_TIME   = 3;
+    static final int HISTOGRAM_COUNT = 4;
+
+    private static final long NONE = -1;
+
+    private final int adTypeCount;
+    private final AtomicLongArray counters;
+    private final LatencyHistogram[] histograms;
+
+    private final long[] showStartedAt;
+    private final long[] displayedAt;
+
+    AdMetrics(int adTypeCount)
+    {
+        this.adTypeCount = adTypeCount;
+
+        counters = new AtomicLongArray(adTypeCount * COUNTER_COUNT);
+        histograms = new LatencyHistogram[adTypeCount * HISTOGRAM_COUNT];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+
+        showStartedAt = new long[adTypeCount];
+        displayedAt = new long[adTypeCount];
+        clearTimers();
+    }
+
+    void count(int adType, int counter)
+    {
+        counters.incrementAndGet(adType * COUNTER_COUNT + counter);
+    }
+
+    long get(int adType, int counter)
+    {
+        return counters.get(adType * COUNTER_COUNT + counter);
+    }
+
+    LatencyHistogram histogram(int adType, int histogram)
+    {
+        return histograms[adType * HISTOGRAM_COUNT + histogram];
+    }
+
+    void loadStarted(int adType)
+    {
+        count(adType, REQUESTS);
+    }
+
+    /**
+     * Records the answer to a load that took the given time in milliseconds.
+     */
+    void loadFinished(int adType, long loadTimeMs, boolean loaded, boolean noFill)
+    {
+        count(adType, loaded ? LOADED : FAILED);
+        if (noFill) {
+            count(adType, NO_FILL);
+        }
+
+        histogram(adType, loaded ? LOAD_TIME : LOAD_FAIL_TIME).record(loadTimeMs);
+    }
+
+    /**
+     * Records a load given up on after its timeout, as a failure.
+     */
+    void loadTimedOut(int adType, long loadTimeMs)
+    {
+        count(adType, TIMEOUTS);
+        loadFinished(adType, loadTimeMs, false, false);
+    }
+
+    void evicted(int adType, int ads)
+    {
+        counters.addAndGet(adType * COUNTER_COUNT + EVICTIONS, ads);
+    }
+
+    void showStarted(int adType, long now)
+    {
+        count(adType, SHOWS);
+        showStartedAt[adType] = now;
+    }
+
+    void displayed(int adType, long now)
+    {
+        if (showStartedAt[adType] != NONE) {
+            histogram(adType, SHOW_TIME).record(now - showStartedAt[adType]);
+            showStartedAt[adType] = NONE;
+        }
+
+        displayedAt[adType] = now;
+    }
+
+    void showFailed(int adType)
+    {
+        count(adType, SHOW_FAILURES);
+        showStartedAt[adType] = NONE;
+    }
+
+    void closed(int adType, long now)
+    {
+        if (displayedAt[adType] != NONE) {
+            histogram(adType, DISPLAY_TIME).record(now - displayedAt[adType]);
+            displayedAt[adType] = NONE;
+        }
+    }
+
+    /**
+     * Resets counters and histograms. Shows in progress keep their start times.
+     */
+    void reset()
+    {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Resets everything, including the start times of shows in progress. UI thread only.
+     */
+    void clear()
+    {
+        reset();
+        clearTimers();
+    }
+
+    private void clearTimers()
+    {
+        for (int i = 0; i < adTypeCount; i++) {
+            showStartedAt[i] = NONE;
+            displayedAt[i] = NONE;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+//
+// AdNetwork.java
+// Kidoz Plugin
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package plugin.kidoz;
+
+import android.app.Activity;
+
+import net.kidoz.ads.banner.KidozBannerView;
+
+/**
+ * The calls the plugin makes into the ad SDK, and the callbacks it expects back.
+ * <p/>
+ * {@link KidozAdNetwork} forwards them to the KIDOZ SDK. Keeping the plugin on this interface lets
+ * the ad logic run against a simulated network, without a device or a network connection.
+ * <p/>
+ * All methods are called on the UI thread, and implementations must deliver every callback there.
+ * Errors are reported as the SDK's error message, which may be null. A failed load also tells whether
+ * the network simply had no ad to fill it with, so callers never have to interpret the message. How
+ * reliable that is depends on the network: the KIDOZ SDK only gives a message, which
+ * {@link KidozAdNetwork} matches against its known no-fill wording.
+ */
+interface AdNetwork
+{
+    interface InitListener
+    {
+        void onInitSuccess();
+
+        void onInitError(String error);
+    }
+
+    /**
+     * An interstitial or rewarded video, loaded once and shown at most once. It is created before its load
+     * is issued and passed to every callback of that load, so it tells which load a callback answers.
+     */
+    interface FullscreenAd
+    {
+        void load();
+
+        void show();
+    }
+
+    /**
+     * Callbacks for fullscreen loads, and for the ads they produced. Interstitials never report a reward.
+     */
+    interface FullscreenAdListener
+    {
+        void onAdLoaded(FullscreenAd ad);
+
+        void onAdFailedToLoad(FullscreenAd ad, String error, boolean noFill);
+
+        void onAdShown(FullscreenAd ad);
+
+        void onAdFailedToShow(FullscreenAd ad, String error);
+
+        void onRewardReceived(FullscreenAd ad);
+
+        void onAdClosed(FullscreenAd ad);
+    }
+
+    /**
+     * The banner view. It is loaded again for every refresh, and stays loaded while it is shown and hidden.
+     * Once destroyed it is closed and detached from its activity, and ignores further calls. Callbacks
+     * already under way, such as the result of a load in flight, still arrive.
+     */
+    interface Banner
+    {
+        void setPosition(KidozBannerView.Position position);
+
+        void load();
+
+        void show();
+
+        void close();
+
+        void destroy();
+    }
+
+    interface BannerListener
+    {
+        void onAdLoaded();
+
+        void onAdFailedToLoad(String error, boolean noFill);
+
+        void onAdShown();
+
+        void onAdFailedToShow(String error);
+
+        void onAdClosed();
+    }
+
+    void initialize(Activity activity, String publisherID, String securityToken, InitListener listener);
+
+    FullscreenAd createInterstitial(Activity activity, FullscreenAdListener listener);
+
+    FullscreenAd createRewarded(Activity activity, FullscreenAdListener listener);
+
+    Banner createBanner(Activity activity, BannerListener listener);
+}
@@ -0,0 +1,251 @@
+//
+// AdPool.java
+// Kidoz Plugin
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package plugin.kidoz;
+
+/**
+ * Inventory of preloaded fullscreen ad instances for a single ad type.
+ * <p/>
+ * Ads are kept in a fixed ring in the order they finished loading, so {@link #poll()} always
+ * returns the oldest ready instance. The pool also tracks how many SDK loads are in flight so
+ * callers can top it up to its configured depth without over-requesting.
+ * <p/>
+ * Each ad carries its load time. Ads close to the end of their time to live are marked as expiring:
+ * they can still be shown, but no longer count towards the depth, so a replacement gets loaded
+ * while they are still usable. Once the replacement arrives the expiring ad is dropped.
+ * <p/>
+ * Under memory pressure the pool can be shrunk below its depth. It then stops asking for more ads
+ * until the limit is lifted again.
+ * <p/>
+ * Not thread safe. All methods must be called on the UI thread, where the SDK delivers its callbacks.
+ */
+class AdPool<T>
+{
+    static final int DEFAULT_DEPTH = 1;
+    static final int MAX_DEPTH     = 5;
+
+    static final long NONE = Long.MAX_VALUE;
+
+    // room for a full pool plus one replacement for every ad in it
+    private final Object[] ads = new Object[MAX_DEPTH * 2];
+    private final long[] loadedAt = new long[MAX_DEPTH * 2];
+    private int head     = 0;
+    private int count    = 0;
+    private int expiring = 0;
+    private int pending  = 0;
+    private int depth    = DEFAULT_DEPTH;
+    private int limit    = MAX_DEPTH;
+
+    int getDepth()
+    {
+        return depth;
+    }
+
+    void setDepth(int depth)
+    {
+        this.depth = Math.max(1, Math.min(depth, MAX_DEPTH));
+    }
+
+    int size()
+    {
+        return count;
+    }
+
+    boolean isEmpty()
+    {
+        return count == 0;
+    }
+
+    boolean isLoading()
+    {
+        return pending > 0;
+    }
+
+    /**
+     * Returns how many more loads must be requested to fill the pool, counting loads already in flight
+     * and not counting ads that are about to expire.
+     */
+    int missing()
+    {
+        return Math.max(0, Math.min(depth, limit) - (count - expiring) - pending);
+    }
+
+    /**
+     * Drops the oldest ads until at most the given number is left, and keeps the pool from asking for
+     * more than that until {@link #liftLimit()}. Returns the number of ads dropped.
+     */
+    int shrink(int limit)
+    {
+        this.limit = Math.min(this.limit, limit);
+
+        int dropped = 0;
+        while (count > this.limit) {
+            dropOldest();
+            dropped++;
+        }
+
+        return dropped;
+    }
+
+    /**
+     * Drops every ready ad and keeps counting the loads in flight. Returns the number of ads dropped.
+     */
+    int dropAll()
+    {
+        int dropped = count;
+        while (count > 0) {
+            dropOldest();
+        }
+
+        return dropped;
+    }
+
+    boolean isShrunk()
+    {
+        return limit < depth;
+    }
+
+    void liftLimit()
+    {
+        limit = MAX_DEPTH;
+    }
+
+    void loadStarted()
+    {
+        pending++;
+    }
+
+    void loadFailed()
+    {
+        if (pending > 0) {
+            pending--;
+        }
+    }
+
+    /**
+     * Adds a freshly loaded ad, loaded at the given time. Expiring ads it replaces are dropped.
+     */
+    void add(T ad, long now)
+    {
+        if (pending > 0) {
+            pending--;
+        }
+
+        store(ad, now);
+    }
+
+    /**
+     * Adds an ad from a load that was already given up on, and is no longer counted as in flight.
+     */
+    void addLate(T ad, long now)
+    {
+        store(ad, now);
+    }
+
+    private void store(T ad, long now)
+    {
+        if (count == ads.length) {
+            dropOldest();
+        }
+
+        int index = (head + count) % ads.length;
+        ads[index] = ad;
+        loadedAt[index] = now;
+        count++;
+
+        while ((expiring > 0) && (count > depth)) {
+            dropOldest();
+        }
+    }
+
+    /**
+     * Removes and returns the oldest ready ad, or null if the pool is empty.
+     */
+    @SuppressWarnings("unchecked")
+    T poll()
+    {
+        if (count == 0) {
+            return null;
+        }
+
+        T ad = (T)ads[head];
+        dropOldest();
+
+        return ad;
+    }
+
+    /**
+     * Load time of the most recently loaded ad, or {@link #NONE} if the pool is empty.
+     */
+    long newestLoadedAt()
+    {
+        return (count == 0) ? NONE : loadedAt[(head + count - 1) % ads.length];
+    }
+
+    /**
+     * Drops ads loaded at or before the cutoff and marks those loaded at or before the refresh cutoff
+     * as expiring. Returns the number of ads dropped.
+     */
+    int expire(long expiredCutoff, long refreshCutoff)
+    {
+        int dropped = 0;
+        while ((count > 0) && (loadedAt[head] <= expiredCutoff)) {
+            dropOldest();
+            dropped++;
+        }
+
+        expiring = 0;
+        while ((expiring < count) && (loadedAt[(head + expiring) % ads.length] <= refreshCutoff)) {
+            expiring++;
+        }
+
+        return dropped;
+    }
+
+    /**
+     * Returns the next time {@link #expire(long, long)} has work to do for the given time to live and
+     * refresh margin, or {@link #NONE} if the pool is empty.
+     */
+    long nextExpiry(long ttl, long refreshMargin)
+    {
+        if (count == 0) {
+            return NONE;
+        }
+
+        long next = loadedAt[head] + ttl;
+        if (expiring < count) {
+            next = Math.min(next, loadedAt[(head + expiring) % ads.length] + ttl - refreshMargin);
+        }
+
+        return next;
+    }
+
+    void clear()
+    {
+        for (int i = 0; i < ads.length; i++) {
+            ads[i] = null;
+        }
+
+        head = 0;
+        count = 0;
+        expiring = 0;
+        pending = 0;
+        limit = MAX_DEPTH;
+    }
+
+    private void dropOldest()
+    {
+        ads[head] = null;
+        head = (head + 1) % ads.length;
+        count--;
+
+        if (expiring > 0) {
+            expiring--;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+//
+// AdStateTable.java
+// Kidoz Plugin
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package plugin.kidoz;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free state machine for every placement, indexed like the {@link PlacementRegistry}.
+ * <p/>
+ * The UI thread drives transitions as SDK callbacks arrive, using compare-and-set so that a transition
+ * only applies from the states it is legal from. The Lua thread reads the table without locking.
+ * <p/>
+ * Each placement also carries the time its newest ready ad expires, so a ready ad whose expiry check
+ * has not run yet (for example while the device slept) is still reported as not ready.
+ * <p/>
+ * An optional listener hears about every transition that changed a state, on the thread that made it.
+ */
+class AdStateTable
+{
+    interface Listener
+    {
+        void onStateChanged(int adType);
+    }
+
+    static final int IDLE    = 0;
+    static final int LOADING = 1;
+    static final int READY   = 2;
+    static final int SHOWING = 3;
+    static final int EXPIRED = 4;
+    static final int FAILED  = 5;
+
+    // masks of the states a transition may start from
+    static final int FROM_ANY      = 0x3f;
+    static final int FROM_IDLE     = (1 << IDLE) | (1 << FAILED) | (1 << EXPIRED);
+    static final int FROM_LOADING  = 1 << LOADING;
+    static final int FROM_READY    = 1 << READY;
+    static final int FROM_SHOWING  = 1 << SHOWING;
+
+    static final long NEVER = Long.MAX_VALUE;
+
+    private final AtomicIntegerArray states;
+    private final AtomicLongArray readyUntil;
+    private volatile Listener listener;
+
+    AdStateTable(int adTypeCount)
+    {
+        states = new AtomicIntegerArray(adTypeCount);
+        readyUntil = new AtomicLongArray(adTypeCount);
+        reset();
+    }
+
+    void setListener(Listener listener)
+    {
+        this.listener = listener;
+    }
+
+    int get(int adType)
+    {
+        return states.get(adType);
+    }
+
+    boolean isReady(int adType)
+    {
+        return states.get(adType) == READY;
+    }
+
+    /**
+     * Same as {@link #isReady(int)}, but also reports an expired ad as not ready.
+     * The time must come from the same clock as the one passed to {@link #setReadyUntil(int, long)}.
+     */
+    boolean isReady(int adType, long now)
+    {
+        return (states.get(adType) == READY) && (now < readyUntil.get(adType));
+    }
+
+    void setReadyUntil(int adType, long expiresAt)
+    {
+        readyUntil.set(adType, expiresAt);
+    }
+
+    /**
+     * Moves the ad type to the given state if its current state is in the mask.
+     * Returns false, leaving the state untouched, if the transition is not legal from the current state.
+     */
+    boolean transition(int adType, int fromMask, int to)
+    {
+        while (true) {
+            int current = states.get(adType);
+
+            if ((fromMask & (1 << current)) == 0) {
+                return false;
+            }
+
+            if (states.compareAndSet(adType, current, to)) {
+                Listener stateListener = listener;
+                if ((stateListener != null) && (current != to)) {
+                    stateListener.onStateChanged(adType);
+                }
+                return true;
+            }
+        }
+    }
+
+    void reset()
+    {
+        for (int i = 0; i < states.length(); i++) {
+            states.set(i, IDLE);
+            readyUntil.set(i, NEVER);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+//
+// BeaconWorker.java
+// Kidoz Plugin
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package plugin.kidoz;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+
+import java.util.Arrays;
+
+/**
+ * Background worker that defers beacon events and sends them off the UI thread.
+ * <p/>
+ * Recording an event only bumps a counter keyed by event type and placement. The first event after a
+ * flush schedules the next one on the worker thread, which then sends every counted event grouped by key.
+ * The Corona beacon takes one event per call and collects the device data itself, so each counted event
+ * is still sent as its own beacon: what the worker saves is the UI thread time and a message per event,
+ * not requests. The key table grows when a new key does not fit, which stops once every event type and
+ * placement in use has been seen, so after warm-up recording does not allocate.
+ * <p/>
+ * While paused, as the app is in the background, events are still counted but not sent, so the worker
+ * thread stays asleep. Everything counted in the meantime goes out as one batch after it resumes.
+ * <p/>
+ * {@link #record(String, String, int)} and {@link #flush()} are thread safe. Events are sent on the worker thread.
+ */
+class BeaconWorker
+{
+    interface Sender
+    {
+        void send(String eventType, String placementID);
+
+        // called after each batch with the highest sequence number it covered, 0 if none
+        void sent(int lastSequence);
+    }
+
+    static final long DEFAULT_FLUSH_INTERVAL_MS = 5000;
+
+    private static final int INITIAL_KEYS = 8;
+
+    // guarded by this
+    private String[] eventTypes = new String[INITIAL_KEYS];
+    private String[] placementIDs = new String[INITIAL_KEYS];
+    private int[] counts = new int[INITIAL_KEYS];
+    private int keys = 0;
+    private int lastSequence = 0;
+    private boolean flushScheduled = false;
+    private boolean paused = false;
+
+    // snapshot sent by the worker thread, so sending happens outside the lock (worker thread only)
+    private String[] sendingEventTypes = new String[INITIAL_KEYS];
+    private String[] sendingPlacementIDs = new String[INITIAL_KEYS];
+    private int[] sendingCounts = new int[INITIAL_KEYS];
+
+    private final Sender sender;
+    private final long flushInterval;
+    private final HandlerThread thread;
+    private final Handler handler;
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            send();
+        }
+    };
+
+    BeaconWorker(Sender sender, long flushInterval)
+    {
+        this.sender = sender;
+        this.flushInterval = flushInterval;
+
+        thread = new HandlerThread("KidozBeacon", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Counts the event for the next batch. The sequence number is passed back through
+     * {@link Sender#sent(int)} once the event has been sent.
+     */
+    void record(String eventType, String placementID, int sequence)
+    {
+        synchronized (this) {
+            int key = find(eventType, placementID);
+
+            if (key < 0) {
+                if (keys == eventTypes.length) {
+                    eventTypes = Arrays.copyOf(eventTypes, keys * 2);
+                    placementIDs = Arrays.copyOf(placementIDs, keys * 2);
+                    counts = Arrays.copyOf(counts, keys * 2);
+                }
+
+                key = keys++;
+                eventTypes[key] = eventType;
+                placementIDs[key] = placementID;
+                counts[key] = 0;
+            }
+
+            counts[key]++;
+            lastSequence = Math.max(lastSequence, sequence);
+
+            if ((! flushScheduled) && (! paused)) {
+                flushScheduled = true;
+                handler.postDelayed(flushTask, flushInterval);
+            }
+        }
+    }
+
+    /**
+     * Sends what has been recorded so far, then keeps counting events without sending them until resumed.
+     */
+    void pause()
+    {
+        synchronized (this) {
+            paused = true;
+            flush();
+        }
+    }
+
+    /**
+     * Sends everything counted while paused as a single batch, one flush interval from now.
+     */
+    void resume()
+    {
+        synchronized (this) {
+            paused = false;
+
+            if ((keys > 0) && (! flushScheduled)) {
+                flushScheduled = true;
+                handler.postDelayed(flushTask, flushInterval);
+            }
+        }
+    }
+
+    /**
+     * Sends everything recorded so far without waiting for the flush interval.
+     */
+    void flush()
+    {
+        synchronized (this) {
+            handler.removeCallbacks(flushTask);
+            flushScheduled = true;
+            handler.post(flushTask);
+        }
+    }
+
+    /**
+     * Sends everything recorded so far, runs the given task on the worker thread after that batch, and
+     * stops the worker thread.
+     */
+    void quit(Runnable last)
+    {
+        flush();
+        handler.post(last);
+        thread.quitSafely();
+    }
+
+    /**
+     * Waits up to the given time for the worker thread to finish after {@link #quit(Runnable)}, and
+     * returns whether it did.
+     */
+    boolean awaitQuit(long timeoutMs)
+    {
+        try {
+            thread.join(timeoutMs);
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        return ! thread.isAlive();
+    }
+
+    // worker thread
+    private void send()
+    {
+        int count;
+        int sentSequence;
+
+        synchronized (this) {
+            count = keys;
+            sentSequence = lastSequence;
+
+            if (count > sendingEventTypes.length) {
+                sendingEventTypes = new String[eventTypes.length];
+                sendingPlacementIDs = new String[eventTypes.length];
+                sendingCounts = new int[eventTypes.length];
+            }
+
+            for (int i = 0; i < count; i++) {
+                sendingEventTypes[i] = eventTypes[i];
+                sendingPlacementIDs[i] = placementIDs[i];
+                sendingCounts[i] = counts[i];
+                eventTypes[i] = null;
+                placementIDs[i] = null;
+                counts[i] = 0;
+            }
+
+            keys = 0;
+            lastSequence = 0;
+            flushScheduled = false;
+        }
+
+        for (int i = 0; i < count; i++) {
+            for (int n = 0; n < sendingCounts[i]; n++) {
+                sender.send(sendingEventTypes[i], sendingPlacementIDs[i]);
+            }
+
+            sendingEventTypes[i] = null;
+            sendingPlacementIDs[i] = null;
+        }
+
+        sender.sent(sentSequence);
+    }
+
+    private int find(String eventType, String placementID)
+    {
+        for (int i = 0; i < keys; i++) {
+            if (eventTypes[i].equals(eventType) && equalPlacements(placementIDs[i], placementID)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static boolean equalPlacements(String a, String b)
+    {
+        return (a == null) ? (b == null) : a.equals(b);
+    }
+}
@@ -0,0 +1,141 @@
+//
+// DeadlineTimer.java
+// Kidoz Plugin
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package plugin.kidoz;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.Arrays;
+
+/**
+ * Multiplexes a fixed number of deadline slots onto a single main-thread timer.
+ * <p/>
+ * Only one message is ever queued on the main looper, armed for the earliest pending deadline,
+ * no matter how many slots are scheduled. Scheduling a slot allocates nothing.
+ * <p/>
+ * While paused nothing fires, but slots can still be scheduled and cancelled. On resume every deadline
+ * that came due in the meantime fires once, all in a single tick, however long the pause was.
+ * <p/>
+ * Not thread safe. All methods must be called on the UI thread, and the listener is invoked there.
+ */
+class DeadlineTimer implements Runnable
+{
+    interface Listener
+    {
+        void onDeadline(int slot);
+    }
+
+    private static final long NONE = Long.MAX_VALUE;
+
+    private final long[] deadlines;
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private long armedAt = NONE;
+    private boolean paused = false;
+
+    DeadlineTimer(int slotCount, Listener listener)
+    {
+        this.deadlines = new long[slotCount];
+        this.listener = listener;
+        Arrays.fill(deadlines, NONE);
+    }
+
+    void schedule(int slot, long delayMs)
+    {
+        deadlines[slot] = SystemClock.uptimeMillis() + Math.max(0, delayMs);
+        arm();
+    }
+
+    void cancel(int slot)
+    {
+        deadlines[slot] = NONE;
+        arm();
+    }
+
+    boolean isScheduled(int slot)
+    {
+        return deadlines[slot] != NONE;
+    }
+
+    void pause()
+    {
+        paused = true;
+        handler.removeCallbacks(this);
+        armedAt = NONE;
+    }
+
+    /**
+     * Fires again, catching up on everything that came due while paused in one tick after the given delay.
+     */
+    void resume(long catchUpDelayMs)
+    {
+        if (! paused) {
+            return;
+        }
+
+        paused = false;
+        long catchUp = SystemClock.uptimeMillis() + Math.max(0, catchUpDelayMs);
+
+        for (int slot = 0; slot < deadlines.length; slot++) {
+            if (deadlines[slot] < catchUp) {
+                deadlines[slot] = catchUp;
+            }
+        }
+
+        arm();
+    }
+
+    void cancelAll()
+    {
+        Arrays.fill(deadlines, NONE);
+        handler.removeCallbacks(this);
+        armedAt = NONE;
+    }
+
+    @Override
+    public void run()
+    {
+        armedAt = NONE;
+        long now = SystemClock.uptimeMillis();
+
+        for (int slot = 0; slot < deadlines.length; slot++) {
+            if (deadlines[slot] <= now) {
+                deadlines[slot] = NONE;
+                listener.onDeadline(slot);
+            }
+        }
+
+        arm();
+    }
+
+    // keeps the single queued message in line with the earliest deadline
+    private void arm()
+    {
+        if (paused) {
+            return;
+        }
+
+        long next = NONE;
+        for (long deadline : deadlines) {
+            next = Math.min(next, deadline);
+        }
+
+        if (next == armedAt) {
+            return;
+        }
+
+        handler.removeCallbacks(this);
+        armedAt = next;
+
+        if (next != NONE) {
+            handler.postAtTime(this, next);
+        }
+    }
+}
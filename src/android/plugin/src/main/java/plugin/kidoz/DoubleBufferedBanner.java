@@ -0,0 +1,190 @@
+//
+// DoubleBufferedBanner.java
+// Kidoz Plugin
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package plugin.kidoz;
+
+import android.app.Activity;
+
+import net.kidoz.ads.banner.KidozBannerView;
+
+/**
+ * A banner made of two network banners, so that it can be refreshed without going blank.
+ * <p/>
+ * While the front banner is on screen, loads go to the back one, which stays off screen. Once it has
+ * loaded, it is shown and the front one is closed within the same UI thread message, so no frame is
+ * drawn without a banner, and the two swap roles. While nothing is on screen, loads go to the front
+ * banner in place, like with a single banner.
+ * <p/>
+ * The listener hears about loads of either banner and about the front banner being shown and closed,
+ * but not about a banner closed because it was swapped out. The back banner is only created once the
+ * first load has to go off screen.
+ * <p/>
+ * Not thread safe. All methods must be called on the UI thread, where the callbacks arrive too.
+ */
+class DoubleBufferedBanner implements AdNetwork.Banner
+{
+    private final AdNetwork network;
+    private final Activity activity;
+    private final AdNetwork.BannerListener listener;
+
+    private Buffer front;
+    private Buffer back = null;
+    private KidozBannerView.Position position = null;
+    private boolean destroyed = false;
+
+    DoubleBufferedBanner(AdNetwork network, Activity activity, AdNetwork.BannerListener listener)
+    {
+        this.network = network;
+        this.activity = activity;
+        this.listener = listener;
+        this.front = new Buffer();
+    }
+
+    @Override
+    public void setPosition(KidozBannerView.Position position)
+    {
+        this.position = position;
+
+        front.banner.setPosition(position);
+        if (back != null) {
+            back.banner.setPosition(position);
+        }
+    }
+
+    @Override
+    public void load()
+    {
+        if (destroyed) {
+            return;
+        }
+
+        if (! front.shown) {
+            front.banner.load();
+            return;
+        }
+
+        if (back == null) {
+            back = new Buffer();
+            if (position != null) {
+                back.banner.setPosition(position);
+            }
+        }
+        back.banner.load();
+    }
+
+    @Override
+    public void show()
+    {
+        if (! destroyed) {
+            front.banner.show();
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        front.banner.close();
+    }
+
+    @Override
+    public void destroy()
+    {
+        if (destroyed) {
+            return;
+        }
+
+        front.banner.destroy();
+        if (back != null) {
+            back.banner.destroy();
+        }
+
+        destroyed = true;
+    }
+
+    // brings the freshly loaded back banner to the front, on screen if the front one was
+    private void swap()
+    {
+        Buffer retired = front;
+        front = back;
+        back = retired;
+
+        if (retired.shown && (! destroyed)) {
+            // counted as on screen from now on, so that the next load goes off screen again
+            front.shown = true;
+            front.banner.show();
+
+            retired.swappedOut = true;
+            retired.banner.close();
+        }
+    }
+
+    // one of the two banners, and the callbacks it reports to the listener
+    private class Buffer implements AdNetwork.BannerListener
+    {
+        final AdNetwork.Banner banner;
+        boolean shown = false;
+        boolean swappedOut = false;
+
+        Buffer()
+        {
+            banner = network.createBanner(activity, this);
+        }
+
+        @Override
+        public void onAdLoaded()
+        {
+            if (this == back) {
+                swap();
+            }
+
+            listener.onAdLoaded();
+        }
+
+        @Override
+        public void onAdFailedToLoad(String error, boolean noFill)
+        {
+            // a failed refresh leaves the front banner as it is
+            listener.onAdFailedToLoad(error, noFill);
+        }
+
+        @Override
+        public void onAdShown()
+        {
+            shown = true;
+
+            if (this == front) {
+                listener.onAdShown();
+            }
+        }
+
+        @Override
+        public void onAdFailedToShow(String error)
+        {
+            shown = false;
+
+            if (this == front) {
+                listener.onAdFailedToShow(error);
+            }
+        }
+
+        @Override
+        public void onAdClosed()
+        {
+            shown = false;
+
+            if (swappedOut) {
+                swappedOut = false;
+                return;
+            }
+
+            if (this == front) {
+                listener.onAdClosed();
+            }
+        }
+    }
+}
@@ -0,0 +1,450 @@
+//
+// EventJournal.java
+// Kidoz Plugin
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package plugin.kidoz;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Append-only journal of beacon and ad lifecycle events that have not been sent or delivered yet.
+ * <p/>
+ * The journal lives in two memory-mapped segment files of fixed size. Writes are plain stores into
+ * the mapping, so they neither allocate nor wait for the disk, and what has been written survives the
+ * process being killed. Every record is followed, once handled, by an acknowledgement carrying the
+ * highest sequence number handled in its stream. A new process carries on after the last record of the
+ * segment the previous one left, so what that process did not get to handle stays in the journal, under
+ * its own sequence number, until it is acknowledged.
+ * <p/>
+ * When the current segment is full, the records that are still unacknowledged are copied to the other
+ * segment, which then becomes current by taking a higher generation number. The generation is written
+ * last, so a crash during rotation leaves the previous segment in charge.
+ * <p/>
+ * Record layout, {@link #RECORD_SIZE} bytes: kind, stream, code, ad type, sequence number (int), time (long),
+ * placement id, unused. A placement is named once per segment by name records: kind, placement id, chunk
+ * number, name length in bytes, unused, and up to {@link #NAME_CHUNK} bytes of the UTF-8 name. Ids are
+ * kept while a record in the segment carries them, so a new process resolves the previous one's records
+ * to the same placement names.
+ * <p/>
+ * Only one instance may use the files at a time. Once closed, an instance ignores every call, so that
+ * callers still holding it cannot write to files another instance has opened since.
+ * <p/>
+ * Thread safe.
+ */
+class EventJournal
+{
+    interface Replay
+    {
+        void replay(int stream, int code, int adType, String placement, int sequence, long time);
+    }
+
+    static final int STREAM_BEACON = 0;
+    static final int STREAM_EVENT  = 1;
+    static final int STREAM_COUNT  = 2;
+
+    static final int RECORD_SIZE = 24;
+    static final int DEFAULT_SEGMENT_SIZE = 64 * 1024;
+
+    private static final int MAGIC       = 0x4b444a32; // "KDJ2"
+    private static final int HEADER_SIZE = RECORD_SIZE;
+
+    private static final byte KIND_END    = 0;
+    private static final byte KIND_RECORD = 1;
+    private static final byte KIND_ACK    = 2;
+    private static final byte KIND_NAME   = 3;
+
+    // placement ids fit a byte, 0 for records without a placement
+    private static final int NO_PLACEMENT      = 0;
+    private static final int MAX_PLACEMENT_IDS = 255;
+
+    // longer names are journaled without their placement
+    private static final int MAX_NAME_BYTES   = 255;
+    private static final int NAME_OFFSET      = 8;
+    private static final int NAME_CHUNK       = RECORD_SIZE - NAME_OFFSET;
+    private static final int MAX_NAME_RECORDS = (MAX_NAME_BYTES + NAME_CHUNK - 1) / NAME_CHUNK;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final MappedByteBuffer[] segments = new MappedByteBuffer[2];
+    private final int segmentSize;
+    private int current = 0;
+    private int generation = 0;
+    private int position = HEADER_SIZE;
+
+    private final int[] nextSequence = new int[STREAM_COUNT];
+    private final int[] acknowledged = new int[STREAM_COUNT];
+    private int dropped = 0;
+    private boolean closed = false;
+
+    // name of each placement id in the current segment, null if free
+    private final String[] placementNames = new String[MAX_PLACEMENT_IDS + 1];
+    private final boolean[] referenced = new boolean[MAX_PLACEMENT_IDS + 1];
+    private final byte[] nameBytes = new byte[MAX_NAME_BYTES];
+
+    private EventJournal(int segmentSize)
+    {
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Maps the journal segments in the given directory, creating them if needed.
+     */
+    static EventJournal open(File directory, int segmentSize) throws IOException
+    {
+        EventJournal journal = new EventJournal(segmentSize);
+
+        for (int i = 0; i < journal.segments.length; i++) {
+            RandomAccessFile file = new RandomAccessFile(new File(directory, "kidoz-journal-" + i + ".bin"), "rw");
+
+            try {
+                journal.segments[i] = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            }
+            finally {
+                // the mapping stays valid after the file is closed
+                file.close();
+            }
+        }
+
+        int generation0 = journal.generationOf(0);
+        int generation1 = journal.generationOf(1);
+        journal.current = (generation1 > generation0) ? 1 : 0;
+        journal.generation = Math.max(generation0, generation1);
+        journal.resume();
+
+        return journal;
+    }
+
+    /**
+     * Hands every record left unacknowledged by the previous process to the replay callback, oldest
+     * first, with its sequence number. The records stay in the journal until those sequence numbers
+     * are acknowledged. The callback must not call back into the journal.
+     */
+    synchronized void replay(Replay replay)
+    {
+        if (closed) {
+            return;
+        }
+
+        MappedByteBuffer segment = segments[current];
+
+        for (int offset = HEADER_SIZE; offset + RECORD_SIZE <= position; offset += RECORD_SIZE) {
+            if (isUnacknowledged(segment, offset)) {
+                replay(segment, offset, replay);
+            }
+        }
+    }
+
+    /**
+     * Hands the records of the stream numbered from the first to the last given sequence number, that
+     * are still unacknowledged, to the replay callback, oldest first. The callback must not call back
+     * into the journal.
+     */
+    synchronized void replay(int stream, int fromSequence, int toSequence, Replay replay)
+    {
+        if (closed) {
+            return;
+        }
+
+        MappedByteBuffer segment = segments[current];
+
+        for (int offset = HEADER_SIZE; offset + RECORD_SIZE <= position; offset += RECORD_SIZE) {
+            int sequence = segment.getInt(offset + 4);
+
+            if ((segment.get(offset) == KIND_RECORD) && (segment.get(offset + 1) == stream)
+                    && (sequence >= fromSequence) && (sequence <= toSequence) && (sequence > acknowledged[stream])) {
+                replay(segment, offset, replay);
+            }
+        }
+    }
+
+    /**
+     * Appends a record, of the given placement or null, and returns its sequence number, or 0 if the
+     * journal is full of unacknowledged records.
+     */
+    synchronized int append(int stream, int code, int adType, String placement, long time)
+    {
+        if (closed) {
+            return 0;
+        }
+
+        // room for the placement's name too, in case it has none in this segment yet
+        int size = (placement == null) ? RECORD_SIZE : RECORD_SIZE * (1 + MAX_NAME_RECORDS);
+        if ((position + size > segmentSize) && ((! rotate()) || (position + size > segmentSize))) {
+            dropped++;
+            return 0;
+        }
+
+        int placementId = (placement == null) ? NO_PLACEMENT : placementId(placement);
+
+        int sequence = ++nextSequence[stream];
+        write(segments[current], position, KIND_RECORD, stream, code, adType, sequence, time, placementId);
+        position += RECORD_SIZE;
+
+        return sequence;
+    }
+
+    /**
+     * Marks every record of the stream up to the given sequence number as handled.
+     */
+    synchronized void acknowledge(int stream, int sequence)
+    {
+        if (closed || (sequence <= acknowledged[stream])) {
+            return;
+        }
+
+        if ((position + RECORD_SIZE > segmentSize) && (! rotate())) {
+            return;
+        }
+
+        acknowledged[stream] = sequence;
+        write(segments[current], position, KIND_ACK, stream, 0, 0, sequence, 0, NO_PLACEMENT);
+        position += RECORD_SIZE;
+    }
+
+    /**
+     * Number of records that could not be journaled because the segment was full.
+     */
+    synchronized int getDropped()
+    {
+        return dropped;
+    }
+
+    /**
+     * Writes the current segment to storage. Blocks on I/O, call it off the UI thread.
+     */
+    void force()
+    {
+        MappedByteBuffer segment;
+
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            segment = segments[current];
+        }
+
+        segment.force();
+    }
+
+    /**
+     * Writes the journal out to storage and stops using it, after which the files may be opened again.
+     * Blocks on I/O, call it off the UI thread.
+     */
+    synchronized void close()
+    {
+        if (closed) {
+            return;
+        }
+
+        segments[current].force();
+        closed = true;
+        segments[0] = null;
+        segments[1] = null;
+    }
+
+    // copies the unacknowledged records, and the names of their placements, into the other segment and
+    // makes it current, false if they do not fit
+    private boolean rotate()
+    {
+        MappedByteBuffer from = segments[current];
+        MappedByteBuffer to = segments[1 - current];
+        int toPosition = HEADER_SIZE;
+
+        Arrays.fill(referenced, false);
+        for (int offset = HEADER_SIZE; offset + RECORD_SIZE <= position; offset += RECORD_SIZE) {
+            if (isUnacknowledged(from, offset)) {
+                referenced[from.get(offset + 16) & 0xff] = true;
+            }
+        }
+
+        for (int offset = HEADER_SIZE; (offset + RECORD_SIZE <= position) && (toPosition + RECORD_SIZE <= segmentSize); offset += RECORD_SIZE) {
+            boolean keep = isUnacknowledged(from, offset) || ((from.get(offset) == KIND_NAME) && referenced[from.get(offset + 1) & 0xff]);
+
+            if (keep) {
+                for (int i = 0; i < RECORD_SIZE; i += 8) {
+                    to.putLong(toPosition + i, from.getLong(offset + i));
+                }
+                toPosition += RECORD_SIZE;
+            }
+        }
+
+        if (toPosition + RECORD_SIZE > segmentSize) {
+            return false;
+        }
+
+        // placements no record refers to any more are named anew when they are journaled again
+        for (int id = NO_PLACEMENT + 1; id <= MAX_PLACEMENT_IDS; id++) {
+            if (! referenced[id]) {
+                placementNames[id] = null;
+            }
+        }
+
+        clear(to, toPosition);
+        to.putInt(4, generation + 1);
+        to.putInt(0, MAGIC);
+
+        generation++;
+        current = 1 - current;
+        position = toPosition;
+
+        return true;
+    }
+
+    private boolean isUnacknowledged(MappedByteBuffer segment, int offset)
+    {
+        int stream = segment.get(offset + 1);
+
+        return (segment.get(offset) == KIND_RECORD) && (stream >= 0) && (stream < STREAM_COUNT) && (segment.getInt(offset + 4) > acknowledged[stream]);
+    }
+
+    // carries on after the last record of the current segment, or starts it afresh if it holds no journal
+    private void resume()
+    {
+        MappedByteBuffer segment = segments[current];
+
+        if (segment.getInt(0) != MAGIC) {
+            switchTo(current);
+            return;
+        }
+
+        int offset = HEADER_SIZE;
+        for (; (offset + RECORD_SIZE <= segmentSize) && (segment.get(offset) != KIND_END); offset += RECORD_SIZE) {
+            byte kind = segment.get(offset);
+            int stream = segment.get(offset + 1);
+
+            if (kind == KIND_NAME) {
+                readName(segment, offset);
+            }
+            else if ((stream < 0) || (stream >= STREAM_COUNT)) {
+                continue;
+            }
+            else if (kind == KIND_ACK) {
+                acknowledged[stream] = Math.max(acknowledged[stream], segment.getInt(offset + 4));
+            }
+            else if (kind == KIND_RECORD) {
+                nextSequence[stream] = Math.max(nextSequence[stream], segment.getInt(offset + 4));
+            }
+        }
+
+        position = offset;
+    }
+
+    private void replay(MappedByteBuffer segment, int offset, Replay replay)
+    {
+        replay.replay(segment.get(offset + 1), segment.get(offset + 2), segment.get(offset + 3),
+                placementNames[segment.get(offset + 16) & 0xff], segment.getInt(offset + 4), segment.getLong(offset + 8));
+    }
+
+    // returns the id of the placement, naming it in the segment if it has none yet, which the caller
+    // has made room for, or NO_PLACEMENT if it cannot be named
+    private int placementId(String placement)
+    {
+        int free = NO_PLACEMENT;
+
+        for (int id = NO_PLACEMENT + 1; id <= MAX_PLACEMENT_IDS; id++) {
+            if (placementNames[id] == null) {
+                free = (free == NO_PLACEMENT) ? id : free;
+            }
+            else if ((placementNames[id] == placement) || placementNames[id].equals(placement)) {
+                return id;
+            }
+        }
+
+        byte[] name = placement.getBytes(UTF_8);
+        if ((free == NO_PLACEMENT) || (name.length > MAX_NAME_BYTES)) {
+            return NO_PLACEMENT;
+        }
+
+        MappedByteBuffer segment = segments[current];
+
+        for (int chunk = 0; chunk * NAME_CHUNK < name.length; chunk++) {
+            segment.putLong(position + NAME_OFFSET, 0);
+            segment.putLong(position + NAME_OFFSET + 8, 0);
+            for (int i = chunk * NAME_CHUNK; i < Math.min(name.length, (chunk + 1) * NAME_CHUNK); i++) {
+                segment.put(position + NAME_OFFSET + i - chunk * NAME_CHUNK, name[i]);
+            }
+
+            segment.put(position + 1, (byte)free);
+            segment.put(position + 2, (byte)chunk);
+            segment.put(position + 3, (byte)name.length);
+            segment.putInt(position + 4, 0);
+            segment.put(position, KIND_NAME);
+            position += RECORD_SIZE;
+        }
+
+        placementNames[free] = placement;
+
+        return free;
+    }
+
+    // reads a chunk of a placement name, which are written in order, and names the placement with the last one
+    private void readName(MappedByteBuffer segment, int offset)
+    {
+        int id = segment.get(offset + 1) & 0xff;
+        int from = (segment.get(offset + 2) & 0xff) * NAME_CHUNK;
+        int length = segment.get(offset + 3) & 0xff;
+        int count = Math.min(NAME_CHUNK, length - from);
+
+        for (int i = 0; i < count; i++) {
+            nameBytes[from + i] = segment.get(offset + NAME_OFFSET + i);
+        }
+
+        if ((count > 0) && (from + count == length)) {
+            placementNames[id] = new String(nameBytes, 0, length, UTF_8);
+        }
+    }
+
+    // makes the given segment current and empty, starting the sequence numbers over
+    private void switchTo(int segment)
+    {
+        clear(segments[segment], HEADER_SIZE);
+        segments[segment].putInt(4, generation + 1);
+        segments[segment].putInt(0, MAGIC);
+
+        generation++;
+        current = segment;
+        position = HEADER_SIZE;
+
+        for (int i = 0; i < STREAM_COUNT; i++) {
+            nextSequence[i] = 0;
+            acknowledged[i] = 0;
+        }
+        Arrays.fill(placementNames, null);
+    }
+
+    private int generationOf(int segment)
+    {
+        return (segments[segment].getInt(0) == MAGIC) ? segments[segment].getInt(4) : -1;
+    }
+
+    // zeroes the segment from the given offset, so stale records read as the end of the journal
+    private void clear(MappedByteBuffer segment, int from)
+    {
+        for (int offset = from; offset + 8 <= segmentSize; offset += 8) {
+            segment.putLong(offset, 0);
+        }
+    }
+
+    private static void write(MappedByteBuffer segment, int offset, byte kind, int stream, int code, int adType, int sequence, long time, int placementId)
+    {
+        // the kind goes in last, so a record cut short by a crash reads as the end of the journal
+        segment.put(offset + 1, (byte)stream);
+        segment.put(offset + 2, (byte)code);
+        segment.put(offset + 3, (byte)adType);
+        segment.putInt(offset + 4, sequence);
+        segment.putLong(offset + 8, time);
+        segment.putLong(offset + 16, 0);
+        segment.put(offset + 16, (byte)placementId);
+        segment.put(offset, kind);
+    }
+}
@@ -0,0 +1,546 @@
+//
+// EventQueue.java
+// Kidoz Plugin
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package plugin.kidoz;
+
+import com.naef.jnlua.LuaState;
+
+import com.ansca.corona.CoronaLua;
+import com.ansca.corona.CoronaLuaEvent;
+import com.ansca.corona.CoronaRuntime;
+import com.ansca.corona.CoronaRuntimeTask;
+import com.ansca.corona.CoronaRuntimeTaskDispatcher;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Pools {@link KidozEvent} records and delivers them to the Lua listeners subscribed to them.
+ * <p/>
+ * Events are either sent as their own runtime task, or, in batch mode, appended to a queue that a
+ * single reusable flush task drains once per frame. After warm-up neither path allocates.
+ * <p/>
+ * While paused, as the app is in the background and the runtime is not running tasks, every event is
+ * held in the queue, batched or not. On resume they are all delivered in order by a single task, instead
+ * of a backlog of one task per event reaching Lua at once. Events sent before the runtime is available
+ * are held the same way, and drained by the same single task once it is.
+ * <p/>
+ * Held events are bounded, by default to a number that grows with the placements in use. An evicted
+ * event that would overflow the queue is first folded into the last held event of its placement if that
+ * is an evicted event for the same reason, adding up their counts, so that repeated memory trims while
+ * in the background cost one held event per placement. Beyond that, the oldest event that is not
+ * journaled is dropped, or else the oldest journaled one. A dropped journaled event is not lost: acknowledgements stop short of it, and
+ * once the queue has drained it is read back from the journal and delivered as replayed, so it also
+ * survives the process dying before then. With the collapse policy, an event that would overflow the
+ * queue is first folded into the last held event of its ad type and placement if both are loaded or
+ * both are failed events, with the number of folded events in its collapsed field.
+ * <p/>
+ * The state mirror is brought up to date right before each event is delivered, so that kidoz.state
+ * already shows the change an event reports, however the event reached the runtime.
+ * <p/>
+ * Events may be obtained and sent from any thread; they are delivered on the Corona runtime thread.
+ */
+class EventQueue
+{
+    private static final int INITIAL_EVENTS  = 16;
+    private static final int MAX_FREE_EVENTS = 64;
+
+    static final int DEFAULT_CAPACITY = 64;
+
+    // events a placement may raise in the background: a pool filling up, an eviction, and a failure
+    // with its retry, which sets the default capacity once enough placements are in use
+    static final int EVENTS_PER_PLACEMENT = AdPool.MAX_DEPTH + 3;
+
+    // capacity that follows the number of placements
+    static final int AUTO_CAPACITY = 0;
+
+    static final int OVERFLOW_DROP_OLDEST = 0;
+    static final int OVERFLOW_COLLAPSE    = 1;
+
+    // phases of the events that may be collapsed, in the order of their collapse slots
+    private static final String[] COLLAPSIBLE_PHASES = { "loaded", "failed" };
+
+    // phase of the events that are folded into the previous one of their placement whatever the overflow policy
+    private static final String PHASE_EVICTED = "evicted";
+
+    private final String eventName;
+    private final String providerName;
+    private final EventSubscriptions subscriptions;
+    private final StateMirror stateMirror;
+    private final PlacementRegistry placements;
+
+    private final ArrayDeque<KidozEvent> freeEvents = new ArrayDeque<>(MAX_FREE_EVENTS);
+    private final ArrayDeque<KidozEvent> pendingEvents = new ArrayDeque<>(MAX_FREE_EVENTS);
+    private final FlushTask flushTask = new FlushTask();
+
+    // guarded by this
+    private boolean flushPending = false;
+    private boolean paused = false;
+    private int capacity = AUTO_CAPACITY;
+    private int overflow = OVERFLOW_DROP_OLDEST;
+    private long droppedCount = 0;
+    private long collapsedCount = 0;
+    private int maxQueued = 0;
+
+    // last held event of each ad type slot and collapsible phase, null once a later event of the ad type is held
+    private final KidozEvent[] collapsible;
+
+    // acknowledges journaled events once delivered, null if events are not journaled
+    private volatile EventJournal journal = null;
+    private final String[] journalPhases;
+    private final String[] journalTypes;
+
+    // journal sequence range of the dropped events still to be replayed, 0 if none (guarded by this)
+    private int droppedFrom = 0;
+    private int droppedTo = 0;
+
+    // highest journal sequence delivered, and the dropped events read back (runtime thread only)
+    private int deliveredUpTo = 0;
+    private int[] replayRecords = new int[INITIAL_EVENTS];
+    private String[] replayPlacements = new String[INITIAL_EVENTS];
+    private int replayCount = 0;
+    private final EventJournal.Replay replayCollector = new ReplayCollector();
+
+    /**
+     * Journaled events are recorded with their index in the given phases and types.
+     */
+    EventQueue(String eventName, String providerName, EventSubscriptions subscriptions, StateMirror stateMirror,
+            PlacementRegistry placements, String[] journalPhases, String[] journalTypes)
+    {
+        this.eventName = eventName;
+        this.providerName = providerName;
+        this.subscriptions = subscriptions;
+        this.stateMirror = stateMirror;
+        this.placements = placements;
+        this.journalPhases = journalPhases;
+        this.journalTypes = journalTypes;
+        this.collapsible = new KidozEvent[subscriptions.typeSlotCount() * COLLAPSIBLE_PHASES.length];
+
+        for (int i = 0; i < INITIAL_EVENTS; i++) {
+            freeEvents.add(new KidozEvent(this));
+        }
+    }
+
+    void setJournal(EventJournal journal)
+    {
+        this.journal = journal;
+    }
+
+    /**
+     * Sets how many events may be held while paused or before the runtime is available, or
+     * {@link #AUTO_CAPACITY} to size it by the placements in use, and what happens to the ones beyond that.
+     */
+    synchronized void configure(int capacity, int overflow)
+    {
+        this.capacity = capacity;
+        this.overflow = overflow;
+    }
+
+    KidozEvent obtain(String phase, String type)
+    {
+        KidozEvent event;
+        synchronized (this) {
+            event = freeEvents.poll();
+        }
+
+        if (event == null) {
+            event = new KidozEvent(this);
+        }
+
+        event.phase = phase;
+        event.type = type;
+
+        return event;
+    }
+
+    void send(CoronaRuntimeTaskDispatcher dispatcher, KidozEvent event, boolean batch)
+    {
+        // decided under the lock, so that an event is never sent on its own once pause() has returned
+        boolean sendNow;
+        boolean scheduleFlush = false;
+        synchronized (this) {
+            sendNow = (dispatcher != null) && (! batch) && (! paused);
+
+            // otherwise queue the event and make sure exactly one flush task is on its way to the
+            // runtime, unless paused or there is no runtime yet
+            if (! sendNow) {
+                if (! hold(event)) {
+                    return;
+                }
+                scheduleFlush = (! flushPending) && (! paused) && (dispatcher != null);
+                flushPending |= scheduleFlush;
+            }
+        }
+
+        if (sendNow) {
+            dispatcher.send(event);
+        }
+        else if (scheduleFlush) {
+            dispatcher.send(flushTask);
+        }
+    }
+
+    synchronized void pause()
+    {
+        paused = true;
+    }
+
+    /**
+     * Delivers everything held while paused, or before the runtime was available, with a single task, and sends events as they come again.
+     */
+    void resume(CoronaRuntimeTaskDispatcher dispatcher)
+    {
+        boolean scheduleFlush;
+        synchronized (this) {
+            paused = false;
+            scheduleFlush = (! pendingEvents.isEmpty()) && (! flushPending) && (dispatcher != null);
+            flushPending |= scheduleFlush;
+        }
+
+        if (scheduleFlush) {
+            dispatcher.send(flushTask);
+        }
+    }
+
+    void clear()
+    {
+        synchronized (this) {
+            KidozEvent event;
+            while ((event = pendingEvents.poll()) != null) {
+                event.reset();
+                freeEvents.add(event);
+            }
+            Arrays.fill(collapsible, null);
+            droppedFrom = 0;
+            droppedTo = 0;
+            deliveredUpTo = 0;
+            flushPending = false;
+            paused = false;
+            capacity = AUTO_CAPACITY;
+            overflow = OVERFLOW_DROP_OLDEST;
+            resetCounters();
+        }
+    }
+
+    synchronized int getQueued()
+    {
+        return pendingEvents.size();
+    }
+
+    synchronized int getMaxQueued()
+    {
+        return maxQueued;
+    }
+
+    synchronized long getDropped()
+    {
+        return droppedCount;
+    }
+
+    synchronized long getCollapsed()
+    {
+        return collapsedCount;
+    }
+
+    synchronized void resetCounters()
+    {
+        droppedCount = 0;
+        collapsedCount = 0;
+        maxQueued = pendingEvents.size();
+    }
+
+    void deliver(LuaState L, KidozEvent event)
+    {
+        try {
+            stateMirror.update(L);
+
+            CoronaLua.newEvent(L, eventName);
+            event.push(L);
+
+            L.pushString(providerName);
+            L.setField(-2, CoronaLuaEvent.PROVIDER_KEY);
+
+            subscriptions.dispatch(L, event.type, event.phase);
+
+            if (event.sequence > 0) {
+                acknowledge(event.sequence);
+            }
+        }
+        catch (Exception ex) {
+            ex.printStackTrace();
+        }
+        finally {
+            release(event);
+        }
+    }
+
+    void release(KidozEvent event)
+    {
+        event.reset();
+
+        synchronized (this) {
+            if (freeEvents.size() < MAX_FREE_EVENTS) {
+                freeEvents.add(event);
+            }
+        }
+    }
+
+    // acknowledges journaled events up to the given one, but none from the first dropped one on (runtime thread only)
+    private void acknowledge(int sequence)
+    {
+        EventJournal eventJournal = journal;
+        if (eventJournal == null) {
+            return;
+        }
+
+        int upTo;
+        synchronized (this) {
+            deliveredUpTo = Math.max(deliveredUpTo, sequence);
+            upTo = (droppedFrom == 0) ? deliveredUpTo : Math.min(deliveredUpTo, droppedFrom - 1);
+        }
+
+        if (upTo > 0) {
+            eventJournal.acknowledge(EventJournal.STREAM_EVENT, upTo);
+        }
+    }
+
+    // queues the event, collapsing or dropping as the overflow policy says (guarded by this)
+    // returns false if the event was folded into a held one or dropped, and released
+    private boolean hold(KidozEvent event)
+    {
+        int slot = collapseSlot(event);
+        boolean full = pendingEvents.size() >= limit();
+
+        if (full && foldEviction(event)) {
+            collapsedCount++;
+            release(event);
+            return false;
+        }
+
+        if (full && (slot >= 0) && (overflow == OVERFLOW_COLLAPSE) && (collapsible[slot] != null) && samePlacement(collapsible[slot], event)) {
+            KidozEvent held = collapsible[slot];
+            held.collapsed += event.collapsed + 1;
+            held.coalesced += event.coalesced;
+            held.isError = event.isError;
+            held.response = event.response;
+            collapsedCount++;
+            release(event);
+            return false;
+        }
+
+        if (full) {
+            dropOldest();
+        }
+
+        pendingEvents.add(event);
+        maxQueued = Math.max(maxQueued, pendingEvents.size());
+
+        // only the latest event of an ad type may absorb the next ones, so that collapsing keeps the order
+        int typeSlot = subscriptions.typeSlot(event.type);
+        if (typeSlot >= 0) {
+            for (int i = 0; i < COLLAPSIBLE_PHASES.length; i++) {
+                collapsible[typeSlot * COLLAPSIBLE_PHASES.length + i] = null;
+            }
+        }
+        if (slot >= 0) {
+            collapsible[slot] = event;
+        }
+
+        return true;
+    }
+
+    // returns how many events may be held (guarded by this)
+    private int limit()
+    {
+        if (capacity != AUTO_CAPACITY) {
+            return capacity;
+        }
+
+        return Math.max(DEFAULT_CAPACITY, placements.size() * EVENTS_PER_PLACEMENT);
+    }
+
+    // adds an evicted event to the last held event of its placement, if that is an evicted event for
+    // the same reason, which keeps the order of the events of every placement (guarded by this)
+    // returns false if the event has to be held on its own
+    private boolean foldEviction(KidozEvent event)
+    {
+        if ((! PHASE_EVICTED.equals(event.phase)) || (event.sequence != 0)) {
+            return false;
+        }
+
+        for (Iterator<KidozEvent> it = pendingEvents.descendingIterator(); it.hasNext(); ) {
+            KidozEvent held = it.next();
+
+            if (sameType(held, event) && samePlacement(held, event)) {
+                if ((! PHASE_EVICTED.equals(held.phase)) || (held.sequence != 0) || (! sameResponse(held, event))) {
+                    return false;
+                }
+
+                held.count += event.count;
+                held.collapsed += event.collapsed + 1;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean sameType(KidozEvent a, KidozEvent b)
+    {
+        return (a.type == null) ? (b.type == null) : a.type.equals(b.type);
+    }
+
+    private static boolean sameResponse(KidozEvent a, KidozEvent b)
+    {
+        return (a.response == null) ? (b.response == null) : a.response.equals(b.response);
+    }
+
+    private static boolean samePlacement(KidozEvent a, KidozEvent b)
+    {
+        return (a.placement == null) ? (b.placement == null) : a.placement.equals(b.placement);
+    }
+
+    // drops the oldest held event that is not journaled, or else the oldest journaled one, which is
+    // replayed from the journal later (guarded by this)
+    private void dropOldest()
+    {
+        KidozEvent dropped = null;
+
+        for (Iterator<KidozEvent> it = pendingEvents.iterator(); it.hasNext(); ) {
+            KidozEvent event = it.next();
+
+            if (event.sequence == 0) {
+                it.remove();
+                dropped = event;
+                break;
+            }
+        }
+
+        if ((dropped == null) && ((dropped = pendingEvents.poll()) != null)) {
+            droppedFrom = (droppedFrom == 0) ? dropped.sequence : Math.min(droppedFrom, dropped.sequence);
+            droppedTo = Math.max(droppedTo, dropped.sequence);
+        }
+
+        if (dropped != null) {
+            forget(dropped);
+            droppedCount++;
+            release(dropped);
+        }
+    }
+
+    // no longer lets later events collapse into one that leaves the queue (guarded by this)
+    private void forget(KidozEvent event)
+    {
+        int slot = collapseSlot(event);
+
+        if ((slot >= 0) && (collapsible[slot] == event)) {
+            collapsible[slot] = null;
+        }
+    }
+
+    // returns the collapse slot of an event, or -1 if it may not be collapsed
+    private int collapseSlot(KidozEvent event)
+    {
+        if ((event.type == null) || (event.sequence != 0)) {
+            return -1;
+        }
+
+        int typeSlot = subscriptions.typeSlot(event.type);
+
+        for (int i = 0; (i < COLLAPSIBLE_PHASES.length) && (typeSlot >= 0); i++) {
+            if (COLLAPSIBLE_PHASES[i].equals(event.phase)) {
+                return typeSlot * COLLAPSIBLE_PHASES.length + i;
+            }
+        }
+
+        return -1;
+    }
+
+    // delivers every queued event, in order, within a single runtime task
+    private class FlushTask implements CoronaRuntimeTask
+    {
+        @Override
+        public void executeUsing(CoronaRuntime runtime)
+        {
+            LuaState L = runtime.getLuaState();
+
+            while (true) {
+                KidozEvent event;
+                int replayFrom = 0;
+                int replayTo = 0;
+                synchronized (EventQueue.this) {
+                    event = pendingEvents.poll();
+                    if (event == null) {
+                        // events dropped from here on are held back anew
+                        flushPending = false;
+                        replayFrom = droppedFrom;
+                        replayTo = droppedTo;
+                        droppedFrom = 0;
+                        droppedTo = 0;
+                    }
+                    else {
+                        forget(event);
+                    }
+                }
+
+                if (event == null) {
+                    if (replayFrom != 0) {
+                        replayDropped(L, replayFrom, replayTo);
+                    }
+                    return;
+                }
+
+                deliver(L, event);
+            }
+        }
+    }
+
+    // delivers the journaled events that were dropped, now that the queue has room, and lets the
+    // acknowledgements move past them (runtime thread only, which is the only one that acknowledges)
+    private void replayDropped(LuaState L, int from, int to)
+    {
+        EventJournal eventJournal = journal;
+
+        replayCount = 0;
+        if (eventJournal != null) {
+            eventJournal.replay(EventJournal.STREAM_EVENT, from, to, replayCollector);
+        }
+
+        for (int i = 0; i < replayCount; i++) {
+            int code = replayRecords[i] >> 8;
+            int adType = replayRecords[i] & 0xff;
+
+            if ((code < journalPhases.length) && (adType < journalTypes.length) && subscriptions.wants(journalTypes[adType], journalPhases[code])) {
+                deliver(L, obtain(journalPhases[code], journalTypes[adType]).setPlacement(replayPlacements[i]).setReplayed());
+            }
+            replayPlacements[i] = null;
+        }
+
+        acknowledge(to);
+    }
+
+    // keeps the records read back from the journal, which is locked meanwhile (runtime thread only)
+    private class ReplayCollector implements EventJournal.Replay
+    {
+        @Override
+        public void replay(int stream, int code, int adType, String placement, int sequence, long time)
+        {
+            if ((code < 0) || (adType < 0)) {
+                return;
+            }
+
+            if (replayCount == replayRecords.length) {
+                replayRecords = Arrays.copyOf(replayRecords, replayCount * 2);
+                replayPlacements = Arrays.copyOf(replayPlacements, replayCount * 2);
+            }
+            replayPlacements[replayCount] = placement;
+            replayRecords[replayCount++] = (code << 8) | adType;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+//
+// EventSubscriptions.java
+// Kidoz Plugin
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package plugin.kidoz;
+
+import com.naef.jnlua.LuaState;
+
+import com.ansca.corona.CoronaLua;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Lua listeners and the ad types and phases each of them subscribed to.
+ * <p/>
+ * Every listener holds one phase mask per ad type, plus one for the events that have no ad type
+ * (initialization and preload results). The union of all listeners' masks is kept in an atomic array,
+ * so any thread can tell with two array reads whether an event has a listener at all, and drop it
+ * before it is queued for the runtime. Delivery then calls only the listeners subscribed to the
+ * event, with the same event table.
+ * <p/>
+ * {@link #wants(String, String)} may be called on any thread, everything else runs on the Lua thread.
+ */
+class EventSubscriptions
+{
+    // every phase an adsRequest event can have on Android, bits of the phase masks
+    static final String[] PHASES = {
+            "init", "loaded", "failed", "retrying", "displayed", "closed",
+            "reward", "preloaded", "evicted"
+    };
+    static final int ALL_PHASES = (1 << PHASES.length) - 1;
+
+    private static class Subscription
+    {
+        int ref;
+        final int[] phases;
+
+        Subscription(int ref, int typeSlots)
+        {
+            this.ref = ref;
+            this.phases = new int[typeSlots];
+        }
+
+        boolean isEmpty()
+        {
+            for (int mask : phases) {
+                if (mask != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private final String[] adTypes;
+    private final int typeSlots;
+    private final AtomicIntegerArray wanted;
+    private final List<Subscription> subscriptions = new ArrayList<>();
+
+    // listeners removed during delivery are only unlinked once it is over
+    private int delivering = 0;
+
+    /**
+     * Ad types are identified by their index in the given names, events without an ad type use the
+     * slot after the last one.
+     */
+    EventSubscriptions(String[] adTypes)
+    {
+        this.adTypes = adTypes;
+        this.typeSlots = adTypes.length + 1;
+        this.wanted = new AtomicIntegerArray(typeSlots);
+    }
+
+    int typeSlotCount()
+    {
+        return typeSlots;
+    }
+
+    /**
+     * Returns the mask with every ad type slot set, including the one of events without an ad type.
+     */
+    int allTypes()
+    {
+        return (1 << typeSlots) - 1;
+    }
+
+    /**
+     * Returns the slot of an ad type name, the last slot for null, or -1 for an unknown name.
+     */
+    int typeSlot(String adType)
+    {
+        if (adType == null) {
+            return adTypes.length;
+        }
+
+        for (int i = 0; i < adTypes.length; i++) {
+            if (adTypes[i].equals(adType)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    static int phaseIndex(String phase)
+    {
+        for (int i = 0; i < PHASES.length; i++) {
+            if (PHASES[i].equals(phase)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns true if a listener is subscribed to the phase of the ad type, null for events without one.
+     */
+    boolean wants(String adType, String phase)
+    {
+        int slot = typeSlot(adType);
+        int phaseIndex = phaseIndex(phase);
+
+        return (slot >= 0) && (phaseIndex >= 0) && ((wanted.get(slot) & (1 << phaseIndex)) != 0);
+    }
+
+    /**
+     * Subscribes the listener at the given stack index to the phases of the ad type slots in the masks.
+     * A listener that is already subscribed gets the new phases added to its own.
+     */
+    void add(LuaState L, int index, int typeMask, int phaseMask)
+    {
+        Subscription subscription = find(L, index);
+
+        if (subscription == null) {
+            subscription = new Subscription(CoronaLua.newRef(L, index), typeSlots);
+            subscriptions.add(subscription);
+        }
+
+        for (int slot = 0; slot < typeSlots; slot++) {
+            if ((typeMask & (1 << slot)) != 0) {
+                subscription.phases[slot] |= phaseMask;
+            }
+        }
+
+        updateWanted();
+    }
+
+    /**
+     * Unsubscribes the listener at the given stack index from the phases of the ad type slots in the
+     * masks, and forgets it once it has no subscription left. Returns false if it was not subscribed.
+     */
+    boolean remove(LuaState L, int index, int typeMask, int phaseMask)
+    {
+        Subscription subscription = find(L, index);
+
+        if (subscription == null) {
+            return false;
+        }
+
+        for (int slot = 0; slot < typeSlots; slot++) {
+            if ((typeMask & (1 << slot)) != 0) {
+                subscription.phases[slot] &= ~phaseMask;
+            }
+        }
+
+        if (subscription.isEmpty()) {
+            CoronaLua.deleteRef(L, subscription.ref);
+            subscription.ref = CoronaLua.REFNIL;
+
+            if (delivering == 0) {
+                subscriptions.remove(subscription);
+            }
+        }
+
+        updateWanted();
+
+        return true;
+    }
+
+    /**
+     * Calls every listener subscribed to the event with the event table on top of the stack, and pops it.
+     */
+    void dispatch(LuaState L, String adType, String phase) throws Exception
+    {
+        int slot = typeSlot(adType);
+        int phaseBit = 1 << phaseIndex(phase);
+
+        // listeners added by a listener only hear about the next event
+        int count = subscriptions.size();
+        int eventIndex = L.getTop();
+
+        delivering++;
+        try {
+            for (int i = 0; (i < count) && (slot >= 0); i++) {
+                Subscription subscription = subscriptions.get(i);
+
+                if ((subscription.ref != CoronaLua.REFNIL) && ((subscription.phases[slot] & phaseBit) != 0)) {
+                    L.pushValue(eventIndex);
+                    CoronaLua.dispatchEvent(L, subscription.ref, 0);
+                }
+            }
+        }
+        finally {
+            delivering--;
+            L.setTop(eventIndex - 1);
+
+            if (delivering == 0) {
+                unlinkRemoved();
+            }
+        }
+    }
+
+    void clear(LuaState L)
+    {
+        for (Subscription subscription : subscriptions) {
+            CoronaLua.deleteRef(L, subscription.ref);
+        }
+
+        subscriptions.clear();
+        updateWanted();
+    }
+
+    // finds the subscription of the listener at the given stack index by identity
+    private Subscription find(LuaState L, int index)
+    {
+        int listenerIndex = L.absIndex(index);
+
+        for (Subscription subscription : subscriptions) {
+            if (subscription.ref == CoronaLua.REFNIL) {
+                continue;
+            }
+
+            L.rawGet(LuaState.REGISTRYINDEX, subscription.ref);
+            boolean same = L.rawEqual(-1, listenerIndex);
+            L.pop(1);
+
+            if (same) {
+                return subscription;
+            }
+        }
+
+        return null;
+    }
+
+    private void unlinkRemoved()
+    {
+        for (int i = subscriptions.size() - 1; i >= 0; i--) {
+            if (subscriptions.get(i).ref == CoronaLua.REFNIL) {
+                subscriptions.remove(i);
+            }
+        }
+    }
+
+    private void updateWanted()
+    {
+        for (int slot = 0; slot < typeSlots; slot++) {
+            int mask = 0;
+
+            for (Subscription subscription : subscriptions) {
+                mask |= subscription.phases[slot];
+            }
+
+            wanted.set(slot, mask);
+        }
+    }
+}
@@ -0,0 +1,319 @@
+//
+// KidozAdNetwork.java
+// Kidoz Plugin
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package plugin.kidoz;
+
+import android.app.Activity;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+
+import java.util.Locale;
+
+import net.kidoz.sdk.Kidoz;
+import net.kidoz.sdk.KidozError;
+import net.kidoz.sdk.KidozInitializationListener;
+import net.kidoz.ads.banner.KidozBannerView;
+import net.kidoz.ads.banner.KidozBannerAdCallback;
+import net.kidoz.ads.fullscreen.interstial.KidozInterstitialAd;
+import net.kidoz.ads.fullscreen.interstial.KidozInterstitialAdCallback;
+import net.kidoz.ads.fullscreen.rewarded.KidozRewardedAd;
+import net.kidoz.ads.fullscreen.rewarded.KidozRewardedAdCallback;
+
+/**
+ * {@link AdNetwork} backed by the KIDOZ SDK.
+ * <p/>
+ * Every fullscreen ad is its own SDK callback. It issues its load, wraps the SDK ad that load produces,
+ * and hands itself to every callback, so each answer reaches the plugin with the load it belongs to.
+ */
+class KidozAdNetwork implements AdNetwork
+{
+    @Override
+    public void initialize(Activity activity, String publisherID, String securityToken, final InitListener listener)
+    {
+        Kidoz.initialize(activity, publisherID, securityToken, new KidozInitializationListener() {
+            @Override
+            public void onInitSuccess() {
+                listener.onInitSuccess();
+            }
+
+            @Override
+            public void onInitError(KidozError error) {
+                listener.onInitError(messageOf(error));
+            }
+        });
+    }
+
+    @Override
+    public FullscreenAd createInterstitial(Activity activity, FullscreenAdListener listener)
+    {
+        return new InterstitialCallback(activity, listener);
+    }
+
+    @Override
+    public FullscreenAd createRewarded(Activity activity, FullscreenAdListener listener)
+    {
+        return new RewardedCallback(activity, listener);
+    }
+
+    @Override
+    public Banner createBanner(Activity activity, BannerListener listener)
+    {
+        return new BannerView(activity, listener);
+    }
+
+    private static String messageOf(KidozError error)
+    {
+        return (error != null) ? error.getMessage() : null;
+    }
+
+    /**
+     * Whether a failed load only means that no ad was available, as far as the message tells.
+     * <p/>
+     * This is a heuristic. KidozError has no error code, only a message, so a no-fill is recognized by
+     * the phrases the SDK uses when it has no offers for the device, and every load callback classifies
+     * its error here. A no-fill worded any other way is taken for a load error: it is reported with the
+     * SDK's message instead of noOffersAvailable, counted as a load error, and retried on the error
+     * backoff, starting from the base delay rather than waiting the full delay. The phrases must follow
+     * the SDK's wording when it is updated.
+     */
+    private static boolean isNoFill(KidozError error)
+    {
+        String message = messageOf(error);
+        if (message == null) {
+            return false;
+        }
+
+        message = message.toLowerCase(Locale.US);
+        return message.contains("no fill") || message.contains("no offers") || message.contains("no ads");
+    }
+
+    private static class InterstitialCallback implements KidozInterstitialAdCallback, FullscreenAd
+    {
+        private final Activity activity;
+        private final FullscreenAdListener listener;
+        private KidozInterstitialAd ad = null;
+
+        InterstitialCallback(Activity activity, FullscreenAdListener listener)
+        {
+            this.activity = activity;
+            this.listener = listener;
+        }
+
+        @Override
+        public void load()
+        {
+            KidozInterstitialAd.load(activity, this);
+        }
+
+        @Override
+        public void show()
+        {
+            ad.show();
+        }
+
+        @Override
+        public void onAdLoaded(KidozInterstitialAd ad)
+        {
+            this.ad = ad;
+            listener.onAdLoaded(this);
+        }
+
+        @Override
+        public void onAdFailedToLoad(KidozError error)
+        {
+            listener.onAdFailedToLoad(this, messageOf(error), isNoFill(error));
+        }
+
+        @Override
+        public void onAdShown(KidozInterstitialAd ad)
+        {
+            listener.onAdShown(this);
+        }
+
+        @Override
+        public void onAdFailedToShow(KidozInterstitialAd ad, KidozError error)
+        {
+            listener.onAdFailedToShow(this, messageOf(error));
+        }
+
+        @Override
+        public void onAdImpression(KidozInterstitialAd ad)
+        {
+        }
+
+        @Override
+        public void onAdClosed(KidozInterstitialAd ad)
+        {
+            listener.onAdClosed(this);
+        }
+    }
+
+    private static class RewardedCallback implements KidozRewardedAdCallback, FullscreenAd
+    {
+        private final Activity activity;
+        private final FullscreenAdListener listener;
+        private KidozRewardedAd ad = null;
+
+        RewardedCallback(Activity activity, FullscreenAdListener listener)
+        {
+            this.activity = activity;
+            this.listener = listener;
+        }
+
+        @Override
+        public void load()
+        {
+            KidozRewardedAd.load(activity, this);
+        }
+
+        @Override
+        public void show()
+        {
+            ad.show();
+        }
+
+        @Override
+        public void onAdLoaded(KidozRewardedAd ad)
+        {
+            this.ad = ad;
+            listener.onAdLoaded(this);
+        }
+
+        @Override
+        public void onAdFailedToLoad(KidozError error)
+        {
+            listener.onAdFailedToLoad(this, messageOf(error), isNoFill(error));
+        }
+
+        @Override
+        public void onAdShown(KidozRewardedAd ad)
+        {
+            listener.onAdShown(this);
+        }
+
+        @Override
+        public void onAdFailedToShow(KidozRewardedAd ad, KidozError error)
+        {
+            listener.onAdFailedToShow(this, messageOf(error));
+        }
+
+        @Override
+        public void onAdImpression(KidozRewardedAd ad)
+        {
+        }
+
+        @Override
+        public void onRewardReceived(KidozRewardedAd ad)
+        {
+            listener.onRewardReceived(this);
+        }
+
+        @Override
+        public void onAdClosed(KidozRewardedAd ad)
+        {
+            listener.onAdClosed(this);
+        }
+    }
+
+    private static class BannerView implements Banner, KidozBannerAdCallback
+    {
+        private final KidozBannerView view;
+        private final BannerListener listener;
+        private boolean destroyed = false;
+
+        BannerView(Activity activity, BannerListener listener)
+        {
+            this.listener = listener;
+
+            view = new KidozBannerView(activity);
+            view.setBannerCallback(this);
+            view.setAutoShow(false);
+        }
+
+        @Override
+        public void setPosition(KidozBannerView.Position position)
+        {
+            view.setBannerPosition(position);
+        }
+
+        @Override
+        public void load()
+        {
+            if (! destroyed) {
+                view.load();
+            }
+        }
+
+        @Override
+        public void show()
+        {
+            if (! destroyed) {
+                view.show();
+            }
+        }
+
+        @Override
+        public void close()
+        {
+            view.close();
+        }
+
+        @Override
+        public void destroy()
+        {
+            if (destroyed) {
+                return;
+            }
+
+            view.close();
+
+            // the view must not keep the activity it was made for in the hierarchy
+            ViewParent parent = view.getParent();
+            if (parent instanceof ViewGroup) {
+                ((ViewGroup)parent).removeView(view);
+            }
+
+            destroyed = true;
+        }
+
+        @Override
+        public void onAdLoaded()
+        {
+            listener.onAdLoaded();
+        }
+
+        @Override
+        public void onAdFailedToLoad(KidozError error)
+        {
+            listener.onAdFailedToLoad(messageOf(error), isNoFill(error));
+        }
+
+        @Override
+        public void onAdShown()
+        {
+            listener.onAdShown();
+        }
+
+        @Override
+        public void onAdFailedToShow(KidozError error)
+        {
+            listener.onAdFailedToShow(messageOf(error));
+        }
+
+        @Override
+        public void onAdImpression()
+        {
+        }
+
+        @Override
+        public void onAdClosed()
+        {
+            listener.onAdClosed();
+        }
+    }
+}
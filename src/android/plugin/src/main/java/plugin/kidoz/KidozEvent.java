@@ -0,0 +1,230 @@
+//
+// KidozEvent.java
+// Kidoz Plugin
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package plugin.kidoz;
+
+import com.naef.jnlua.LuaState;
+
+import com.ansca.corona.CoronaLuaEvent;
+import com.ansca.corona.CoronaRuntime;
+import com.ansca.corona.CoronaRuntimeTask;
+
+/**
+ * Fixed-field adsRequest event record.
+ * <p/>
+ * Instances are pooled by their {@link EventQueue} and double as the runtime task that delivers them,
+ * so raising an event does not allocate a map, boxed values or an anonymous task.
+ * Phase, type, placement and response normally reference string constants or placement names.
+ */
+class KidozEvent implements CoronaRuntimeTask
+{
+    static final String PHASE_KEY     = "phase";
+    static final String TYPE_KEY      = "type";
+    static final String PLACEMENT_KEY = "placement";
+    static final String ATTEMPT_KEY   = "attempt";
+    static final String DELAY_KEY     = "delay";
+    static final String COALESCED_KEY = "coalesced";
+    static final String COLLAPSED_KEY = "collapsed";
+    static final String COUNT_KEY     = "count";
+    static final String DURATION_KEY  = "duration";
+    static final String REPLAYED_KEY  = "replayed";
+    static final String RESULTS_KEY   = "results";
+
+    static final String RESULT_LOADED = "loaded";
+    static final String RESULT_FAILED = "failed";
+
+    String phase;
+    String type;
+    String placement;
+    boolean isError;
+    String response;
+    int attempt;
+    double delay;
+    int coalesced;
+    int collapsed;
+    int count;
+    double duration;
+    boolean replayed;
+
+    // per ad type results of a preload, as bits indexed like the ad type names
+    String[] resultTypes;
+    int loadedTypes;
+    int failedTypes;
+
+    // journal sequence number, 0 if the event is not journaled
+    int sequence;
+
+    private final EventQueue queue;
+
+    KidozEvent(EventQueue queue)
+    {
+        this.queue = queue;
+        reset();
+    }
+
+    void reset()
+    {
+        phase = null;
+        type = null;
+        placement = null;
+        isError = false;
+        response = null;
+        attempt = 0;
+        delay = -1;
+        coalesced = 0;
+        collapsed = 0;
+        count = 0;
+        duration = -1;
+        replayed = false;
+        resultTypes = null;
+        loadedTypes = 0;
+        failedTypes = 0;
+        sequence = 0;
+    }
+
+    KidozEvent setPlacement(String placement)
+    {
+        this.placement = placement;
+        return this;
+    }
+
+    KidozEvent setError(String response)
+    {
+        this.isError = true;
+        this.response = response;
+        return this;
+    }
+
+    KidozEvent setResponse(String response)
+    {
+        this.response = response;
+        return this;
+    }
+
+    KidozEvent setRetry(int attempt, double delay)
+    {
+        this.attempt = attempt;
+        this.delay = delay;
+        return this;
+    }
+
+    KidozEvent setCoalesced(int coalesced)
+    {
+        this.coalesced = coalesced;
+        return this;
+    }
+
+    KidozEvent setCount(int count)
+    {
+        this.count = count;
+        return this;
+    }
+
+    KidozEvent setDuration(double duration)
+    {
+        this.duration = duration;
+        return this;
+    }
+
+    KidozEvent setReplayed()
+    {
+        this.replayed = true;
+        return this;
+    }
+
+    KidozEvent setResults(String[] adTypes, int loaded, int failed)
+    {
+        this.resultTypes = adTypes;
+        this.loadedTypes = loaded;
+        this.failedTypes = failed;
+        return this;
+    }
+
+    // writes the fields into the event table on top of the stack, skipping the ones that are unset
+    void push(LuaState L)
+    {
+        L.pushString(phase);
+        L.setField(-2, PHASE_KEY);
+
+        if (type != null) {
+            L.pushString(type);
+            L.setField(-2, TYPE_KEY);
+        }
+
+        if (placement != null) {
+            L.pushString(placement);
+            L.setField(-2, PLACEMENT_KEY);
+        }
+
+        L.pushBoolean(isError);
+        L.setField(-2, CoronaLuaEvent.ISERROR_KEY);
+
+        if (response != null) {
+            L.pushString(response);
+            L.setField(-2, CoronaLuaEvent.RESPONSE_KEY);
+        }
+
+        if (attempt > 0) {
+            L.pushNumber(attempt);
+            L.setField(-2, ATTEMPT_KEY);
+        }
+
+        if (delay >= 0) {
+            L.pushNumber(delay);
+            L.setField(-2, DELAY_KEY);
+        }
+
+        if (coalesced > 0) {
+            L.pushNumber(coalesced);
+            L.setField(-2, COALESCED_KEY);
+        }
+
+        if (collapsed > 0) {
+            L.pushNumber(collapsed);
+            L.setField(-2, COLLAPSED_KEY);
+        }
+
+        if (count > 0) {
+            L.pushNumber(count);
+            L.setField(-2, COUNT_KEY);
+        }
+
+        if (duration >= 0) {
+            L.pushNumber(duration);
+            L.setField(-2, DURATION_KEY);
+        }
+
+        if (replayed) {
+            L.pushBoolean(true);
+            L.setField(-2, REPLAYED_KEY);
+        }
+
+        if (resultTypes != null) {
+            L.newTable(0, resultTypes.length);
+
+            for (int i = 0; i < resultTypes.length; i++) {
+                if ((loadedTypes & (1 << i)) != 0) {
+                    L.pushString(RESULT_LOADED);
+                    L.setField(-2, resultTypes[i]);
+                }
+                else if ((failedTypes & (1 << i)) != 0) {
+                    L.pushString(RESULT_FAILED);
+                    L.setField(-2, resultTypes[i]);
+                }
+            }
+
+            L.setField(-2, RESULTS_KEY);
+        }
+    }
+
+    @Override
+    public void executeUsing(CoronaRuntime runtime)
+    {
+        queue.deliver(runtime.getLuaState(), this);
+    }
+}
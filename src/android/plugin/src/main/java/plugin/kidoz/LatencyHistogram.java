@@ -0,0 +1,134 @@
+//
+// LatencyHistogram.java
+// Kidoz Plugin
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package plugin.kidoz;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of millisecond durations with fixed log-linear buckets.
+ * <p/>
+ * As in an HDR histogram, values below {@link #SUB_BUCKETS} get a bucket each, and every power of two
+ * above that is split into {@link #SUB_BUCKETS}/2 linear buckets, which keeps the relative error of a
+ * reported percentile under 1/8 from one millisecond up to {@link #MAX_VALUE_MS}. Larger values are
+ * clamped into the last bucket.
+ * <p/>
+ * Recording is a handful of atomic increments and never allocates. Reads see each counter atomically,
+ * but not all of them at the same instant, which is fine for monitoring.
+ */
+class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS     = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_BUCKETS    = SUB_BUCKETS / 2;
+    private static final int MAX_EXPONENT    = 30;
+
+    static final long MAX_VALUE_MS = (1L << (MAX_EXPONENT + 1)) - 1;
+    static final int BUCKET_COUNT  = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * HALF_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long valueMs)
+    {
+        long value = Math.max(0, Math.min(valueMs, MAX_VALUE_MS));
+
+        buckets.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+
+        long currentMax;
+        while (value > (currentMax = max.get())) {
+            if (max.compareAndSet(currentMax, value)) {
+                break;
+            }
+        }
+    }
+
+    long getCount()
+    {
+        return count.get();
+    }
+
+    long getMax()
+    {
+        return max.get();
+    }
+
+    double getMean()
+    {
+        long n = count.get();
+        return (n == 0) ? 0 : (double)sum.get() / n;
+    }
+
+    /**
+     * Returns the upper bound of the bucket holding the given percentile (0 to 100), or 0 if nothing was recorded.
+     */
+    long getPercentile(double percentile)
+    {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += buckets.get(i);
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long)Math.ceil(total * Math.min(percentile, 100) / 100));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+
+        return max.get();
+    }
+
+    void reset()
+    {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    static int bucketOf(long value)
+    {
+        if (value < SUB_BUCKETS) {
+            return (int)value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - (SUB_BUCKET_BITS - 1);
+
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * HALF_BUCKETS + (int)(value >> shift) - HALF_BUCKETS;
+    }
+
+    static long upperBoundOf(int bucket)
+    {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        int exponent = (bucket - SUB_BUCKETS) / HALF_BUCKETS + SUB_BUCKET_BITS;
+        int shift = exponent - (SUB_BUCKET_BITS - 1);
+        long top = (bucket - SUB_BUCKETS) % HALF_BUCKETS + HALF_BUCKETS;
+
+        return ((top + 1) << shift) - 1;
+    }
+}
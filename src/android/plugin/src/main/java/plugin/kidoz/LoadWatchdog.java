@@ -0,0 +1,205 @@
+//
+// LoadWatchdog.java
+// Kidoz Plugin
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package plugin.kidoz;
+
+import android.os.SystemClock;
+
+import java.util.Arrays;
+
+/**
+ * Gives up on SDK loads that never report back, after a timeout per placement.
+ * <p/>
+ * Every load is registered with a token that its callbacks carry, such as the per-load ad handle of a
+ * fullscreen load, so each answer settles its own load whatever order the SDK answers in. The loads in
+ * flight are kept in a small list per placement in the order they were issued, which with a fixed
+ * timeout is also the order of their deadlines, so only the first one of each placement can be the next
+ * to time out. All placements share a single slot on the {@link DeadlineTimer}, armed for the earliest
+ * of those deadlines, so any number of loads in flight costs one queued timer message.
+ * <p/>
+ * A load that timed out may still be answered later. Its token is then no longer in flight, which is how
+ * the late answer is recognized. Every callback is accounted for once, and a load that was answered never
+ * times out. When a placement has too many loads in flight, its oldest load is timed out early to make
+ * room. The watchdog also keeps the start of each load, so the time the load took is reported with its
+ * answer or its timeout.
+ * <p/>
+ * Not thread safe. All methods must be called on the UI thread.
+ */
+class LoadWatchdog
+{
+    interface Listener
+    {
+        void onLoadTimedOut(int placement, long loadTimeMs);
+    }
+
+    static final long DEFAULT_TIMEOUT_MS = 30000;
+
+    /**
+     * Returned by {@link #loadFinished(int, Object)} for a token that has no load in flight.
+     */
+    static final long NOT_PENDING = -1;
+
+    private static final int MAX_PENDING_LOADS = 16;
+    private static final long NONE = Long.MAX_VALUE;
+
+    private final DeadlineTimer timer;
+    private final int slot;
+    private final Listener listener;
+
+    private final long[] timeouts;
+    private final Object[] tokens;
+    private final long[] startedAt;
+    private final long[] deadlines;
+    private final int[] count;
+
+    LoadWatchdog(DeadlineTimer timer, int slot, int placementCount, Listener listener)
+    {
+        this.timer = timer;
+        this.slot = slot;
+        this.listener = listener;
+
+        timeouts = new long[placementCount];
+        tokens = new Object[placementCount * MAX_PENDING_LOADS];
+        startedAt = new long[placementCount * MAX_PENDING_LOADS];
+        deadlines = new long[placementCount * MAX_PENDING_LOADS];
+        count = new int[placementCount];
+
+        Arrays.fill(timeouts, DEFAULT_TIMEOUT_MS);
+    }
+
+    /**
+     * Sets the timeout for loads of the placement issued from now on, 0 to wait for the SDK forever.
+     */
+    void setTimeout(int placement, long timeoutMs)
+    {
+        timeouts[placement] = Math.max(0, timeoutMs);
+    }
+
+    long getTimeout(int placement)
+    {
+        return timeouts[placement];
+    }
+
+    /**
+     * Starts watching a load, identified by the token its callbacks will carry.
+     */
+    void loadStarted(int placement, Object token, long now)
+    {
+        long expiredLoadTime = NOT_PENDING;
+
+        if (count[placement] == MAX_PENDING_LOADS) {
+            // the list is full of loads that cannot all be answered, give up on the oldest the way a
+            // timeout would, so that it is still accounted for
+            expiredLoadTime = now - startedAt[placement * MAX_PENDING_LOADS];
+            remove(placement, 0);
+        }
+
+        // loads without a timeout are still tracked, so that late callbacks are recognized
+        int entry = placement * MAX_PENDING_LOADS + count[placement];
+        tokens[entry] = token;
+        startedAt[entry] = now;
+        deadlines[entry] = (timeouts[placement] == 0) ? NONE : now + timeouts[placement];
+        count[placement]++;
+
+        arm(now);
+
+        // reported once the new load is in the list, the listener may start further loads
+        if (expiredLoadTime != NOT_PENDING) {
+            listener.onLoadTimedOut(placement, expiredLoadTime);
+        }
+    }
+
+    /**
+     * Settles the load of the placement the token belongs to, as the SDK reports back. Returns how long
+     * the load took, or {@link #NOT_PENDING} if it is not in flight, in which case the callback is the
+     * late answer to a load that timed out.
+     */
+    long loadFinished(int placement, Object token)
+    {
+        int base = placement * MAX_PENDING_LOADS;
+
+        for (int i = 0; i < count[placement]; i++) {
+            if (tokens[base + i] == token) {
+                long now = SystemClock.elapsedRealtime();
+                long loadTime = now - startedAt[base + i];
+
+                remove(placement, i);
+                arm(now);
+
+                return loadTime;
+            }
+        }
+
+        return NOT_PENDING;
+    }
+
+    /**
+     * Times out every load whose deadline has passed and re-arms the timer. Called when the slot fires.
+     */
+    void check()
+    {
+        long now = SystemClock.elapsedRealtime();
+
+        for (int placement = 0; placement < count.length; placement++) {
+            int base = placement * MAX_PENDING_LOADS;
+
+            while ((count[placement] > 0) && (deadlines[base] <= now)) {
+                long loadTime = now - startedAt[base];
+                remove(placement, 0);
+
+                listener.onLoadTimedOut(placement, loadTime);
+            }
+        }
+
+        arm(now);
+    }
+
+    void clear()
+    {
+        Arrays.fill(tokens, null);
+        Arrays.fill(count, 0);
+        Arrays.fill(timeouts, DEFAULT_TIMEOUT_MS);
+        timer.cancel(slot);
+    }
+
+    // drops a load from the list of its placement, keeping the others in the order they were issued
+    private void remove(int placement, int index)
+    {
+        int base = placement * MAX_PENDING_LOADS;
+        int last = count[placement] - 1;
+
+        for (int i = index; i < last; i++) {
+            tokens[base + i] = tokens[base + i + 1];
+            startedAt[base + i] = startedAt[base + i + 1];
+            deadlines[base + i] = deadlines[base + i + 1];
+        }
+
+        // the token must not keep an ad or a delegate alive
+        tokens[base + last] = null;
+        count[placement] = last;
+    }
+
+    // keeps the shared slot armed for the earliest deadline of all placements
+    private void arm(long now)
+    {
+        long next = NONE;
+
+        for (int placement = 0; placement < count.length; placement++) {
+            if (count[placement] > 0) {
+                next = Math.min(next, deadlines[placement * MAX_PENDING_LOADS]);
+            }
+        }
+
+        if (next == NONE) {
+            timer.cancel(slot);
+        }
+        else {
+            timer.schedule(slot, next - now);
+        }
+    }
+}
@@ -9,8 +9,17 @@
 package plugin.kidoz;
 
 // imports
+import android.app.Activity;
+import android.app.Application;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
 import android.graphics.Point;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.Display;
 import android.view.Gravity;
 import android.view.View;
@@ -28,25 +37,18 @@ import com.ansca.corona.CoronaRuntimeListener;
 import com.ansca.corona.CoronaActivity;
 import com.ansca.corona.CoronaLua;
 import com.ansca.corona.CoronaLuaEvent;
-import com.ansca.corona.CoronaRuntimeTask;
 import com.ansca.corona.CoronaRuntimeTaskDispatcher;
 import com.ansca.corona.CoronaBeacon;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 // Kidoz SDK imports
-import net.kidoz.sdk.Kidoz;
-import net.kidoz.sdk.KidozError;
-import net.kidoz.sdk.KidozInitializationListener;
 import net.kidoz.ads.banner.KidozBannerView;
-import net.kidoz.ads.banner.KidozBannerAdCallback;
-import net.kidoz.ads.fullscreen.interstial.KidozInterstitialAd;
-import net.kidoz.ads.fullscreen.interstial.KidozInterstitialAdCallback;
-import net.kidoz.ads.fullscreen.rewarded.KidozRewardedAd;
-import net.kidoz.ads.fullscreen.rewarded.KidozRewardedAdCallback;
 
 /**
  * Implements the Lua interface for the Kidoz Plugin.
@@ -72,6 +74,50 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener
     private static final String ADTYPE_VIDEOUNIT     = "videoUnit";
     private static final String ADTYPE_VIDEO         = "video";
 
+    // ad type indices used by the native schedulers
+    private static final int TYPE_BANNER        = 0;
+    private static final int TYPE_INTERSTITIAL  = 1;
+    private static final int TYPE_REWARDEDVIDEO = 2;
+    private static final int TYPE_COUNT         = 3;
+
+    // deadline timer slots, retries and expiry checks have one per placement
+    private static final int SLOT_RETRY    = 0;
+    private static final int SLOT_EXPIRY   = SLOT_RETRY + PlacementRegistry.MAX_PLACEMENTS;
+    private static final int SLOT_WATCHDOG = SLOT_EXPIRY + PlacementRegistry.MAX_PLACEMENTS;
+    private static final int SLOT_RELOAD   = SLOT_WATCHDOG + 1;
+    private static final int SLOT_REBUILD  = SLOT_RELOAD + 1;
+    private static final int SLOT_REFRESH  = SLOT_REBUILD + 1;
+    private static final int SLOT_COUNT    = SLOT_REFRESH + 1;
+
+    // memory trim stages, each releasing more cached ads than the one before
+    private static final int TRIM_NONE   = 0;
+    private static final int TRIM_BANNER = 1;
+    private static final int TRIM_EXTRAS = 2;
+    private static final int TRIM_ALL    = 3;
+
+    // evicted ads are loaded again once the system has not asked for memory for this long
+    private static final long RELOAD_AFTER_TRIM_MS = 30000;
+
+    // shortest banner refresh interval accepted by kidoz.init()
+    private static final long MIN_BANNER_REFRESH_MS = 10000;
+
+    // fullscreen ads are replaced this long before their time to live runs out (at most a tenth of it)
+    private static final long TTL_REFRESH_MARGIN_MS = 60000;
+
+    // frames rendered before a deferred SDK initialization may start in the next idle window
+    private static final int DEFAULT_DEFER_INIT_FRAMES = 30;
+
+    // retries and expiry checks missed in the background run together this long after resuming,
+    // so they stay out of the first frames
+    private static final long RESUME_CATCH_UP_DELAY_MS = 1000;
+
+    // longest a reload waits for the previous run's beacon worker to close the journal, after which
+    // the new run goes without one rather than share the files
+    private static final long JOURNAL_CLOSE_TIMEOUT_MS = 2000;
+
+    // longest the runtime waits on exit for the UI thread to release the ads and stop the timers
+    private static final long TEARDOWN_TIMEOUT_MS = 2000;
+
     // positions
     private static final String POS_TOP    = "top";
     private static final String POS_BOTTOM = "bottom";
@@ -90,6 +136,15 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener
     private static final List<String> validBannerPositions = new ArrayList<>();
     private static final List<String> validAdTypes = new ArrayList<>();
 
+    // placement reported with the events of loads and shows made without one
+    private static final String DEFAULT_PLACEMENT = "default";
+
+    // ad type names by ad type index
+    private static final String[] AD_TYPE_NAMES = { ADTYPE_BANNER, ADTYPE_INTERSTITIAL, ADTYPE_REWARDEDVIDEO };
+
+    // journal beacon codes are indexes into this
+    private static final String[] JOURNAL_BEACONS = { CoronaBeacon.REQUEST, CoronaBeacon.IMPRESSION };
+
     // event phases
     private static final String PHASE_INIT           = "init";
     private static final String PHASE_LOADED         = "loaded";
@@ -99,14 +154,23 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener
     private static final String PHASE_REWARD         = "reward";
     private static final String PHASE_PLAYBACK_BEGAN = "playbackBegan";
     private static final String PHASE_PLAYBACK_ENDED = "playbackEnded";
+    private static final String PHASE_RETRYING       = "retrying";
+    private static final String PHASE_PRELOADED      = "preloaded";
+    private static final String PHASE_EVICTED        = "evicted";
+
+    // phases replayed to the listener if the process died before they were delivered
+    private static final String[] JOURNAL_PHASES = { PHASE_DISPLAYED, PHASE_CLOSED, PHASE_REWARD };
 
     // response
     private static final String RESPONSE_LOAD_FAILED = "loadFailed";
     private static final String RESPONSE_NO_OFFERS   = "noOffersAvailable";
+    private static final String RESPONSE_TIMEOUT     = "timeout";
+    private static final String RESPONSE_LOW_MEMORY  = "lowMemory";
+    private static final String RESPONSE_ACTIVITY_DESTROYED = "activityDestroyed";
 
-    // add missing keys
-    private static final String EVENT_PHASE_KEY = "phase";
-    private static final String EVENT_TYPE_KEY  = "type";
+    // event queue overflow policies
+    private static final String OVERFLOW_DROP_OLDEST = "dropOldest";
+    private static final String OVERFLOW_COLLAPSE    = "collapse";
 
     // message constants
     private static final String CORONA_TAG  = "Corona";
@@ -114,32 +178,98 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener
     private static final String WARNING_MSG = "WARNING: ";
 
     // delegates
+    // the SDK, or a simulated network when running outside of a device
+    private static AdNetwork adNetwork = new KidozAdNetwork();
+
     private static BannerDelegate bannerDelegate;
-    private static InterstitialDelegate interstitialDelegate;
-    private static RewardedDelegate rewardedDelegate;
+    private static DeferredInitTrigger deferredInitTrigger;
+    private static MemoryDelegate memoryDelegate;
+
+    // the activity the banner and the pooled ads were made for, they go away with it
+    private static ActivityScope activityScope;
+
+    // beacon events are deferred and sent off the UI thread
+    private static volatile BeaconWorker beaconWorker;
+
+    // the worker of the previous run, which closes its journal as it quits (Lua thread)
+    private static BeaconWorker quittingBeaconWorker;
+
+    // beacon and ad lifecycle events not sent or delivered yet, kept on disk across process deaths
+    private static volatile EventJournal eventJournal;
+    // lifecycle events the previous process journaled but never delivered, until kidoz.init() delivers them
+    private static final List<KidozEvent> replayedEvents = new ArrayList<>();
+
+    // native schedulers
+    private static DeadlineTimer deadlineTimer;
+    private static RetryScheduler retryScheduler;
+    private static LoadWatchdog loadWatchdog;
 
     private static int coronaListener = CoronaLua.REFNIL;
     private static CoronaRuntimeTaskDispatcher coronaRuntimeTaskDispatcher = null;
 
+    // listeners by ad type and phase, and the ad type and phase masks parsed for them (Lua thread)
+    private static final EventSubscriptions eventSubscriptions = new EventSubscriptions(AD_TYPE_NAMES);
+    private static final int[] subscriptionMasks = new int[2];
+
+    // runs the work of API calls on the UI thread, one looper message per burst of calls
+    private static final UiExecutor uiExecutor = new UiExecutor();
+
+    // the placements of every ad type, the default ones at the index of their ad type, each with its
+    // own ads and metrics
+    private static final PlacementRegistry placements = new PlacementRegistry(DEFAULT_PLACEMENT, TYPE_COUNT);
+
+    // per-placement state, indexed like the registry, written on the UI thread and read lock-free from Lua
+    private static final AdStateTable adStates = new AdStateTable(PlacementRegistry.MAX_PLACEMENTS);
+
+    // kidoz.state, the Lua copy of adStates
+    private static final StateMirror stateMirror = new StateMirror(adStates, placements, AD_TYPE_NAMES);
+
+    // pooled event records, optionally delivered once per frame
+    private static final EventQueue eventQueue = new EventQueue(EVENT_NAME, PROVIDER_NAME, eventSubscriptions, stateMirror, placements, JOURNAL_PHASES, AD_TYPE_NAMES);
+    private static volatile boolean batchEvents = false;
+
     private static String functionSignature = "";
-    private static final Map<String, Object> kidozObjects = new HashMap<>();
 
-    // Store actual ad instances
-    private static KidozInterstitialAd currentInterstitialAd = null;
-    private static KidozRewardedAd currentRewardedAd = null;
-    private static KidozBannerView currentBannerView = null;
+    // SDK credentials, kept until the (possibly deferred) SDK initialization starts
+    private static volatile String sdkPublisherID = null;
+    private static volatile String sdkSecurityToken = null;
+    private static final AtomicBoolean sdkInitStarted = new AtomicBoolean(false);
+    private static long sdkInitStartedAt = 0;
 
-    // class to hold ad instance information
-    private class KidozAdInfo
-    {
-        private Object adInstance;
-        private boolean isLoaded;
+    // kidoz.load() calls that joined a load already in flight, reported with its completion event, per placement
+    private static final AtomicIntegerArray coalescedLoads = new AtomicIntegerArray(PlacementRegistry.MAX_PLACEMENTS);
 
-        KidozAdInfo(Object adInstance) {
-            this.adInstance = adInstance;
-            isLoaded = false;
-        }
-    }
+    // placements of a kidoz.preload() still waiting for their first load result
+    private static final PreloadBatch preloadBatch = new PreloadBatch();
+
+    // requests made before kidoz.init() completed, per placement, carried out once it does
+    private static final PendingRequests pendingRequests = new PendingRequests(PlacementRegistry.MAX_PLACEMENTS);
+    private static final int[] pendingIndexes = new int[PlacementRegistry.MAX_PLACEMENTS];
+    private static final int[] pendingOps = new int[PlacementRegistry.MAX_PLACEMENTS];
+    private static volatile KidozBannerView.Position pendingBannerPosition = KidozBannerView.Position.BOTTOM_CENTER;
+
+    // Store actual ad instances, fullscreen ads are pooled by their placement
+    private static AdNetwork.Banner currentBanner = null;
+
+    // banner position of the last load, and whether the banner is on screen (UI thread only)
+    private static KidozBannerView.Position lastBannerPosition = KidozBannerView.Position.BOTTOM_CENTER;
+    private static boolean bannerOnScreen = false;
+
+    // banner refresh interval in milliseconds, 0 if the banner is only loaded on request, and whether
+    // a refresh is in flight (UI thread only)
+    private static long bannerRefreshInterval = 0;
+    private static boolean bannerRefreshing = false;
+
+    // whether any placement is marked for a reload after memory pressure, or for the next activity (UI thread only)
+    private static boolean reloadPending = false;
+    private static boolean rebuildPending = false;
+
+    // time to live of a loaded ad per ad type in milliseconds, 0 if ads never expire (UI thread only)
+    private static final long[] adTTL = new long[TYPE_COUNT];
+
+    // pool depth and load timeout per ad type, applied to each of its placements (UI thread only)
+    private static final int[] adPoolDepth = new int[TYPE_COUNT];
+    private static final long[] adLoadTimeout = new long[TYPE_COUNT];
 
     // -------------------------------------------------------------------
     // Plugin lifecycle events
@@ -151,19 +281,34 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener
         CoronaEnvironment.addRuntimeListener(this);
     }
 
+    // replaces the SDK, must be called before the plugin is loaded
+    static void setAdNetwork(AdNetwork network)
+    {
+        adNetwork = network;
+    }
+
     @Override
     public int invoke(LuaState L)
     {
         NamedJavaFunction[] luaFunctions = new NamedJavaFunction[] {
                 new Init(),
                 new Load(),
+                new Preload(),
                 new IsLoaded(),
                 new Show(),
-                new Hide()
+                new Hide(),
+                new Start(),
+                new GetMetrics(),
+                new AddEventListener(),
+                new RemoveEventListener()
         };
         String libName = L.toString(1);
         L.register(libName, luaFunctions);
 
+        // kidoz.state.<adType> holds the state name, kept up to date without calls into the plugin
+        stateMirror.create(L);
+        L.setField(-2, "state");
+
         return 1;
     }
 
@@ -187,9 +332,49 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener
 
             // initialize the delegates
             bannerDelegate = new BannerDelegate();
-            interstitialDelegate = new InterstitialDelegate();
-            rewardedDelegate = new RewardedDelegate();
+            deferredInitTrigger = new DeferredInitTrigger();
+            adStates.setListener(new StateDelegate());
+
+            memoryDelegate = new MemoryDelegate();
+            CoronaEnvironment.getApplicationContext().registerComponentCallbacks(memoryDelegate);
+
+            activityScope = new ActivityScope(CoronaActivity.class, new ActivityDelegate());
+            Context context = CoronaEnvironment.getApplicationContext();
+            if (context instanceof Application) {
+                ((Application)context).registerActivityLifecycleCallbacks(activityScope);
+            }
+
+            deadlineTimer = new DeadlineTimer(SLOT_COUNT, new SchedulerDelegate());
+            retryScheduler = new RetryScheduler(deadlineTimer, SLOT_RETRY, PlacementRegistry.MAX_PLACEMENTS);
+            loadWatchdog = new LoadWatchdog(deadlineTimer, SLOT_WATCHDOG, PlacementRegistry.MAX_PLACEMENTS, new WatchdogDelegate());
+            Arrays.fill(adPoolDepth, AdPool.DEFAULT_DEPTH);
+            Arrays.fill(adLoadTimeout, LoadWatchdog.DEFAULT_TIMEOUT_MS);
+
+            // the previous run's journal must be closed before the files are mapped again
+            boolean previousClosed = (quittingBeaconWorker == null) || quittingBeaconWorker.awaitQuit(JOURNAL_CLOSE_TIMEOUT_MS);
+            quittingBeaconWorker = null;
+
+            try {
+                if (! previousClosed) {
+                    throw new IOException("the previous journal is still open");
+                }
+                eventJournal = EventJournal.open(CoronaEnvironment.getApplicationContext().getFilesDir(), EventJournal.DEFAULT_SEGMENT_SIZE);
+            }
+            catch (IOException ex) {
+                Log.w(CORONA_TAG, PLUGIN_NAME + ": journal unavailable, events will not survive a process restart (" + ex.getMessage() + ")");
+                eventJournal = null;
+            }
+
+            beaconWorker = new BeaconWorker(new BeaconSender(coronaRuntimeTaskDispatcher, eventJournal), BeaconWorker.DEFAULT_FLUSH_INTERVAL_MS);
+
+            if (eventJournal != null) {
+                eventJournal.replay(new JournalReplay());
+                eventQueue.setJournal(eventJournal);
+            }
         }
+
+        // deliver what was raised before the runtime was available
+        eventQueue.resume(coronaRuntimeTaskDispatcher);
     }
 
     @Override
@@ -200,32 +385,157 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener
     @Override
     public void onSuspended(CoronaRuntime runtime)
     {
+        // hold events until the runtime runs again
+        eventQueue.pause();
+
+        // the process may not survive in the background, send what is queued now
+        BeaconWorker worker = beaconWorker;
+        if (worker != null) {
+            worker.pause();
+        }
+
+        uiExecutor.executeNow(new Runnable() {
+            @Override
+            public void run() {
+                if (deadlineTimer != null) {
+                    deadlineTimer.pause();
+                }
+            }
+        });
     }
 
     @Override
     public void onResumed(CoronaRuntime runtime)
     {
+        eventQueue.resume(coronaRuntimeTaskDispatcher);
+
+        BeaconWorker worker = beaconWorker;
+        if (worker != null) {
+            worker.resume();
+        }
+
+        uiExecutor.executeNow(new Runnable() {
+            @Override
+            public void run() {
+                if (deadlineTimer != null) {
+                    deadlineTimer.resume(RESUME_CATCH_UP_DELAY_MS);
+                }
+            }
+        });
     }
 
     @Override
     public void onExiting(CoronaRuntime runtime)
     {
+        // the ads, their state and the timers belong to the UI thread, release them there before the
+        // runtime goes away, so that no callback or deadline running meanwhile sees half of them
+        boolean released = uiExecutor.executeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                releaseUiObjects();
+            }
+        }, TEARDOWN_TIMEOUT_MS);
+
+        if (! released) {
+            Log.w(CORONA_TAG, PLUGIN_NAME + ": the UI thread did not release the ads in time, they are released later");
+        }
+
         // release all objects
-        kidozObjects.clear();
+        stateMirror.release(runtime.getLuaState());
         validBannerPositions.clear();
         validAdTypes.clear();
 
-        currentInterstitialAd = null;
-        currentRewardedAd = null;
-        currentBannerView = null;
+        sdkPublisherID = null;
+        sdkSecurityToken = null;
+        sdkInitStarted.set(false);
 
-        bannerDelegate = null;
-        interstitialDelegate = null;
-        rewardedDelegate = null;
+        // the journal is closed on the worker thread once the last batch has been acknowledged
+        final EventJournal journal = eventJournal;
+        eventQueue.setJournal(null);
+        eventJournal = null;
+
+        if (beaconWorker != null) {
+            beaconWorker.quit(new Runnable() {
+                @Override
+                public void run() {
+                    if (journal != null) {
+                        journal.close();
+                    }
+                }
+            });
+            quittingBeaconWorker = beaconWorker;
+        }
+        beaconWorker = null;
+        synchronized (replayedEvents) {
+            for (KidozEvent event : replayedEvents) {
+                eventQueue.release(event);
+            }
+            replayedEvents.clear();
+        }
 
         CoronaLua.deleteRef(runtime.getLuaState(), coronaListener);
         coronaListener = CoronaLua.REFNIL;
         coronaRuntimeTaskDispatcher = null;
+
+        eventSubscriptions.clear(runtime.getLuaState());
+        eventQueue.clear();
+        batchEvents = false;
+        uiExecutor.setAlignToFrame(false);
+        uiExecutor.resetCounters();
+    }
+
+    // releases the ads, their state, the lifecycle callbacks and the timers as the runtime exits (UI thread only)
+    private void releaseUiObjects()
+    {
+        if (deadlineTimer != null) {
+            deadlineTimer.cancelAll();
+        }
+        deadlineTimer = null;
+        retryScheduler = null;
+        loadWatchdog = null;
+
+        if (deferredInitTrigger != null) {
+            deferredInitTrigger.cancel();
+        }
+        deferredInitTrigger = null;
+
+        adStates.setListener(null);
+        adStates.reset();
+        pendingRequests.clear();
+        preloadBatch.clear();
+
+        for (int i = 0; i < placements.size(); i++) {
+            placements.get(i).clear();
+            coalescedLoads.set(i, 0);
+        }
+        // the default placements start over with fresh metrics
+        placements.clear();
+        reloadPending = false;
+        rebuildPending = false;
+        Arrays.fill(adTTL, 0);
+        Arrays.fill(adPoolDepth, AdPool.DEFAULT_DEPTH);
+        Arrays.fill(adLoadTimeout, LoadWatchdog.DEFAULT_TIMEOUT_MS);
+        bannerRefreshInterval = 0;
+        bannerRefreshing = false;
+
+        if (currentBanner != null) {
+            currentBanner.destroy();
+        }
+        currentBanner = null;
+        bannerDelegate = null;
+
+        if (memoryDelegate != null) {
+            CoronaEnvironment.getApplicationContext().unregisterComponentCallbacks(memoryDelegate);
+        }
+        memoryDelegate = null;
+
+        Context context = CoronaEnvironment.getApplicationContext();
+        if ((activityScope != null) && (context instanceof Application)) {
+            ((Application)context).unregisterActivityLifecycleCallbacks(activityScope);
+        }
+        activityScope = null;
+        lastBannerPosition = KidozBannerView.Position.BOTTOM_CENTER;
+        bannerOnScreen = false;
     }
 
     // -------------------------------------------------------------------
@@ -252,41 +562,49 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener
         return true;
     }
 
-    private void dispatchLuaEvent(final Map<String, Object> event)
+    private void dispatchLuaEvent(KidozEvent event)
     {
-        if (coronaRuntimeTaskDispatcher != null) {
-            coronaRuntimeTaskDispatcher.send(new CoronaRuntimeTask() {
-                public void executeUsing(CoronaRuntime runtime) {
-                    try {
-                        LuaState L = runtime.getLuaState();
-                        CoronaLua.newEvent(L, EVENT_NAME);
-                        boolean hasErrorKey = false;
+        // nobody would hear it, do not even queue it for the runtime
+        if (! eventSubscriptions.wants(event.type, event.phase)) {
+            eventQueue.release(event);
+            return;
+        }
 
-                        for (String key: event.keySet()) {
-                            CoronaLua.pushValue(L, event.get(key));
-                            L.setField(-2, key);
+        EventJournal journal = eventJournal;
 
-                            if (! hasErrorKey) {
-                                hasErrorKey = key.equals(CoronaLuaEvent.ISERROR_KEY);
-                            }
-                        }
+        // replayed events are still journaled under their own sequence number
+        if ((journal != null) && (event.type != null) && (event.sequence == 0)) {
+            int code = indexOf(JOURNAL_PHASES, event.phase);
 
-                        if (! hasErrorKey) {
-                            L.pushBoolean(false);
-                            L.setField(-2, CoronaLuaEvent.ISERROR_KEY);
-                        }
+            if (code >= 0) {
+                event.sequence = journal.append(EventJournal.STREAM_EVENT, code, adTypeIndex(event.type), event.placement, System.currentTimeMillis());
+            }
+        }
 
-                        L.pushString(PROVIDER_NAME);
-                        L.setField(-2, CoronaLuaEvent.PROVIDER_KEY);
+        eventQueue.send(coronaRuntimeTaskDispatcher, event, batchEvents);
+    }
 
-                        CoronaLua.dispatchEvent(L, coronaListener, 0);
-                    }
-                    catch (Exception ex) {
-                        ex.printStackTrace();
-                    }
-                }
-            });
+    // delivers the lifecycle events the previous process journaled but never delivered, which stay in
+    // the journal until they are acknowledged as delivered (Lua thread)
+    private void dispatchReplayedEvents()
+    {
+        synchronized (replayedEvents) {
+            for (KidozEvent event : replayedEvents) {
+                dispatchLuaEvent(event);
+            }
+            replayedEvents.clear();
+        }
+    }
+
+    private static int indexOf(String[] values, String value)
+    {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i].equals(value)) {
+                return i;
+            }
         }
+
+        return -1;
     }
 
     private class BeaconListener implements JavaFunction
@@ -298,188 +616,1281 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener
         }
     }
 
-    private void sendToBeacon(final String eventType, final String placementID)
+    // queues the beacon event for the background worker, which sends it with the next batch (any thread)
+    private void sendToBeacon(String eventType, String placementID)
     {
-        final CoronaActivity coronaActivity = CoronaEnvironment.getCoronaActivity();
+        BeaconWorker worker = beaconWorker;
+        EventJournal journal = eventJournal;
 
-        if (coronaActivity != null) {
-            Runnable runnableActivity = new Runnable() {
-                public void run() {
-                    CoronaBeacon.sendDeviceDataToBeacon(coronaRuntimeTaskDispatcher, PLUGIN_NAME, PLUGIN_VERSION, eventType, placementID, new BeaconListener());
-                }
-            };
+        if (worker != null) {
+            int sequence = 0;
+
+            if (journal != null) {
+                sequence = journal.append(EventJournal.STREAM_BEACON, indexOf(JOURNAL_BEACONS, eventType), adTypeIndex(placementID), null, System.currentTimeMillis());
+            }
 
-            coronaActivity.runOnUiThread(runnableActivity);
+            worker.record(eventType, placementID, sequence);
         }
     }
 
-    // -------------------------------------------------------------------
-    // Plugin implementation
-    // -------------------------------------------------------------------
-
-    @SuppressWarnings("unused")
-    private class Init implements NamedJavaFunction
+    private class BeaconSender implements BeaconWorker.Sender
     {
-        @Override
-        public String getName()
+        private final CoronaRuntimeTaskDispatcher dispatcher;
+        private final EventJournal journal;
+        private final BeaconListener listener = new BeaconListener();
+
+        BeaconSender(CoronaRuntimeTaskDispatcher dispatcher, EventJournal journal)
         {
-            return "init";
+            this.dispatcher = dispatcher;
+            this.journal = journal;
         }
 
         @Override
-        public int invoke(LuaState luaState)
+        public void send(String eventType, String placementID)
         {
-            String publisherID = null;
-            String securityToken = null;
-
-            functionSignature = "kidoz.init(listener, options)";
+            CoronaBeacon.sendDeviceDataToBeacon(dispatcher, PLUGIN_NAME, PLUGIN_VERSION, eventType, placementID, listener);
+        }
 
-            if (coronaListener != CoronaLua.REFNIL) {
-                return 0;
+        @Override
+        public void sent(int lastSequence)
+        {
+            // worker thread, so writing the journal out to storage does not hold up the UI
+            if (journal != null) {
+                journal.acknowledge(EventJournal.STREAM_BEACON, lastSequence);
+                journal.force();
             }
+        }
+    }
 
-            int nargs = luaState.getTop();
-            if (nargs != 2) {
-                logMsg(ERROR_MSG, "Expected 2 arguments, got: " + nargs);
-                return 0;
+    // resends the beacons and keeps the lifecycle events the previous process did not get to, under
+    // their journal sequence numbers, so that sending or delivering them acknowledges them (onLoaded only)
+    private class JournalReplay implements EventJournal.Replay
+    {
+        @Override
+        public void replay(int stream, int code, int adType, String placement, int sequence, long time)
+        {
+            if ((adType < 0) || (adType >= AD_TYPE_NAMES.length)) {
+                return;
             }
 
-            if (CoronaLua.isListener(luaState, 1, PROVIDER_NAME)) {
-                coronaListener = CoronaLua.newRef(luaState, 1);
-            }
-            else {
-                logMsg(ERROR_MSG, "listener expected, got: " + luaState.typeName(1));
-                return 0;
+            if ((stream == EventJournal.STREAM_BEACON) && (code >= 0) && (code < JOURNAL_BEACONS.length) && (beaconWorker != null)) {
+                beaconWorker.record(JOURNAL_BEACONS[code], AD_TYPE_NAMES[adType], sequence);
             }
+            else if ((stream == EventJournal.STREAM_EVENT) && (code >= 0) && (code < JOURNAL_PHASES.length)) {
+                KidozEvent event = eventQueue.obtain(JOURNAL_PHASES[code], AD_TYPE_NAMES[adType]).setPlacement(placement).setReplayed();
+                event.sequence = sequence;
 
-            if (luaState.type(2) == LuaType.TABLE) {
-                for (luaState.pushNil(); luaState.next(2); luaState.pop(1)) {
-                    String key = luaState.toString(-2);
-
-                    if (key.equals("publisherID")) {
-                        if (luaState.type(-1) == LuaType.STRING) {
-                            publisherID = luaState.toString(-1);
-                        }
-                        else {
-                            logMsg(ERROR_MSG, "options.publisherID, expected string got: " + luaState.typeName(-1));
-                            return 0;
-                        }
-                    }
-                    else if (key.equals("securityToken")) {
-                        if (luaState.type(-1) == LuaType.STRING) {
-                            securityToken = luaState.toString(-1);
-                        }
-                        else {
-                            logMsg(ERROR_MSG, "options.securityToken, expected string got: " + luaState.typeName(-1));
-                            return 0;
-                        }
-                    }
-                    else {
-                        logMsg(ERROR_MSG, "Invalid option '" + key + "'");
-                        return 0;
-                    }
+                synchronized (replayedEvents) {
+                    replayedEvents.add(event);
                 }
             }
-            else {
-                logMsg(ERROR_MSG, "options table expected, got " + luaState.typeName(2));
-                return 0;
-            }
+        }
+    }
 
-            if (publisherID == null) {
-                logMsg(ERROR_MSG, "options.publisherID required");
-                return 0;
-            }
+    // the placement of the banner, the only one it has
+    private static Placement bannerPlacement()
+    {
+        return placements.get(TYPE_BANNER);
+    }
 
-            if (securityToken == null) {
-                logMsg(ERROR_MSG, "options.securityToken required");
-                return 0;
-            }
+    private KidozEvent placementEvent(String phase, Placement placement)
+    {
+        return eventQueue.obtain(phase, AD_TYPE_NAMES[placement.adType]).setPlacement(placement.name);
+    }
 
-            final CoronaActivity coronaActivity = CoronaEnvironment.getCoronaActivity();
-            final String fPublisherID = publisherID;
-            final String fSecurityToken = securityToken;
+    // requests enough ads to bring the pool of a fullscreen placement up to its depth (UI thread only)
+    private void fillPool(CoronaActivity coronaActivity, Placement placement)
+    {
+        bindActivity(coronaActivity);
 
-            if (coronaActivity != null) {
-                coronaActivity.runOnUiThread(new Runnable() {
-                    @Override
-                    public void run() {
-                        Kidoz.initialize(coronaActivity, fPublisherID, fSecurityToken, new KidozInitializationListener() {
-                            @Override
-                            public void onInitSuccess() {
-                                Map<String, Object> coronaEvent = new HashMap<>();
-                                coronaEvent.put(EVENT_PHASE_KEY, PHASE_INIT);
-                                dispatchLuaEvent(coronaEvent);
-                            }
+        if (placement.listener == null) {
+            placement.listener = new FullscreenDelegate(placement);
+        }
 
-                            @Override
-                            public void onInitError(KidozError error) {
-                                Map<String, Object> coronaEvent = new HashMap<>();
-                                coronaEvent.put(EVENT_PHASE_KEY, PHASE_FAILED);
-                                coronaEvent.put(CoronaLuaEvent.ISERROR_KEY, true);
-                                coronaEvent.put(CoronaLuaEvent.RESPONSE_KEY, error.getMessage());
-                                dispatchLuaEvent(coronaEvent);
-                            }
-                        });
+        placement.pool.setDepth(adPoolDepth[placement.adType]);
 
-                        Log.i(CORONA_TAG, PLUGIN_NAME + ": " + PLUGIN_VERSION + " (SDK: " + PLUGIN_SDK_VERSION + ")");
-                    }
-                });
-            }
+        if (placement.pool.missing() > 0) {
+            adStates.transition(placement.index, AdStateTable.FROM_IDLE, AdStateTable.LOADING);
+        }
 
-            return 0;
+        for (int i = placement.pool.missing(); i > 0; i--) {
+            AdNetwork.FullscreenAd ad = (placement.adType == TYPE_INTERSTITIAL)
+                    ? adNetwork.createInterstitial(coronaActivity, placement.listener)
+                    : adNetwork.createRewarded(coronaActivity, placement.listener);
+
+            // watched before it is issued, the SDK may answer right away
+            placement.pool.loadStarted();
+            loadIssued(placement, ad);
+            ad.load();
+
+            sendToBeacon(CoronaBeacon.REQUEST, AD_TYPE_NAMES[placement.adType]);
         }
     }
 
-    @SuppressWarnings("unused")
-    private class Load implements NamedJavaFunction
+    // drops expired ads, marks the ones about to expire for replacement and re-arms the check (UI thread only)
+    // returns the number of ads dropped
+    private int checkExpiry(Placement placement)
     {
-        @Override
-        public String getName() {
-            return "load";
+        long ttl = adTTL[placement.adType];
+        if ((ttl <= 0) || (deadlineTimer == null)) {
+            return 0;
         }
 
-        @Override
-        public int invoke(LuaState luaState)
-        {
-            String adType = null;
-            String adPosition = null;
+        AdPool<?> pool = placement.pool;
+        long now = SystemClock.elapsedRealtime();
+        long margin = Math.min(TTL_REFRESH_MARGIN_MS, ttl / 10);
 
-            functionSignature = "kidoz.load(adType, options)";
+        int dropped = pool.expire(now - ttl, now - ttl + margin);
+        if (pool.isEmpty()) {
+            adStates.transition(placement.index, AdStateTable.FROM_READY, AdStateTable.EXPIRED);
+        }
 
-            if (!isSDKInitialized()) {
-                return 0;
-            }
+        long newest = pool.newestLoadedAt();
+        adStates.setReadyUntil(placement.index, (newest == AdPool.NONE) ? AdStateTable.NEVER : newest + ttl);
 
-            if (luaState.type(1) == LuaType.STRING) {
-                adType = luaState.toString(1);
-            }
-            else {
-                logMsg(ERROR_MSG, "adType, expected string, got: " + luaState.typeName(1));
-                return 0;
-            }
+        long next = pool.nextExpiry(ttl, margin);
+        if (next == AdPool.NONE) {
+            deadlineTimer.cancel(SLOT_EXPIRY + placement.index);
+        }
+        else {
+            deadlineTimer.schedule(SLOT_EXPIRY + placement.index, next - now);
+        }
 
-            int nargs = luaState.getTop();
-            int minArgs = 1;
-            int maxArgs = 2;
+        return dropped;
+    }
 
-            if ((nargs < minArgs) || (nargs > maxArgs)) {
-                if (minArgs == maxArgs) {
-                    logMsg(ERROR_MSG, "Expected " + maxArgs + " argument(s), got " + nargs);
-                }
-                else {
-                    logMsg(ERROR_MSG, "Expected " + minArgs + " to " + maxArgs + " arguments, got " + nargs);
-                }
-                return 0;
-            }
+    // replaces stale fullscreen ads when their expiry check comes due (UI thread only)
+    private void refreshExpiredAds(int placementIndex)
+    {
+        final CoronaActivity coronaActivity = CoronaEnvironment.getCoronaActivity();
+        if ((coronaActivity == null) || (coronaRuntimeTaskDispatcher == null) || (placementIndex >= placements.size())) {
+            return;
+        }
 
-            if (! luaState.isNoneOrNil(2)) {
-                if (luaState.type(2) != LuaType.TABLE) {
-                    logMsg(ERROR_MSG, "Options table expected, got: " + luaState.typeName(2));
-                    return 0;
-                }
-            }
+        Placement placement = placements.get(placementIndex);
+        checkExpiry(placement);
+        fillPool(coronaActivity, placement);
+    }
 
-            if (! validAdTypes.contains(adType)) {
+    // maps a ComponentCallbacks2 trim level to the cached ads to release
+    private static int trimStage(int level)
+    {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            return TRIM_ALL;
+        }
+        if ((level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) || (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL)) {
+            return TRIM_EXTRAS;
+        }
+        if ((level == ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) || (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW)) {
+            return TRIM_BANNER;
+        }
+
+        return TRIM_NONE;
+    }
+
+    // releases cached ads in priority order: the banner, then pooled ads beyond the first one, then
+    // the last ready ad of each placement, and reloads them once the pressure is over (UI thread only)
+    private void trimAds(int stage)
+    {
+        if ((coronaRuntimeTaskDispatcher == null) || (stage == TRIM_NONE)) {
+            return;
+        }
+
+        // a banner on screen or still loading stays
+        if ((currentBanner != null) && (! bannerOnScreen) && (! bannerRefreshing) && adStates.isReady(TYPE_BANNER)) {
+            currentBanner.destroy();
+            currentBanner = null;
+            adStates.transition(TYPE_BANNER, AdStateTable.FROM_READY, AdStateTable.IDLE);
+            bannerPlacement().evicted = true;
+            reloadPending = true;
+            adsEvicted(bannerPlacement(), 1, RESPONSE_LOW_MEMORY);
+        }
+
+        if (stage >= TRIM_EXTRAS) {
+            int keep = (stage == TRIM_ALL) ? 0 : 1;
+
+            for (int i = 0; i < placements.size(); i++) {
+                Placement placement = placements.get(i);
+                if (placement.adType != TYPE_BANNER) {
+                    trimPool(placement, keep);
+                }
+            }
+        }
+
+        // every trim callback pushes the reload back
+        if (reloadPending && (deadlineTimer != null)) {
+            deadlineTimer.schedule(SLOT_RELOAD, RELOAD_AFTER_TRIM_MS);
+        }
+    }
+
+    private void trimPool(Placement placement, int keep)
+    {
+        int dropped = placement.pool.shrink(keep);
+
+        if (dropped > 0) {
+            if (placement.pool.isEmpty()) {
+                adStates.transition(placement.index, AdStateTable.FROM_READY, AdStateTable.IDLE);
+            }
+            checkExpiry(placement);
+            placement.evicted = true;
+            reloadPending = true;
+            adsEvicted(placement, dropped, RESPONSE_LOW_MEMORY);
+        }
+    }
+
+    private void adsEvicted(Placement placement, int count, String reason)
+    {
+        placement.metrics.evicted(Placement.METRICS_INDEX, count);
+        dispatchLuaEvent(placementEvent(PHASE_EVICTED, placement).setCount(count).setResponse(reason));
+    }
+
+    // loads what was evicted, and lets the pools fill up to their depth again (UI thread only)
+    private void reloadEvictedAds()
+    {
+        final CoronaActivity coronaActivity = CoronaEnvironment.getCoronaActivity();
+        if ((coronaActivity == null) || (coronaRuntimeTaskDispatcher == null)) {
+            return;
+        }
+
+        reloadPending = false;
+
+        for (int i = 0; i < placements.size(); i++) {
+            Placement placement = placements.get(i);
+            boolean reload = placement.evicted;
+            placement.evicted = false;
+
+            // pools that kept some of their ads fill up again too
+            if (placement.adType != TYPE_BANNER) {
+                placement.pool.liftLimit();
+                reload |= ! placement.pool.isEmpty();
+            }
+
+            if (reload) {
+                reloadAds(coronaActivity, placement);
+            }
+        }
+    }
+
+    // loads the banner again, or tops up the pool of a fullscreen placement (UI thread only)
+    private void reloadAds(CoronaActivity coronaActivity, Placement placement)
+    {
+        if (placement.adType != TYPE_BANNER) {
+            fillPool(coronaActivity, placement);
+        }
+        else if (currentBanner == null) {
+            startLoad(coronaActivity, placement, lastBannerPosition);
+        }
+    }
+
+    // makes the activity the owner of the ad objects created from now on (UI thread only)
+    private void bindActivity(CoronaActivity coronaActivity)
+    {
+        if ((activityScope == null) || activityScope.isBoundTo(coronaActivity)) {
+            return;
+        }
+
+        // the previous activity is still around, but its ads cannot be shown on this one
+        if (activityScope.isBound()) {
+            releaseActivityObjects();
+
+            // rebuild outside of the load or show that noticed the switch
+            if (rebuildPending && (deadlineTimer != null)) {
+                deadlineTimer.schedule(SLOT_REBUILD, 0);
+            }
+        }
+
+        activityScope.bind(coronaActivity);
+    }
+
+    // destroys the banner made for the bound activity and drops the fullscreen ads loaded for it,
+    // remembering which placements to rebuild for the next activity (UI thread only)
+    private void releaseActivityObjects()
+    {
+        if (currentBanner != null) {
+            if (bannerOnScreen || adStates.isReady(TYPE_BANNER) || (adStates.get(TYPE_BANNER) == AdStateTable.LOADING)) {
+                bannerPlacement().rebuild = true;
+                rebuildPending = true;
+            }
+
+            currentBanner.destroy();
+            currentBanner = null;
+            bannerOnScreen = false;
+            bannerRefreshing = false;
+
+            if (adStates.transition(TYPE_BANNER, AdStateTable.FROM_READY, AdStateTable.IDLE)) {
+                adsEvicted(bannerPlacement(), 1, RESPONSE_ACTIVITY_DESTROYED);
+            }
+            adStates.transition(TYPE_BANNER, AdStateTable.FROM_LOADING, AdStateTable.IDLE);
+        }
+
+        for (int i = 0; i < placements.size(); i++) {
+            Placement placement = placements.get(i);
+
+            if (placement.adType != TYPE_BANNER) {
+                releasePool(placement);
+
+                // loads still in flight answer to the old delegate, which keeps their ads out of the pool
+                placement.listener = null;
+            }
+        }
+
+        bannerDelegate = new BannerDelegate();
+
+        activityScope.release();
+    }
+
+    private void releasePool(Placement placement)
+    {
+        int dropped = placement.pool.dropAll();
+
+        if (dropped > 0) {
+            placement.rebuild = true;
+            rebuildPending = true;
+            adStates.transition(placement.index, AdStateTable.FROM_READY, settledState(placement.pool));
+            checkExpiry(placement);
+            adsEvicted(placement, dropped, RESPONSE_ACTIVITY_DESTROYED);
+        }
+    }
+
+    // settles a load made for an activity that went away, releases its ad and loads a replacement
+    // for the current activity, or for the next one (UI thread only)
+    private void discardStaleAd(Placement placement, AdNetwork.FullscreenAd ad)
+    {
+        long loadTime = loadAnswered(placement.index, ad);
+
+        if (loadTime != LoadWatchdog.NOT_PENDING) {
+            // no longer in flight, and never pooled
+            placement.pool.loadFailed();
+            placement.metrics.loadFinished(Placement.METRICS_INDEX, loadTime, true, false);
+        }
+
+        // a load request attached to this one is answered by the replacement, memory pressure or not
+        if (coalescedLoads.get(placement.index) > 0) {
+            placement.pool.liftLimit();
+        }
+
+        adStates.transition(placement.index, AdStateTable.FROM_LOADING, settledState(placement.pool));
+        adsEvicted(placement, 1, RESPONSE_ACTIVITY_DESTROYED);
+
+        placement.rebuild = true;
+        rebuildPending = true;
+        if ((activityScope != null) && activityScope.isBound()) {
+            rebuildAds(CoronaEnvironment.getCoronaActivity());
+        }
+    }
+
+    // loads what went away with the previous activity for the given one (UI thread only)
+    private void rebuildAds(CoronaActivity coronaActivity)
+    {
+        if ((coronaActivity == null) || (coronaRuntimeTaskDispatcher == null)) {
+            return;
+        }
+
+        bindActivity(coronaActivity);
+
+        if (! rebuildPending) {
+            return;
+        }
+        rebuildPending = false;
+
+        for (int i = 0; i < placements.size(); i++) {
+            Placement placement = placements.get(i);
+
+            if (placement.rebuild) {
+                placement.rebuild = false;
+                reloadAds(coronaActivity, placement);
+            }
+        }
+    }
+
+    // issues a load for the placement, reporting a fullscreen ad already waiting in it right away (UI thread only)
+    private void startLoad(CoronaActivity coronaActivity, Placement placement, KidozBannerView.Position bannerPosition)
+    {
+        bindActivity(coronaActivity);
+
+        if (placement.adType != TYPE_BANNER) {
+            checkExpiry(placement);
+
+            // an ad is already waiting in the pool, report it right away
+            if (! placement.pool.isEmpty()) {
+                dispatchLuaEvent(placementEvent(PHASE_LOADED, placement));
+                preloadSettled(placement.index, true);
+            }
+
+            // an explicit request wins over memory pressure
+            retryScheduler.reset(placement.index);
+            placement.evicted = false;
+            placement.pool.liftLimit();
+            fillPool(coronaActivity, placement);
+            return;
+        }
+
+        if (currentBanner == null) {
+            currentBanner = (bannerRefreshInterval > 0)
+                    ? new DoubleBufferedBanner(adNetwork, coronaActivity, bannerDelegate)
+                    : adNetwork.createBanner(coronaActivity, bannerDelegate);
+        }
+
+        // the refresh in flight answers this request too
+        if (bannerRefreshing) {
+            coalescedLoads.incrementAndGet(TYPE_BANNER);
+            return;
+        }
+
+        // on screen, a double buffered banner loads the next one off screen, like a refresh
+        bannerRefreshing = bannerOnScreen && (currentBanner instanceof DoubleBufferedBanner);
+
+        retryScheduler.reset(TYPE_BANNER);
+        placement.evicted = false;
+        lastBannerPosition = bannerPosition;
+        adStates.transition(TYPE_BANNER, AdStateTable.FROM_IDLE, AdStateTable.LOADING);
+        currentBanner.setPosition(bannerPosition);
+        loadIssued(placement, bannerDelegate);
+        currentBanner.load();
+
+        sendToBeacon(CoronaBeacon.REQUEST, ADTYPE_BANNER);
+    }
+
+    // shows a loaded ad of the placement, the oldest one for fullscreen placements (UI thread only)
+    private void showAd(CoronaActivity coronaActivity, Placement placement)
+    {
+        // never show an ad made for another activity
+        bindActivity(coronaActivity);
+
+        if (placement.adType == TYPE_BANNER) {
+            // a loaded banner stays ready while shown, so it can be hidden and shown again
+            if ((currentBanner == null) || (! adStates.isReady(TYPE_BANNER))) {
+                logMsg(WARNING_MSG, "adType '" + ADTYPE_BANNER + "' not loaded");
+            }
+            else {
+                placement.metrics.showStarted(Placement.METRICS_INDEX, SystemClock.elapsedRealtime());
+                currentBanner.show();
+            }
+            return;
+        }
+
+        // never show an ad whose expiry check is overdue
+        if (checkExpiry(placement) > 0) {
+            fillPool(coronaActivity, placement);
+        }
+
+        AdNetwork.FullscreenAd ad = placement.pool.poll();
+
+        if (ad == null) {
+            String named = placement.name.equals(DEFAULT_PLACEMENT) ? "" : "placement '" + placement.name + "' of ";
+            logMsg(WARNING_MSG, named + "adType '" + AD_TYPE_NAMES[placement.adType] + "' not loaded");
+            return;
+        }
+
+        if (placement.pool.isEmpty()) {
+            adStates.transition(placement.index, AdStateTable.FROM_READY, AdStateTable.SHOWING);
+        }
+        checkExpiry(placement);
+        placement.metrics.showStarted(Placement.METRICS_INDEX, SystemClock.elapsedRealtime());
+        ad.show();
+
+        // start replacing the shown ad while this one is on screen
+        fillPool(coronaActivity, placement);
+    }
+
+    // carries out a kidoz.show() that was requested before kidoz.init() completed (UI thread only)
+    private void showIfRequested(Placement placement)
+    {
+        final CoronaActivity coronaActivity = CoronaEnvironment.getCoronaActivity();
+
+        if (placement.showWhenLoaded && (coronaActivity != null)) {
+            placement.showWhenLoaded = false;
+            showAd(coronaActivity, placement);
+        }
+    }
+
+    // issues the loads requested before kidoz.init() completed, in request order (UI thread only)
+    private void flushPendingRequests(CoronaActivity coronaActivity)
+    {
+        int count = pendingRequests.drain(pendingIndexes, pendingOps);
+
+        for (int i = 0; i < count; i++) {
+            Placement placement = placements.get(pendingIndexes[i]);
+
+            if ((pendingOps[i] & PendingRequests.SHOW) != 0) {
+                placement.showWhenLoaded = true;
+            }
+
+            startLoad(coronaActivity, placement, pendingBannerPosition);
+        }
+    }
+
+    // drops the requests made before kidoz.init() failed, returns how many placements were affected (UI thread only)
+    private int failPendingRequests()
+    {
+        int count = pendingRequests.drain(pendingIndexes, pendingOps);
+
+        for (int i = 0; i < count; i++) {
+            adStates.transition(pendingIndexes[i], AdStateTable.FROM_LOADING, AdStateTable.FAILED);
+            coalescedLoads.set(pendingIndexes[i], 0);
+            preloadSettled(pendingIndexes[i], false);
+        }
+
+        return count;
+    }
+
+    // starts SDK initialization unless a trigger already did, so a deferred init runs exactly once (any thread)
+    private void startSdkInit(final CoronaActivity coronaActivity)
+    {
+        if ((coronaActivity == null) || (sdkPublisherID == null) || (! sdkInitStarted.compareAndSet(false, true))) {
+            return;
+        }
+
+        uiExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                initializeSdk(coronaActivity);
+            }
+        });
+    }
+
+    // initializes the SDK and reports how long it took with the init event (UI thread only)
+    private void initializeSdk(final CoronaActivity coronaActivity)
+    {
+        if (deferredInitTrigger != null) {
+            deferredInitTrigger.cancel();
+        }
+
+        sdkInitStartedAt = SystemClock.elapsedRealtime();
+
+        adNetwork.initialize(coronaActivity, sdkPublisherID, sdkSecurityToken, new AdNetwork.InitListener() {
+            @Override
+            public void onInitSuccess() {
+                double duration = (SystemClock.elapsedRealtime() - sdkInitStartedAt) / 1000.0;
+                dispatchLuaEvent(eventQueue.obtain(PHASE_INIT, null).setDuration(duration));
+                flushPendingRequests(coronaActivity);
+            }
+
+            @Override
+            public void onInitError(String error) {
+                double duration = (SystemClock.elapsedRealtime() - sdkInitStartedAt) / 1000.0;
+                int failedRequests = failPendingRequests();
+                dispatchLuaEvent(eventQueue.obtain(PHASE_FAILED, null).setError(error).setCount(failedRequests).setDuration(duration));
+            }
+        });
+
+        Log.i(CORONA_TAG, PLUGIN_NAME + ": " + PLUGIN_VERSION + " (SDK: " + PLUGIN_SDK_VERSION + ")");
+    }
+
+    // resting state of a fullscreen placement once nothing of it is on screen (UI thread only)
+    private static int settledState(AdPool<?> pool)
+    {
+        if (! pool.isEmpty()) {
+            return AdStateTable.READY;
+        }
+
+        return pool.isLoading() ? AdStateTable.LOADING : AdStateTable.IDLE;
+    }
+
+    // single flight: claims the load of the placement for this call, or attaches it to the load already in flight
+    // returns true if the call was attached and must not issue its own request (Lua thread)
+    private static boolean joinPendingLoad(int placementIndex)
+    {
+        if (adStates.transition(placementIndex, AdStateTable.FROM_IDLE, AdStateTable.LOADING)) {
+            return false;
+        }
+
+        if (adStates.get(placementIndex) == AdStateTable.LOADING) {
+            coalescedLoads.incrementAndGet(placementIndex);
+            return true;
+        }
+
+        return false;
+    }
+
+    private static int adTypeIndex(String adType)
+    {
+        switch (adType) {
+            case ADTYPE_BANNER:
+                return TYPE_BANNER;
+            case ADTYPE_INTERSTITIAL:
+                return TYPE_INTERSTITIAL;
+            case ADTYPE_REWARDEDVIDEO:
+                return TYPE_REWARDEDVIDEO;
+            default:
+                return -1;
+        }
+    }
+
+    // reads the banner options table at the given stack index, returns null after logging an error (Lua thread)
+    private KidozBannerView.Position parseBannerOptions(LuaState luaState, int index, String adType)
+    {
+        String adPosition = null;
+
+        if (! luaState.isNoneOrNil(index)) {
+            for (luaState.pushNil(); luaState.next(index); luaState.pop(1)) {
+                String key = luaState.toString(-2);
+
+                if (key.equals("adPosition")) {
+                    if (luaState.type(-1) == LuaType.STRING) {
+                        adPosition = luaState.toString(-1);
+                    }
+                    else {
+                        logMsg(ERROR_MSG, "options.adPosition (string) expected, got: " + luaState.typeName(-1));
+                        return null;
+                    }
+                }
+                else {
+                    logMsg(ERROR_MSG, "Invalid option '" + key + "' for adType '" + adType + "'");
+                    return null;
+                }
+            }
+        }
+
+        if (adPosition == null) {
+            adPosition = POS_BOTTOM;
+        }
+
+        if (! validBannerPositions.contains(adPosition)) {
+            logMsg(ERROR_MSG, "Invalid adPosition: '" + adPosition + "' for adType '" + adType + "'");
+            return null;
+        }
+
+        switch (adPosition) {
+            case POS_TOP:
+                return KidozBannerView.Position.TOP_CENTER;
+            case POS_TOP_LEFT:
+                return KidozBannerView.Position.TOP_LEFT;
+            case POS_TOP_RIGHT:
+                return KidozBannerView.Position.TOP_RIGHT;
+            case POS_BOTTOM_LEFT:
+                return KidozBannerView.Position.BOTTOM_LEFT;
+            case POS_BOTTOM_RIGHT:
+                return KidozBannerView.Position.BOTTOM_RIGHT;
+            default:
+                return KidozBannerView.Position.BOTTOM_CENTER;
+        }
+    }
+
+    // starts timing a load of the placement about to be issued to the SDK and watching for its callback (UI thread only)
+    // the token is what the callbacks of the load carry: the ad of a fullscreen load, the delegate of a banner
+    private void loadIssued(Placement placement, Object token)
+    {
+        placement.metrics.loadStarted(Placement.METRICS_INDEX);
+
+        // placements time out like the loads of their ad type
+        if (loadWatchdog != null) {
+            loadWatchdog.setTimeout(placement.index, adLoadTimeout[placement.adType]);
+            loadWatchdog.loadStarted(placement.index, token, SystemClock.elapsedRealtime());
+        }
+    }
+
+    // settles the load of the placement the token belongs to as its callback arrives (UI thread only)
+    // returns how long the load took, or LoadWatchdog.NOT_PENDING for the late answer to a load that already timed out
+    private long loadAnswered(int placementIndex, Object token)
+    {
+        return (loadWatchdog != null) ? loadWatchdog.loadFinished(placementIndex, token) : LoadWatchdog.NOT_PENDING;
+    }
+
+    // counts a load result towards a running kidoz.preload(), and reports the batch once it is complete (UI thread only)
+    private void preloadSettled(int placementIndex, boolean loaded)
+    {
+        if (! preloadBatch.settle(placementIndex, loaded)) {
+            return;
+        }
+
+        // results are reported per ad type, failed if any of its placements failed
+        int failed = adTypesOf(preloadBatch.getFailed());
+        int loadedTypes = adTypesOf(preloadBatch.getLoaded()) & ~failed;
+
+        KidozEvent event = eventQueue.obtain(PHASE_PRELOADED, null).setResults(AD_TYPE_NAMES, loadedTypes, failed);
+
+        if (failed != 0) {
+            event.setError(RESPONSE_LOAD_FAILED);
+        }
+
+        dispatchLuaEvent(event);
+    }
+
+    // the ad types of the placements in the mask, as bits
+    private static int adTypesOf(long placementBits)
+    {
+        int adTypes = 0;
+
+        for (long bits = placementBits; bits != 0; bits &= bits - 1) {
+            adTypes |= 1 << placements.get(Long.numberOfTrailingZeros(bits)).adType;
+        }
+
+        return adTypes;
+    }
+
+    // reports a failed load and lets the retry scheduler decide whether to try again (UI thread only)
+    private void handleLoadFailure(Placement placement, long loadTime, String error, boolean noFill)
+    {
+        placement.metrics.loadFinished(Placement.METRICS_INDEX, loadTime, false, noFill);
+
+        reportLoadFailure(placement, noFill ? RESPONSE_NO_OFFERS : error, noFill);
+    }
+
+    // gives up on a load the SDK never answered and makes the placement loadable again (UI thread only)
+    private void handleLoadTimeout(Placement placement, long loadTime)
+    {
+        placement.metrics.loadTimedOut(Placement.METRICS_INDEX, loadTime);
+
+        if (placement.adType == TYPE_BANNER) {
+            if (bannerRefreshing) {
+                bannerRefreshFailed(RESPONSE_TIMEOUT);
+                return;
+            }
+
+            adStates.transition(TYPE_BANNER, AdStateTable.FROM_LOADING, AdStateTable.IDLE);
+        }
+        else {
+            placement.pool.loadFailed();
+            if (placement.pool.isEmpty() && (! placement.pool.isLoading())) {
+                adStates.transition(placement.index, AdStateTable.FROM_LOADING, AdStateTable.IDLE);
+            }
+        }
+
+        reportLoadFailure(placement, RESPONSE_TIMEOUT, false);
+    }
+
+    private void reportLoadFailure(Placement placement, String response, boolean noFill)
+    {
+        dispatchLuaEvent(placementEvent(PHASE_FAILED, placement)
+                .setError(response)
+                .setCoalesced(coalescedLoads.getAndSet(placement.index, 0)));
+        preloadSettled(placement.index, false);
+
+        if (retryScheduler == null) {
+            return;
+        }
+
+        long delay = retryScheduler.scheduleRetry(placement.index, noFill);
+        if (delay >= 0) {
+            placement.metrics.count(Placement.METRICS_INDEX, AdMetrics.RETRIES);
+            dispatchLuaEvent(placementEvent(PHASE_RETRYING, placement).setRetry(retryScheduler.getAttempts(placement.index), delay / 1000.0));
+        }
+    }
+
+    // re-issues a load once its backoff delay has elapsed (UI thread only)
+    private void retryLoad(int placementIndex)
+    {
+        final CoronaActivity coronaActivity = CoronaEnvironment.getCoronaActivity();
+        if ((coronaActivity == null) || (coronaRuntimeTaskDispatcher == null) || (placementIndex >= placements.size())) {
+            return;
+        }
+
+        Placement placement = placements.get(placementIndex);
+
+        if (placement.adType != TYPE_BANNER) {
+            fillPool(coronaActivity, placement);
+        }
+        else if (currentBanner != null) {
+            adStates.transition(TYPE_BANNER, AdStateTable.FROM_IDLE, AdStateTable.LOADING);
+            loadIssued(placement, bannerDelegate);
+            currentBanner.load();
+            sendToBeacon(CoronaBeacon.REQUEST, ADTYPE_BANNER);
+        }
+    }
+
+    // loads the next banner off screen, to be swapped in once it is ready (UI thread only)
+    private void refreshBanner()
+    {
+        if ((coronaRuntimeTaskDispatcher == null) || (currentBanner == null) || (! bannerOnScreen) || bannerRefreshing) {
+            return;
+        }
+
+        // a load requested meanwhile will do
+        if (! adStates.isReady(TYPE_BANNER)) {
+            return;
+        }
+
+        bannerRefreshing = true;
+        loadIssued(bannerPlacement(), bannerDelegate);
+        currentBanner.load();
+
+        sendToBeacon(CoronaBeacon.REQUEST, ADTYPE_BANNER);
+    }
+
+    // the banner on screen stays, and the next refresh tries again instead of a retry (UI thread only)
+    private void bannerRefreshFailed(String response)
+    {
+        bannerRefreshing = false;
+        scheduleBannerRefresh();
+
+        dispatchLuaEvent(placementEvent(PHASE_FAILED, bannerPlacement())
+                .setError(response)
+                .setCoalesced(coalescedLoads.getAndSet(TYPE_BANNER, 0)));
+        preloadSettled(TYPE_BANNER, false);
+    }
+
+    // (re)starts the refresh countdown of the banner on screen (UI thread only)
+    private void scheduleBannerRefresh()
+    {
+        if ((bannerRefreshInterval > 0) && (deadlineTimer != null)) {
+            deadlineTimer.schedule(SLOT_REFRESH, bannerRefreshInterval);
+        }
+    }
+
+    // reads options.placement from the options table at the given stack index (Lua thread)
+    // returns DEFAULT_PLACEMENT if there is none, null after logging an error
+    private String parsePlacementOption(LuaState luaState, int index)
+    {
+        if (luaState.isNoneOrNil(index)) {
+            return DEFAULT_PLACEMENT;
+        }
+
+        luaState.getField(index, "placement");
+        LuaType type = luaState.type(-1);
+        String typeName = luaState.typeName(-1);
+        String name = (type == LuaType.STRING) ? luaState.toString(-1) : null;
+        luaState.pop(1);
+
+        if (type == LuaType.NIL) {
+            return DEFAULT_PLACEMENT;
+        }
+
+        if ((name == null) || name.isEmpty()) {
+            logMsg(ERROR_MSG, "options.placement, expected non-empty string got: " + typeName);
+            return null;
+        }
+
+        return name;
+    }
+
+    // returns the placement of the ad type with the given name, a named one is created on first use
+    // returns null after logging an error (Lua thread)
+    private Placement registerPlacement(String name, int adTypeIndex)
+    {
+        if ((adTypeIndex == TYPE_BANNER) && (! name.equals(DEFAULT_PLACEMENT))) {
+            logMsg(ERROR_MSG, "Placements are not supported for adType '" + ADTYPE_BANNER + "'");
+            return null;
+        }
+
+        Placement placement = placements.register(name, adTypeIndex);
+
+        if (placement == null) {
+            logMsg(ERROR_MSG, "Too many placements, at most " + PlacementRegistry.MAX_PLACEMENTS + " are supported");
+            return null;
+        }
+
+        if (placement.adType != adTypeIndex) {
+            logMsg(ERROR_MSG, "Placement '" + name + "' belongs to adType '" + AD_TYPE_NAMES[placement.adType] + "'");
+            return null;
+        }
+
+        return placement;
+    }
+
+    // -------------------------------------------------------------------
+    // Plugin implementation
+    // -------------------------------------------------------------------
+
+    @SuppressWarnings("unused")
+    private class Init implements NamedJavaFunction
+    {
+        @Override
+        public String getName()
+        {
+            return "init";
+        }
+
+        @Override
+        public int invoke(LuaState luaState)
+        {
+            String publisherID = null;
+            String securityToken = null;
+            int interstitialPoolSize = AdPool.DEFAULT_DEPTH;
+            int rewardedPoolSize = AdPool.DEFAULT_DEPTH;
+            long interstitialTTL = 0;
+            long rewardedTTL = 0;
+            long bannerRefresh = 0;
+            long[] loadTimeouts = new long[TYPE_COUNT];
+            Arrays.fill(loadTimeouts, LoadWatchdog.DEFAULT_TIMEOUT_MS);
+            boolean batchEventsEnabled = false;
+            boolean alignToFrameEnabled = false;
+            int eventQueueSize = EventQueue.AUTO_CAPACITY;
+            int eventOverflow = EventQueue.OVERFLOW_DROP_OLDEST;
+            int deferInitFrames = 0;
+            boolean retryEnabled = false;
+            long retryBaseDelay = RetryScheduler.DEFAULT_BASE_DELAY_MS;
+            long retryMaxDelay = RetryScheduler.DEFAULT_MAX_DELAY_MS;
+            double retryJitter = RetryScheduler.DEFAULT_JITTER;
+            int retryMaxAttempts = RetryScheduler.DEFAULT_MAX_ATTEMPTS;
+
+            functionSignature = "kidoz.init(listener, options)";
+
+            if (coronaListener != CoronaLua.REFNIL) {
+                return 0;
+            }
+
+            int nargs = luaState.getTop();
+            if (nargs != 2) {
+                logMsg(ERROR_MSG, "Expected 2 arguments, got: " + nargs);
+                return 0;
+            }
+
+            if (! CoronaLua.isListener(luaState, 1, PROVIDER_NAME)) {
+                logMsg(ERROR_MSG, "listener expected, got: " + luaState.typeName(1));
+                return 0;
+            }
+
+            if (luaState.type(2) == LuaType.TABLE) {
+                for (luaState.pushNil(); luaState.next(2); luaState.pop(1)) {
+                    String key = luaState.toString(-2);
+
+                    if (key.equals("publisherID")) {
+                        if (luaState.type(-1) == LuaType.STRING) {
+                            publisherID = luaState.toString(-1);
+                        }
+                        else {
+                            logMsg(ERROR_MSG, "options.publisherID, expected string got: " + luaState.typeName(-1));
+                            return 0;
+                        }
+                    }
+                    else if (key.equals("securityToken")) {
+                        if (luaState.type(-1) == LuaType.STRING) {
+                            securityToken = luaState.toString(-1);
+                        }
+                        else {
+                            logMsg(ERROR_MSG, "options.securityToken, expected string got: " + luaState.typeName(-1));
+                            return 0;
+                        }
+                    }
+                    else if (key.equals("poolSize")) {
+                        if (luaState.type(-1) != LuaType.TABLE) {
+                            logMsg(ERROR_MSG, "options.poolSize, expected table got: " + luaState.typeName(-1));
+                            return 0;
+                        }
+
+                        for (luaState.pushNil(); luaState.next(-2); luaState.pop(1)) {
+                            String poolKey = luaState.toString(-2);
+
+                            if (luaState.type(-1) != LuaType.NUMBER) {
+                                logMsg(ERROR_MSG, "options.poolSize." + poolKey + ", expected number got: " + luaState.typeName(-1));
+                                return 0;
+                            }
+
+                            int poolSize = (int)luaState.toNumber(-1);
+                            if ((poolSize < 1) || (poolSize > AdPool.MAX_DEPTH)) {
+                                logMsg(ERROR_MSG, "options.poolSize." + poolKey + " must be between 1 and " + AdPool.MAX_DEPTH + ", got: " + poolSize);
+                                return 0;
+                            }
+
+                            if (poolKey.equals(ADTYPE_INTERSTITIAL)) {
+                                interstitialPoolSize = poolSize;
+                            }
+                            else if (poolKey.equals(ADTYPE_REWARDEDVIDEO)) {
+                                rewardedPoolSize = poolSize;
+                            }
+                            else {
+                                logMsg(ERROR_MSG, "Invalid options.poolSize key '" + poolKey + "'");
+                                return 0;
+                            }
+                        }
+                    }
+                    else if (key.equals("ttl")) {
+                        if (luaState.type(-1) != LuaType.TABLE) {
+                            logMsg(ERROR_MSG, "options.ttl, expected table got: " + luaState.typeName(-1));
+                            return 0;
+                        }
+
+                        for (luaState.pushNil(); luaState.next(-2); luaState.pop(1)) {
+                            String ttlKey = luaState.toString(-2);
+
+                            if ((luaState.type(-1) != LuaType.NUMBER) || (luaState.toNumber(-1) < 0)) {
+                                logMsg(ERROR_MSG, "options.ttl." + ttlKey + ", expected non-negative number got: " + luaState.typeName(-1));
+                                return 0;
+                            }
+
+                            long ttl = (long)(luaState.toNumber(-1) * 1000);
+
+                            if (ttlKey.equals(ADTYPE_INTERSTITIAL)) {
+                                interstitialTTL = ttl;
+                            }
+                            else if (ttlKey.equals(ADTYPE_REWARDEDVIDEO)) {
+                                rewardedTTL = ttl;
+                            }
+                            else {
+                                logMsg(ERROR_MSG, "Invalid options.ttl key '" + ttlKey + "'");
+                                return 0;
+                            }
+                        }
+                    }
+                    else if (key.equals("bannerRefresh")) {
+                        double seconds = (luaState.type(-1) == LuaType.NUMBER) ? luaState.toNumber(-1) : -1;
+
+                        if ((seconds == 0) || (seconds * 1000 >= MIN_BANNER_REFRESH_MS)) {
+                            bannerRefresh = (long)(seconds * 1000);
+                        }
+                        else {
+                            logMsg(ERROR_MSG, "options.bannerRefresh, expected 0 or at least " + (MIN_BANNER_REFRESH_MS / 1000) + " seconds got: " + luaState.toString(-1));
+                            return 0;
+                        }
+                    }
+                    else if (key.equals("loadTimeout")) {
+                        if ((luaState.type(-1) == LuaType.NUMBER) && (luaState.toNumber(-1) >= 0)) {
+                            Arrays.fill(loadTimeouts, (long)(luaState.toNumber(-1) * 1000));
+                        }
+                        else if (luaState.type(-1) == LuaType.TABLE) {
+                            for (luaState.pushNil(); luaState.next(-2); luaState.pop(1)) {
+                                String timeoutKey = luaState.toString(-2);
+
+                                if ((luaState.type(-1) != LuaType.NUMBER) || (luaState.toNumber(-1) < 0)) {
+                                    logMsg(ERROR_MSG, "options.loadTimeout." + timeoutKey + ", expected non-negative number got: " + luaState.typeName(-1));
+                                    return 0;
+                                }
+
+                                int timeoutType = (timeoutKey == null) ? -1 : adTypeIndex(timeoutKey);
+                                if (timeoutType < 0) {
+                                    logMsg(ERROR_MSG, "Invalid options.loadTimeout key '" + timeoutKey + "'");
+                                    return 0;
+                                }
+
+                                loadTimeouts[timeoutType] = (long)(luaState.toNumber(-1) * 1000);
+                            }
+                        }
+                        else {
+                            logMsg(ERROR_MSG, "options.loadTimeout, expected non-negative number or table got: " + luaState.typeName(-1));
+                            return 0;
+                        }
+                    }
+                    else if (key.equals("batchEvents")) {
+                        if (luaState.type(-1) == LuaType.BOOLEAN) {
+                            batchEventsEnabled = luaState.toBoolean(-1);
+                        }
+                        else {
+                            logMsg(ERROR_MSG, "options.batchEvents, expected boolean got: " + luaState.typeName(-1));
+                            return 0;
+                        }
+                    }
+                    else if (key.equals("alignToFrame")) {
+                        if (luaState.type(-1) == LuaType.BOOLEAN) {
+                            alignToFrameEnabled = luaState.toBoolean(-1);
+                        }
+                        else {
+                            logMsg(ERROR_MSG, "options.alignToFrame, expected boolean got: " + luaState.typeName(-1));
+                            return 0;
+                        }
+                    }
+                    else if (key.equals("eventQueue")) {
+                        if (luaState.type(-1) != LuaType.TABLE) {
+                            logMsg(ERROR_MSG, "options.eventQueue, expected table got: " + luaState.typeName(-1));
+                            return 0;
+                        }
+
+                        for (luaState.pushNil(); luaState.next(-2); luaState.pop(1)) {
+                            String queueKey = luaState.toString(-2);
+
+                            if (queueKey.equals("size")) {
+                                if ((luaState.type(-1) == LuaType.NUMBER) && (luaState.toNumber(-1) >= 1)) {
+                                    eventQueueSize = (int)luaState.toNumber(-1);
+                                }
+                                else {
+                                    logMsg(ERROR_MSG, "options.eventQueue.size, expected positive number got: " + luaState.typeName(-1));
+                                    return 0;
+                                }
+                            }
+                            else if (queueKey.equals("overflow")) {
+                                String overflow = (luaState.type(-1) == LuaType.STRING) ? luaState.toString(-1) : "";
+
+                                if (overflow.equals(OVERFLOW_DROP_OLDEST)) {
+                                    eventOverflow = EventQueue.OVERFLOW_DROP_OLDEST;
+                                }
+                                else if (overflow.equals(OVERFLOW_COLLAPSE)) {
+                                    eventOverflow = EventQueue.OVERFLOW_COLLAPSE;
+                                }
+                                else {
+                                    logMsg(ERROR_MSG, "options.eventQueue.overflow, expected '" + OVERFLOW_DROP_OLDEST + "' or '" + OVERFLOW_COLLAPSE + "' got: " + luaState.toString(-1));
+                                    return 0;
+                                }
+                            }
+                            else {
+                                logMsg(ERROR_MSG, "Invalid option 'eventQueue." + queueKey + "'");
+                                return 0;
+                            }
+                        }
+                    }
+                    else if (key.equals("deferInit")) {
+                        if (luaState.type(-1) == LuaType.BOOLEAN) {
+                            deferInitFrames = luaState.toBoolean(-1) ? DEFAULT_DEFER_INIT_FRAMES : 0;
+                        }
+                        else if ((luaState.type(-1) == LuaType.NUMBER) && (luaState.toNumber(-1) >= 1)) {
+                            deferInitFrames = (int)luaState.toNumber(-1);
+                        }
+                        else {
+                            logMsg(ERROR_MSG, "options.deferInit, expected boolean or number of frames got: " + luaState.typeName(-1));
+                            return 0;
+                        }
+                    }
+                    else if (key.equals("retry")) {
+                        if (luaState.type(-1) == LuaType.BOOLEAN) {
+                            retryEnabled = luaState.toBoolean(-1);
+                        }
+                        else if (luaState.type(-1) == LuaType.TABLE) {
+                            retryEnabled = true;
+
+                            for (luaState.pushNil(); luaState.next(-2); luaState.pop(1)) {
+                                String retryKey = luaState.toString(-2);
+
+                                if (luaState.type(-1) != LuaType.NUMBER) {
+                                    logMsg(ERROR_MSG, "options.retry." + retryKey + ", expected number got: " + luaState.typeName(-1));
+                                    return 0;
+                                }
+
+                                double value = luaState.toNumber(-1);
+
+                                if (retryKey.equals("baseDelay") && (value > 0)) {
+                                    retryBaseDelay = (long)(value * 1000);
+                                }
+                                else if (retryKey.equals("maxDelay") && (value > 0)) {
+                                    retryMaxDelay = (long)(value * 1000);
+                                }
+                                else if (retryKey.equals("jitter") && (value >= 0) && (value <= 1)) {
+                                    retryJitter = value;
+                                }
+                                else if (retryKey.equals("maxAttempts") && (value >= 1)) {
+                                    retryMaxAttempts = (int)value;
+                                }
+                                else {
+                                    logMsg(ERROR_MSG, "Invalid options.retry." + retryKey + " value: " + value);
+                                    return 0;
+                                }
+                            }
+                        }
+                        else {
+                            logMsg(ERROR_MSG, "options.retry, expected table or boolean got: " + luaState.typeName(-1));
+                            return 0;
+                        }
+                    }
+                    else {
+                        logMsg(ERROR_MSG, "Invalid option '" + key + "'");
+                        return 0;
+                    }
+                }
+            }
+            else {
+                logMsg(ERROR_MSG, "options table expected, got " + luaState.typeName(2));
+                return 0;
+            }
+
+            if (publisherID == null) {
+                logMsg(ERROR_MSG, "options.publisherID required");
+                return 0;
+            }
+
+            if (securityToken == null) {
+                logMsg(ERROR_MSG, "options.securityToken required");
+                return 0;
+            }
+
+            // only a plugin that initialized keeps the listener
+            coronaListener = CoronaLua.newRef(luaState, 1);
+            // the init listener hears everything until it unsubscribes from some of it
+            eventSubscriptions.add(luaState, 1, eventSubscriptions.allTypes(), EventSubscriptions.ALL_PHASES);
+
+            batchEvents = batchEventsEnabled;
+            uiExecutor.setAlignToFrame(alignToFrameEnabled);
+            eventQueue.configure(eventQueueSize, eventOverflow);
+
+            dispatchReplayedEvents();
+
+            final CoronaActivity coronaActivity = CoronaEnvironment.getCoronaActivity();
+            final int fDeferInitFrames = deferInitFrames;
+            final int fInterstitialPoolSize = interstitialPoolSize;
+            final int fRewardedPoolSize = rewardedPoolSize;
+            final long fInterstitialTTL = interstitialTTL;
+            final long fRewardedTTL = rewardedTTL;
+            final long fBannerRefresh = bannerRefresh;
+            final long[] fLoadTimeouts = loadTimeouts;
+            final boolean fRetryEnabled = retryEnabled;
+            final long fRetryBaseDelay = retryBaseDelay;
+            final long fRetryMaxDelay = retryMaxDelay;
+            final double fRetryJitter = retryJitter;
+            final int fRetryMaxAttempts = retryMaxAttempts;
+
+            if (coronaActivity != null) {
+                // hold on to load and show requests until the SDK is ready for them
+                pendingRequests.open();
+
+                sdkPublisherID = publisherID;
+                sdkSecurityToken = securityToken;
+                sdkInitStarted.set(deferInitFrames == 0);
+
+                uiExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        adPoolDepth[TYPE_INTERSTITIAL] = fInterstitialPoolSize;
+                        adPoolDepth[TYPE_REWARDEDVIDEO] = fRewardedPoolSize;
+                        adTTL[TYPE_INTERSTITIAL] = fInterstitialTTL;
+                        adTTL[TYPE_REWARDEDVIDEO] = fRewardedTTL;
+                        System.arraycopy(fLoadTimeouts, 0, adLoadTimeout, 0, TYPE_COUNT);
+                        bannerRefreshInterval = fBannerRefresh;
+
+                        if (fRetryEnabled && (retryScheduler != null)) {
+                            retryScheduler.configure(fRetryBaseDelay, fRetryMaxDelay, fRetryJitter, fRetryMaxAttempts);
+                        }
+
+                        if (fDeferInitFrames > 0) {
+                            // kidoz.start(), the first kidoz.load() or kidoz.show(), or the idle trigger starts it
+                            deferredInitTrigger.arm(fDeferInitFrames);
+                        }
+                        else {
+                            initializeSdk(coronaActivity);
+                        }
+                    }
+                });
+            }
+
+            return 0;
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private class Load implements NamedJavaFunction
+    {
+        @Override
+        public String getName() {
+            return "load";
+        }
+
+        @Override
+        public int invoke(LuaState luaState)
+        {
+            String adType = null;
+
+            functionSignature = "kidoz.load(adType, options)";
+
+            if (!isSDKInitialized()) {
+                return 0;
+            }
+
+            if (luaState.type(1) == LuaType.STRING) {
+                adType = luaState.toString(1);
+            }
+            else {
+                logMsg(ERROR_MSG, "adType, expected string, got: " + luaState.typeName(1));
+                return 0;
+            }
+
+            int nargs = luaState.getTop();
+            int minArgs = 1;
+            int maxArgs = 2;
+
+            if ((nargs < minArgs) || (nargs > maxArgs)) {
+                if (minArgs == maxArgs) {
+                    logMsg(ERROR_MSG, "Expected " + maxArgs + " argument(s), got " + nargs);
+                }
+                else {
+                    logMsg(ERROR_MSG, "Expected " + minArgs + " to " + maxArgs + " arguments, got " + nargs);
+                }
+                return 0;
+            }
+
+            if (! luaState.isNoneOrNil(2)) {
+                if (luaState.type(2) != LuaType.TABLE) {
+                    logMsg(ERROR_MSG, "Options table expected, got: " + luaState.typeName(2));
+                    return 0;
+                }
+            }
+
+            if (! validAdTypes.contains(adType)) {
                 logMsg(ERROR_MSG, "Invalid adType: '" + adType + "'");
                 return 0;
             }
@@ -489,108 +1900,326 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener
                 return 0;
             }
 
-            final String fAdType = adType;
+            final int adTypeIndex = adTypeIndex(adType);
+            KidozBannerView.Position bannerPosition = null;
+            String placementName = DEFAULT_PLACEMENT;
+
+            // Banner
+            if (adType.equals(ADTYPE_BANNER)) {
+                bannerPosition = parseBannerOptions(luaState, 2, adType);
+                if (bannerPosition == null) {
+                    return 0;
+                }
+            }
+            else {
+                placementName = parsePlacementOption(luaState, 2);
+                if (placementName == null) {
+                    return 0;
+                }
+            }
+
+            final Placement placement = registerPlacement(placementName, adTypeIndex);
+            if ((placement == null) || joinPendingLoad(placement.index)) {
+                return 0;
+            }
+
+            // kidoz.init() has not completed yet, the load is issued once it has
+            if (pendingRequests.add(placement.index, PendingRequests.LOAD)) {
+                if (bannerPosition != null) {
+                    pendingBannerPosition = bannerPosition;
+                }
+                startSdkInit(coronaActivity);
+                return 0;
+            }
+
+            final KidozBannerView.Position fBannerPosition = bannerPosition;
+
+            uiExecutor.execute(new Runnable() {
+                public void run() {
+                    startLoad(coronaActivity, placement, fBannerPosition);
+                }
+            });
+
+            return 0;
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private class Preload implements NamedJavaFunction
+    {
+        @Override
+        public String getName() {
+            return "preload";
+        }
+
+        @Override
+        public int invoke(LuaState luaState)
+        {
+            functionSignature = "kidoz.preload(spec)";
+
+            if (! isSDKInitialized()) {
+                return 0;
+            }
+
+            int nargs = luaState.getTop();
+            if (nargs != 1) {
+                logMsg(ERROR_MSG, "Expected 1 argument, got: " + nargs);
+                return 0;
+            }
+
+            if (luaState.type(1) != LuaType.TABLE) {
+                logMsg(ERROR_MSG, "spec, expected table got: " + luaState.typeName(1));
+                return 0;
+            }
+
+            final CoronaActivity coronaActivity = CoronaEnvironment.getCoronaActivity();
+            if (coronaActivity == null) {
+                return 0;
+            }
+
+            // validate the whole spec before anything is loaded
+            long batch = 0;
+            KidozBannerView.Position bannerPosition = KidozBannerView.Position.BOTTOM_CENTER;
+
+            for (luaState.pushNil(); luaState.next(1); luaState.pop(1)) {
+                String adType;
+                boolean hasOptions = false;
+
+                // { "interstitial", "rewardedVideo" } or { banner={ adPosition="top" }, interstitial=true }
+                if (luaState.type(-2) == LuaType.NUMBER) {
+                    if (luaState.type(-1) != LuaType.STRING) {
+                        logMsg(ERROR_MSG, "spec[" + luaState.toInteger(-2) + "], expected string got: " + luaState.typeName(-1));
+                        return 0;
+                    }
+                    adType = luaState.toString(-1);
+                }
+                else if (luaState.type(-2) == LuaType.STRING) {
+                    adType = luaState.toString(-2);
+                    hasOptions = (luaState.type(-1) == LuaType.TABLE);
+
+                    if ((! hasOptions) && ((luaState.type(-1) != LuaType.BOOLEAN) || (! luaState.toBoolean(-1)))) {
+                        logMsg(ERROR_MSG, "spec." + adType + ", expected true or options table got: " + luaState.typeName(-1));
+                        return 0;
+                    }
+                }
+                else {
+                    logMsg(ERROR_MSG, "spec key, expected string or number got: " + luaState.typeName(-2));
+                    return 0;
+                }
+
+                int adTypeIndex = adTypeIndex(adType);
+                if (adTypeIndex < 0) {
+                    logMsg(ERROR_MSG, "Invalid adType: '" + adType + "'");
+                    return 0;
+                }
+
+                String placementName = DEFAULT_PLACEMENT;
+
+                if (hasOptions && (adTypeIndex == TYPE_BANNER)) {
+                    bannerPosition = parseBannerOptions(luaState, luaState.getTop(), adType);
+                    if (bannerPosition == null) {
+                        return 0;
+                    }
+                }
+                else if (hasOptions) {
+                    placementName = parsePlacementOption(luaState, luaState.getTop());
+                    if (placementName == null) {
+                        return 0;
+                    }
+                }
+
+                Placement placement = registerPlacement(placementName, adTypeIndex);
+                if (placement == null) {
+                    return 0;
+                }
+
+                batch |= 1L << placement.index;
+            }
+
+            if (batch == 0) {
+                logMsg(WARNING_MSG, "Nothing to preload");
+                return 0;
+            }
+
+            preloadBatch.start(batch);
+
+            // loads already in flight, or waiting for kidoz.init(), report to the batch as they complete
+            long issued = 0;
+            boolean deferred = false;
+
+            for (long bits = batch; bits != 0; bits &= bits - 1) {
+                int placementIndex = Long.numberOfTrailingZeros(bits);
+
+                if (joinPendingLoad(placementIndex)) {
+                    continue;
+                }
+
+                if (pendingRequests.add(placementIndex, PendingRequests.LOAD)) {
+                    if (placementIndex == TYPE_BANNER) {
+                        pendingBannerPosition = bannerPosition;
+                    }
+                    deferred = true;
+                }
+                else {
+                    issued |= 1L << placementIndex;
+                }
+            }
+
+            if (deferred) {
+                startSdkInit(coronaActivity);
+            }
+
+            if (issued == 0) {
+                return 0;
+            }
+
+            final long fIssued = issued;
+            final KidozBannerView.Position fBannerPosition = bannerPosition;
+
+            // a single hop to the UI thread for all placements
+            uiExecutor.execute(new Runnable() {
+                public void run() {
+                    for (long bits = fIssued; bits != 0; bits &= bits - 1) {
+                        startLoad(coronaActivity, placements.get(Long.numberOfTrailingZeros(bits)), fBannerPosition);
+                    }
+                }
+            });
+
+            return 0;
+        }
+    }
+
+    // reads the optional ad type and phases before the listener, the last argument, into masks (Lua thread)
+    // returns false after logging an error
+    private boolean parseSubscription(LuaState luaState, int[] masks)
+    {
+        int nargs = luaState.getTop();
+        if ((nargs < 1) || (nargs > 3)) {
+            logMsg(ERROR_MSG, "Expected 1 to 3 arguments, got " + nargs);
+            return false;
+        }
+
+        if (! CoronaLua.isListener(luaState, nargs, PROVIDER_NAME)) {
+            logMsg(ERROR_MSG, "listener expected, got: " + luaState.typeName(nargs));
+            return false;
+        }
+
+        int typeMask = eventSubscriptions.allTypes();
+        int phaseMask = EventSubscriptions.ALL_PHASES;
+
+        if ((nargs > 1) && (! luaState.isNoneOrNil(1))) {
+            if (luaState.type(1) != LuaType.STRING) {
+                logMsg(ERROR_MSG, "adType, expected string got: " + luaState.typeName(1));
+                return false;
+            }
+
+            int adTypeIndex = adTypeIndex(luaState.toString(1));
+            if (adTypeIndex < 0) {
+                logMsg(ERROR_MSG, "Invalid adType: '" + luaState.toString(1) + "'");
+                return false;
+            }
+            typeMask = 1 << adTypeIndex;
+        }
+
+        if ((nargs > 2) && (! luaState.isNoneOrNil(2))) {
+            if (luaState.type(2) == LuaType.STRING) {
+                phaseMask = phaseBit(luaState.toString(2));
+            }
+            else if (luaState.type(2) == LuaType.TABLE) {
+                phaseMask = 0;
+                for (luaState.pushNil(); luaState.next(2); luaState.pop(1)) {
+                    if (luaState.type(-1) != LuaType.STRING) {
+                        logMsg(ERROR_MSG, "phases, expected list of strings got: " + luaState.typeName(-1));
+                        return false;
+                    }
+
+                    int bit = phaseBit(luaState.toString(-1));
+                    if (bit == 0) {
+                        return false;
+                    }
+                    phaseMask |= bit;
+                }
+
+                if (phaseMask == 0) {
+                    logMsg(ERROR_MSG, "phases, expected at least one phase");
+                }
+            }
+            else {
+                logMsg(ERROR_MSG, "phases, expected string or table got: " + luaState.typeName(2));
+                return false;
+            }
+
+            if (phaseMask == 0) {
+                return false;
+            }
+        }
+
+        masks[0] = typeMask;
+        masks[1] = phaseMask;
+
+        return true;
+    }
+
+    // returns the phase mask bit of the phase name, 0 after logging an error
+    private int phaseBit(String phase)
+    {
+        // the KIDOZ Android SDK reports no playback progress, a listener for it would never be called
+        if (phase.equals(PHASE_PLAYBACK_BEGAN) || phase.equals(PHASE_PLAYBACK_ENDED)) {
+            logMsg(ERROR_MSG, "Phase '" + phase + "' is not raised on Android");
+            return 0;
+        }
 
-            // Banner
-            if (adType.equals(ADTYPE_BANNER)) {
-                if (! luaState.isNoneOrNil(2)) {
-                    for (luaState.pushNil(); luaState.next(2); luaState.pop(1)) {
-                        String key = luaState.toString(-2);
+        int phaseIndex = EventSubscriptions.phaseIndex(phase);
+        if (phaseIndex < 0) {
+            logMsg(ERROR_MSG, "Invalid phase: '" + phase + "'");
+            return 0;
+        }
 
-                        if (key.equals("adPosition")) {
-                            if (luaState.type(-1) == LuaType.STRING) {
-                                adPosition = luaState.toString(-1);
-                            }
-                            else {
-                                logMsg(ERROR_MSG, "options.adPosition (string) expected, got: " + luaState.typeName(-1));
-                                return 0;
-                            }
-                        }
-                        else {
-                            logMsg(ERROR_MSG, "Invalid option '" + key + "' for adType '" + adType + "'");
-                            return 0;
-                        }
-                    }
-                }
+        return 1 << phaseIndex;
+    }
 
-                if (adPosition == null) {
-                    adPosition = POS_BOTTOM;
-                }
+    @SuppressWarnings("unused")
+    private class AddEventListener implements NamedJavaFunction
+    {
+        @Override
+        public String getName() {
+            return "addEventListener";
+        }
 
-                if (! validBannerPositions.contains(adPosition)) {
-                    logMsg(ERROR_MSG, "Invalid adPosition: '" + adPosition + "' for adType '" + adType + "'");
-                    return 0;
-                }
+        @Override
+        public int invoke(LuaState luaState)
+        {
+            functionSignature = "kidoz.addEventListener([adType, [phases,]] listener)";
 
-                final KidozBannerView.Position bannerPosition;
-
-                switch (adPosition) {
-                    case POS_TOP:
-                        bannerPosition = KidozBannerView.Position.TOP_CENTER;
-                        break;
-                    case POS_TOP_LEFT:
-                        bannerPosition = KidozBannerView.Position.TOP_LEFT;
-                        break;
-                    case POS_TOP_RIGHT:
-                        bannerPosition = KidozBannerView.Position.TOP_RIGHT;
-                        break;
-                    case POS_BOTTOM:
-                        bannerPosition = KidozBannerView.Position.BOTTOM_CENTER;
-                        break;
-                    case POS_BOTTOM_LEFT:
-                        bannerPosition = KidozBannerView.Position.BOTTOM_LEFT;
-                        break;
-                    case POS_BOTTOM_RIGHT:
-                        bannerPosition = KidozBannerView.Position.BOTTOM_RIGHT;
-                        break;
-                    default:
-                        bannerPosition = KidozBannerView.Position.BOTTOM_CENTER;
-                        break;
-                }
+            if (! parseSubscription(luaState, subscriptionMasks)) {
+                return 0;
+            }
 
-                coronaActivity.runOnUiThread(new Runnable() {
-                    public void run() {
-                        if (currentBannerView == null) {
-                            currentBannerView = new KidozBannerView(coronaActivity);
-                            currentBannerView.setBannerCallback(bannerDelegate);
-                            currentBannerView.setAutoShow(false);
-                            kidozObjects.put(ADTYPE_BANNER, new KidozAdInfo(currentBannerView));
-                        }
+            eventSubscriptions.add(luaState, luaState.getTop(), subscriptionMasks[0], subscriptionMasks[1]);
 
-                        currentBannerView.setBannerPosition(bannerPosition);
-                        currentBannerView.load();
+            return 0;
+        }
+    }
 
-                        sendToBeacon(CoronaBeacon.REQUEST, ADTYPE_BANNER);
-                    }
-                });
-            }
-            // Interstitial
-            else if (adType.equals(ADTYPE_INTERSTITIAL)) {
-                coronaActivity.runOnUiThread(new Runnable() {
-                    public void run() {
-                        KidozInterstitialAd.load(coronaActivity, interstitialDelegate);
+    @SuppressWarnings("unused")
+    private class RemoveEventListener implements NamedJavaFunction
+    {
+        @Override
+        public String getName() {
+            return "removeEventListener";
+        }
 
-                        if (!kidozObjects.containsKey(ADTYPE_INTERSTITIAL)) {
-                            kidozObjects.put(ADTYPE_INTERSTITIAL, new KidozAdInfo(null));
-                        }
+        @Override
+        public int invoke(LuaState luaState)
+        {
+            functionSignature = "kidoz.removeEventListener([adType, [phases,]] listener)";
 
-                        sendToBeacon(CoronaBeacon.REQUEST, ADTYPE_INTERSTITIAL);
-                    }
-                });
+            if (! parseSubscription(luaState, subscriptionMasks)) {
+                return 0;
             }
-            // Rewarded Video
-            else if (adType.equals(ADTYPE_REWARDEDVIDEO)) {
-                coronaActivity.runOnUiThread(new Runnable() {
-                    public void run() {
-                        KidozRewardedAd.load(coronaActivity, rewardedDelegate);
-
-                        if (!kidozObjects.containsKey(ADTYPE_REWARDEDVIDEO)) {
-                            kidozObjects.put(ADTYPE_REWARDEDVIDEO, new KidozAdInfo(null));
-                        }
 
-                        sendToBeacon(CoronaBeacon.REQUEST, ADTYPE_REWARDEDVIDEO);
-                    }
-                });
+            if (! eventSubscriptions.remove(luaState, luaState.getTop(), subscriptionMasks[0], subscriptionMasks[1])) {
+                logMsg(WARNING_MSG, "listener was not added");
             }
 
             return 0;
@@ -608,23 +2237,24 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener
         @Override
         public int invoke(LuaState luaState)
         {
-            final String adType;
-            functionSignature = "kidoz.isLoaded(adType)";
+            final int adTypeIndex;
+            functionSignature = "kidoz.isLoaded(adType, options)";
 
             if (! isSDKInitialized()) {
                 return 0;
             }
 
             int nargs = luaState.getTop();
-            if (nargs != 1) {
-                logMsg(ERROR_MSG, "Expected 1 argument, got: " + nargs);
+            if ((nargs < 1) || (nargs > 2)) {
+                logMsg(ERROR_MSG, "Expected 1 to 2 arguments, got " + nargs);
                 return 0;
             }
 
             if (luaState.type(1) == LuaType.STRING) {
-                adType = luaState.toString(1);
+                String adType = luaState.toString(1);
+                adTypeIndex = adTypeIndex(adType);
 
-                if (! validAdTypes.contains(adType)) {
+                if (adTypeIndex < 0) {
                     logMsg(ERROR_MSG, "Invalid adType: '" + adType + "'");
                     return 0;
                 }
@@ -634,9 +2264,20 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener
                 return 0;
             }
 
-            KidozAdInfo adObject = (KidozAdInfo)kidozObjects.get(adType);
-            boolean isReady = (adObject != null) && adObject.isLoaded;
-            luaState.pushBoolean(isReady);
+            if ((! luaState.isNoneOrNil(2)) && (luaState.type(2) != LuaType.TABLE)) {
+                logMsg(ERROR_MSG, "Options table expected, got: " + luaState.typeName(2));
+                return 0;
+            }
+
+            String placementName = parsePlacementOption(luaState, 2);
+            if (placementName == null) {
+                return 0;
+            }
+
+            // a placement never loaded, or one of another ad type, has nothing to show
+            Placement placement = placements.get(placementName, adTypeIndex);
+            luaState.pushBoolean((placement != null) && (placement.adType == adTypeIndex)
+                    && adStates.isReady(placement.index, SystemClock.elapsedRealtime()));
 
             return 1;
         }
@@ -656,15 +2297,15 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener
         {
             final String adType;
 
-            functionSignature = "kidoz.show(adType)";
+            functionSignature = "kidoz.show(adType, options)";
 
             if (! isSDKInitialized()) {
                 return 0;
             }
 
             int nargs = luaState.getTop();
-            if (nargs != 1) {
-                logMsg(ERROR_MSG, "Expected 1 argument, got: " + nargs);
+            if ((nargs < 1) || (nargs > 2)) {
+                logMsg(ERROR_MSG, "Expected 1 to 2 arguments, got " + nargs);
                 return 0;
             }
 
@@ -681,33 +2322,30 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener
                 return 0;
             }
 
+            if ((! luaState.isNoneOrNil(2)) && (luaState.type(2) != LuaType.TABLE)) {
+                logMsg(ERROR_MSG, "Options table expected, got: " + luaState.typeName(2));
+                return 0;
+            }
+
+            String placementName = parsePlacementOption(luaState, 2);
+            if (placementName == null) {
+                return 0;
+            }
+
             final CoronaActivity coronaActivity = CoronaEnvironment.getCoronaActivity();
+            final Placement placement = registerPlacement(placementName, adTypeIndex(adType));
 
-            if (coronaActivity != null) {
-                coronaActivity.runOnUiThread(new Runnable() {
-                    public void run() {
-                        KidozAdInfo adObject = (KidozAdInfo)kidozObjects.get(adType);
+            if ((placement != null) && (coronaActivity != null)) {
+                // kidoz.init() has not completed yet, load the ad then and show it as soon as it is ready
+                if (pendingRequests.add(placement.index, PendingRequests.SHOW)) {
+                    adStates.transition(placement.index, AdStateTable.FROM_IDLE, AdStateTable.LOADING);
+                    startSdkInit(coronaActivity);
+                    return 0;
+                }
 
-                        if ((adObject == null) || (! adObject.isLoaded)) {
-                            logMsg(WARNING_MSG, "adType '" + adType + "' not loaded");
-                        }
-                        else {
-                            if (adType.equals(ADTYPE_BANNER)) {
-                                if (currentBannerView != null) {
-                                    currentBannerView.show();
-                                }
-                            }
-                            else if (adType.equals(ADTYPE_INTERSTITIAL)) {
-                                if (currentInterstitialAd != null) {
-                                    currentInterstitialAd.show();
-                                }
-                            }
-                            else if (adType.equals(ADTYPE_REWARDEDVIDEO)) {
-                                if (currentRewardedAd != null) {
-                                    currentRewardedAd.show();
-                                }
-                            }
-                        }
+                uiExecutor.execute(new Runnable() {
+                    public void run() {
+                        showAd(coronaActivity, placement);
                     }
                 });
             }
@@ -763,11 +2401,11 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener
             final CoronaActivity coronaActivity = CoronaEnvironment.getCoronaActivity();
 
             if (coronaActivity != null) {
-                coronaActivity.runOnUiThread(new Runnable() {
+                uiExecutor.execute(new Runnable() {
                     public void run() {
                         if (adType.equals(ADTYPE_BANNER)) {
-                            if (currentBannerView != null) {
-                                currentBannerView.close();
+                            if (currentBanner != null) {
+                                currentBanner.close();
                             }
                         }
                     }
@@ -778,262 +2416,530 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener
         }
     }
 
+    @SuppressWarnings("unused")
+    private class Start implements NamedJavaFunction
+    {
+        @Override
+        public String getName()
+        {
+            return "start";
+        }
+
+        @Override
+        public int invoke(LuaState luaState)
+        {
+            functionSignature = "kidoz.start()";
+
+            if (! isSDKInitialized()) {
+                return 0;
+            }
+
+            int nargs = luaState.getTop();
+            if (nargs != 0) {
+                logMsg(ERROR_MSG, "Expected no arguments, got: " + nargs);
+                return 0;
+            }
+
+            // no-op unless kidoz.init() deferred the SDK initialization and nothing has started it yet
+            startSdkInit(CoronaEnvironment.getCoronaActivity());
+
+            return 0;
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private class GetMetrics implements NamedJavaFunction
+    {
+        @Override
+        public String getName()
+        {
+            return "getMetrics";
+        }
+
+        @Override
+        public int invoke(LuaState luaState)
+        {
+            boolean reset = false;
+
+            functionSignature = "kidoz.getMetrics([options])";
+
+            if (! isSDKInitialized()) {
+                return 0;
+            }
+
+            int nargs = luaState.getTop();
+            if (nargs > 1) {
+                logMsg(ERROR_MSG, "Expected 0 or 1 argument, got: " + nargs);
+                return 0;
+            }
+
+            if (! luaState.isNoneOrNil(1)) {
+                if (luaState.type(1) != LuaType.TABLE) {
+                    logMsg(ERROR_MSG, "options table expected, got " + luaState.typeName(1));
+                    return 0;
+                }
+
+                for (luaState.pushNil(); luaState.next(1); luaState.pop(1)) {
+                    String key = luaState.toString(-2);
+
+                    if (key.equals("reset")) {
+                        if (luaState.type(-1) == LuaType.BOOLEAN) {
+                            reset = luaState.toBoolean(-1);
+                        }
+                        else {
+                            logMsg(ERROR_MSG, "options.reset, expected boolean got: " + luaState.typeName(-1));
+                            return 0;
+                        }
+                    }
+                    else {
+                        logMsg(ERROR_MSG, "Invalid option '" + key + "'");
+                        return 0;
+                    }
+                }
+            }
+
+            luaState.newTable(0, TYPE_COUNT + 3);
+
+            // the default placements report under their ad type
+            for (int i = 0; i < TYPE_COUNT; i++) {
+                pushAdMetrics(luaState, placements.get(i).metrics, Placement.METRICS_INDEX);
+                luaState.setField(-2, AD_TYPE_NAMES[i]);
+            }
+
+            int placementCount = placements.size();
+            luaState.newTable(0, placementCount - TYPE_COUNT);
+
+            for (int i = TYPE_COUNT; i < placementCount; i++) {
+                Placement placement = placements.get(i);
+
+                pushAdMetrics(luaState, placement.metrics, Placement.METRICS_INDEX);
+                luaState.pushString(AD_TYPE_NAMES[placement.adType]);
+                luaState.setField(-2, "type");
+                luaState.setField(-2, placement.name);
+            }
+
+            luaState.setField(-2, "placements");
+
+            luaState.newTable(0, 4);
+            pushField(luaState, "queued", eventQueue.getQueued());
+            pushField(luaState, "maxQueued", eventQueue.getMaxQueued());
+            pushField(luaState, "dropped", eventQueue.getDropped());
+            pushField(luaState, "collapsed", eventQueue.getCollapsed());
+            luaState.setField(-2, "events");
+
+            luaState.newTable(0, 4);
+            pushField(luaState, "batches", uiExecutor.getBatches());
+            pushField(luaState, "tasks", uiExecutor.getTasks());
+            pushField(luaState, "maxTasks", uiExecutor.getMaxTasks());
+            pushHistogram(luaState, "batchTime", uiExecutor.getBatchTime(), 1000000.0);
+            luaState.setField(-2, "ui");
+
+            if (reset) {
+                for (int i = 0; i < placementCount; i++) {
+                    placements.get(i).metrics.reset();
+                }
+                eventQueue.resetCounters();
+                uiExecutor.resetCounters();
+            }
+
+            return 1;
+        }
+
+        // metrics of a placement, the only entry of its own table
+        private void pushAdMetrics(LuaState L, AdMetrics metrics, int index)
+        {
+            long requests = metrics.get(index, AdMetrics.REQUESTS);
+            long loaded = metrics.get(index, AdMetrics.LOADED);
+            long shows = metrics.get(index, AdMetrics.SHOWS);
+            long showFailures = metrics.get(index, AdMetrics.SHOW_FAILURES);
+
+            L.newTable(0, 17);
+
+            pushField(L, "requests", requests);
+            pushField(L, "loaded", loaded);
+            pushField(L, "failed", metrics.get(index, AdMetrics.FAILED));
+            pushField(L, "noFill", metrics.get(index, AdMetrics.NO_FILL));
+            pushField(L, "fillRate", (requests == 0) ? 0 : (double)loaded / requests);
+            pushField(L, "shows", shows);
+            pushField(L, "showFailures", showFailures);
+            pushField(L, "showFailureRate", (shows == 0) ? 0 : (double)showFailures / shows);
+            pushField(L, "retries", metrics.get(index, AdMetrics.RETRIES));
+            pushField(L, "timeouts", metrics.get(index, AdMetrics.TIMEOUTS));
+            pushField(L, "evictions", metrics.get(index, AdMetrics.EVICTIONS));
+            pushField(L, "refreshes", metrics.get(index, AdMetrics.REFRESHES));
+
+            pushHistogram(L, "loadTime", metrics.histogram(index, AdMetrics.LOAD_TIME));
+            pushHistogram(L, "loadFailTime", metrics.histogram(index, AdMetrics.LOAD_FAIL_TIME));
+            pushHistogram(L, "showTime", metrics.histogram(index, AdMetrics.SHOW_TIME));
+            pushHistogram(L, "displayTime", metrics.histogram(index, AdMetrics.DISPLAY_TIME));
+        }
+
+        // durations are reported in seconds, like every other duration the plugin reports
+        private void pushHistogram(LuaState L, String key, LatencyHistogram histogram)
+        {
+            pushHistogram(L, key, histogram, 1000.0);
+        }
+
+        // for histograms recorded in units other than milliseconds, given as units per second
+        private void pushHistogram(LuaState L, String key, LatencyHistogram histogram, double unitsPerSecond)
+        {
+            L.newTable(0, 6);
+
+            pushField(L, "count", histogram.getCount());
+            pushField(L, "mean", histogram.getMean() / unitsPerSecond);
+            pushField(L, "p50", histogram.getPercentile(50) / unitsPerSecond);
+            pushField(L, "p90", histogram.getPercentile(90) / unitsPerSecond);
+            pushField(L, "p99", histogram.getPercentile(99) / unitsPerSecond);
+            pushField(L, "max", histogram.getMax() / unitsPerSecond);
+
+            L.setField(-2, key);
+        }
+
+        private void pushField(LuaState L, String key, double value)
+        {
+            L.pushNumber(value);
+            L.setField(-2, key);
+        }
+    }
+
     // -------------------------------------------------------------------
     // Delegates
     // -------------------------------------------------------------------
 
-    private class BannerDelegate implements KidozBannerAdCallback
+    private class BannerDelegate implements AdNetwork.BannerListener
     {
         @Override
         public void onAdLoaded()
         {
-            if (! kidozObjects.isEmpty()) {
-                KidozAdInfo adObject = (KidozAdInfo)kidozObjects.get(ADTYPE_BANNER);
-                if (adObject != null) {
-                    adObject.isLoaded = true;
+            Placement placement = bannerPlacement();
+
+            // the banner was destroyed with its activity, only settle its load
+            if ((coronaRuntimeTaskDispatcher != null) && (this != bannerDelegate)) {
+                long loadTime = loadAnswered(TYPE_BANNER, this);
+                if (loadTime != LoadWatchdog.NOT_PENDING) {
+                    placement.metrics.loadFinished(Placement.METRICS_INDEX, loadTime, true, false);
+                }
+                return;
+            }
+
+            if (coronaRuntimeTaskDispatcher != null) {
+                // a double buffered banner has just swapped the new one in for the one on screen
+                if (bannerOnScreen && (currentBanner instanceof DoubleBufferedBanner)) {
+                    long now = SystemClock.elapsedRealtime();
+                    placement.metrics.count(Placement.METRICS_INDEX, AdMetrics.REFRESHES);
+                    placement.metrics.closed(Placement.METRICS_INDEX, now);
                 }
+                bannerRefreshing = false;
 
-                Map<String, Object> coronaEvent = new HashMap<>();
-                coronaEvent.put(EVENT_PHASE_KEY, PHASE_LOADED);
-                coronaEvent.put(EVENT_TYPE_KEY, ADTYPE_BANNER);
-                dispatchLuaEvent(coronaEvent);
+                adStates.transition(TYPE_BANNER, AdStateTable.FROM_ANY, AdStateTable.READY);
+                long loadTime = loadAnswered(TYPE_BANNER, this);
+                if (loadTime != LoadWatchdog.NOT_PENDING) {
+                    placement.metrics.loadFinished(Placement.METRICS_INDEX, loadTime, true, false);
+                }
+                retryScheduler.reset(TYPE_BANNER);
+
+                dispatchLuaEvent(placementEvent(PHASE_LOADED, placement).setCoalesced(coalescedLoads.getAndSet(TYPE_BANNER, 0)));
+                preloadSettled(TYPE_BANNER, true);
+                showIfRequested(placement);
             }
         }
 
         @Override
-        public void onAdFailedToLoad(KidozError error)
+        public void onAdFailedToLoad(String error, boolean noFill)
         {
-            if (! kidozObjects.isEmpty()) {
-                KidozAdInfo adObject = (KidozAdInfo)kidozObjects.get(ADTYPE_BANNER);
-                if (adObject != null) {
-                    adObject.isLoaded = false;
-                }
+            Placement placement = bannerPlacement();
+            long loadTime = (coronaRuntimeTaskDispatcher != null) ? loadAnswered(TYPE_BANNER, this) : LoadWatchdog.NOT_PENDING;
+
+            // a late failure was already reported as a timeout
+            if (loadTime == LoadWatchdog.NOT_PENDING) {
+                return;
+            }
+
+            // the banner was destroyed with its activity, or only a refresh failed
+            if ((this != bannerDelegate) || bannerRefreshing) {
+                placement.metrics.loadFinished(Placement.METRICS_INDEX, loadTime, false, noFill);
 
-                Map<String, Object> coronaEvent = new HashMap<>();
-                coronaEvent.put(EVENT_PHASE_KEY, PHASE_FAILED);
-                coronaEvent.put(EVENT_TYPE_KEY, ADTYPE_BANNER);
-                coronaEvent.put(CoronaLuaEvent.ISERROR_KEY, true);
-                coronaEvent.put(CoronaLuaEvent.RESPONSE_KEY, error.getMessage());
-                dispatchLuaEvent(coronaEvent);
+                if (this == bannerDelegate) {
+                    bannerRefreshFailed(noFill ? RESPONSE_NO_OFFERS : error);
+                }
+                return;
             }
+
+            adStates.transition(TYPE_BANNER, AdStateTable.FROM_LOADING | AdStateTable.FROM_READY, AdStateTable.FAILED);
+            handleLoadFailure(placement, loadTime, error, noFill);
         }
 
         @Override
         public void onAdShown()
         {
-            Map<String, Object> coronaEvent = new HashMap<>();
-            coronaEvent.put(EVENT_PHASE_KEY, PHASE_DISPLAYED);
-            coronaEvent.put(EVENT_TYPE_KEY, ADTYPE_BANNER);
-            dispatchLuaEvent(coronaEvent);
+            if (this == bannerDelegate) {
+                bannerOnScreen = true;
+                scheduleBannerRefresh();
+            }
+            bannerPlacement().metrics.displayed(Placement.METRICS_INDEX, SystemClock.elapsedRealtime());
+            dispatchLuaEvent(placementEvent(PHASE_DISPLAYED, bannerPlacement()));
 
             sendToBeacon(CoronaBeacon.IMPRESSION, ADTYPE_BANNER);
         }
 
         @Override
-        public void onAdFailedToShow(KidozError error)
-        {
-            Map<String, Object> coronaEvent = new HashMap<>();
-            coronaEvent.put(EVENT_PHASE_KEY, PHASE_FAILED);
-            coronaEvent.put(EVENT_TYPE_KEY, ADTYPE_BANNER);
-            coronaEvent.put(CoronaLuaEvent.ISERROR_KEY, true);
-            coronaEvent.put(CoronaLuaEvent.RESPONSE_KEY, error.getMessage());
-            dispatchLuaEvent(coronaEvent);
-        }
-
-        @Override
-        public void onAdImpression()
+        public void onAdFailedToShow(String error)
         {
-            // Optional: can dispatch additional event if needed
+            bannerOnScreen &= (this != bannerDelegate);
+            bannerPlacement().metrics.showFailed(Placement.METRICS_INDEX);
+            dispatchLuaEvent(placementEvent(PHASE_FAILED, bannerPlacement()).setError(error));
         }
 
         @Override
         public void onAdClosed()
         {
-            Map<String, Object> coronaEvent = new HashMap<>();
-            coronaEvent.put(EVENT_PHASE_KEY, PHASE_CLOSED);
-            coronaEvent.put(EVENT_TYPE_KEY, ADTYPE_BANNER);
-            dispatchLuaEvent(coronaEvent);
+            // hidden banners are not refreshed
+            if (this == bannerDelegate) {
+                bannerOnScreen = false;
+                if (deadlineTimer != null) {
+                    deadlineTimer.cancel(SLOT_REFRESH);
+                }
+            }
+            bannerPlacement().metrics.closed(Placement.METRICS_INDEX, SystemClock.elapsedRealtime());
+            dispatchLuaEvent(placementEvent(PHASE_CLOSED, bannerPlacement()));
         }
     }
 
-    private class InterstitialDelegate implements KidozInterstitialAdCallback
+    // callbacks of the loads and shows of one fullscreen placement
+    private class FullscreenDelegate implements AdNetwork.FullscreenAdListener
     {
+        private final Placement placement;
+
+        FullscreenDelegate(Placement placement)
+        {
+            this.placement = placement;
+        }
+
         @Override
-        public void onAdLoaded(KidozInterstitialAd ad)
+        public void onAdLoaded(AdNetwork.FullscreenAd ad)
         {
-            currentInterstitialAd = ad;
+            // the ad was loaded for an activity that went away
+            if ((coronaRuntimeTaskDispatcher != null) && (this != placement.listener)) {
+                discardStaleAd(placement, ad);
+                return;
+            }
 
-            if (! kidozObjects.isEmpty()) {
-                KidozAdInfo adObject = (KidozAdInfo)kidozObjects.get(ADTYPE_INTERSTITIAL);
-                if (adObject != null) {
-                    adObject.isLoaded = true;
-                    adObject.adInstance = ad;
+            if (coronaRuntimeTaskDispatcher != null) {
+                long now = SystemClock.elapsedRealtime();
+                long loadTime = loadAnswered(placement.index, ad);
+
+                if (loadTime != LoadWatchdog.NOT_PENDING) {
+                    placement.pool.add(ad, now);
+                    placement.metrics.loadFinished(Placement.METRICS_INDEX, loadTime, true, false);
+                }
+                else {
+                    // the load timed out, but the ad is as good as any
+                    placement.pool.addLate(ad, now);
                 }
 
-                Map<String, Object> coronaEvent = new HashMap<>();
-                coronaEvent.put(EVENT_PHASE_KEY, PHASE_LOADED);
-                coronaEvent.put(EVENT_TYPE_KEY, ADTYPE_INTERSTITIAL);
-                dispatchLuaEvent(coronaEvent);
+                adStates.transition(placement.index, AdStateTable.FROM_ANY, AdStateTable.READY);
+                checkExpiry(placement);
+                retryScheduler.reset(placement.index);
+
+                dispatchLuaEvent(placementEvent(PHASE_LOADED, placement).setCoalesced(coalescedLoads.getAndSet(placement.index, 0)));
+                preloadSettled(placement.index, true);
+                showIfRequested(placement);
             }
         }
 
         @Override
-        public void onAdFailedToLoad(KidozError error)
+        public void onAdFailedToLoad(AdNetwork.FullscreenAd ad, String error, boolean noFill)
         {
-            if (! kidozObjects.isEmpty()) {
-                KidozAdInfo adObject = (KidozAdInfo)kidozObjects.get(ADTYPE_INTERSTITIAL);
-                if (adObject != null) {
-                    adObject.isLoaded = false;
+            long loadTime = (coronaRuntimeTaskDispatcher != null) ? loadAnswered(placement.index, ad) : LoadWatchdog.NOT_PENDING;
+
+            // a late failure was already reported as a timeout
+            if (loadTime != LoadWatchdog.NOT_PENDING) {
+                placement.pool.loadFailed();
+
+                if (placement.pool.isEmpty() && (! placement.pool.isLoading())) {
+                    adStates.transition(placement.index, AdStateTable.FROM_LOADING, AdStateTable.FAILED);
                 }
 
-                Map<String, Object> coronaEvent = new HashMap<>();
-                coronaEvent.put(EVENT_PHASE_KEY, PHASE_FAILED);
-                coronaEvent.put(EVENT_TYPE_KEY, ADTYPE_INTERSTITIAL);
-                coronaEvent.put(CoronaLuaEvent.ISERROR_KEY, true);
-                coronaEvent.put(CoronaLuaEvent.RESPONSE_KEY, error.getMessage());
-                dispatchLuaEvent(coronaEvent);
+                handleLoadFailure(placement, loadTime, error, noFill);
             }
         }
 
         @Override
-        public void onAdShown(KidozInterstitialAd ad)
+        public void onAdShown(AdNetwork.FullscreenAd ad)
         {
-            if (! kidozObjects.isEmpty()) {
-                KidozAdInfo adObject = (KidozAdInfo)kidozObjects.get(ADTYPE_INTERSTITIAL);
-                if (adObject != null) {
-                    adObject.isLoaded = false;
-                }
-
-                Map<String, Object> coronaEvent = new HashMap<>();
-                coronaEvent.put(EVENT_PHASE_KEY, PHASE_DISPLAYED);
-                coronaEvent.put(EVENT_TYPE_KEY, ADTYPE_INTERSTITIAL);
-                dispatchLuaEvent(coronaEvent);
+            if (coronaRuntimeTaskDispatcher != null) {
+                placement.metrics.displayed(Placement.METRICS_INDEX, SystemClock.elapsedRealtime());
+                dispatchLuaEvent(placementEvent(PHASE_DISPLAYED, placement));
 
-                sendToBeacon(CoronaBeacon.IMPRESSION, ADTYPE_INTERSTITIAL);
+                sendToBeacon(CoronaBeacon.IMPRESSION, AD_TYPE_NAMES[placement.adType]);
             }
         }
 
         @Override
-        public void onAdFailedToShow(KidozInterstitialAd ad, KidozError error)
+        public void onAdFailedToShow(AdNetwork.FullscreenAd ad, String error)
         {
-            Map<String, Object> coronaEvent = new HashMap<>();
-            coronaEvent.put(EVENT_PHASE_KEY, PHASE_FAILED);
-            coronaEvent.put(EVENT_TYPE_KEY, ADTYPE_INTERSTITIAL);
-            coronaEvent.put(CoronaLuaEvent.ISERROR_KEY, true);
-            coronaEvent.put(CoronaLuaEvent.RESPONSE_KEY, error.getMessage());
-            dispatchLuaEvent(coronaEvent);
+            adStates.transition(placement.index, AdStateTable.FROM_SHOWING, settledState(placement.pool));
+
+            placement.metrics.showFailed(Placement.METRICS_INDEX);
+            dispatchLuaEvent(placementEvent(PHASE_FAILED, placement).setError(error));
         }
 
         @Override
-        public void onAdImpression(KidozInterstitialAd ad)
+        public void onRewardReceived(AdNetwork.FullscreenAd ad)
         {
-            // Optional: can dispatch additional event if needed
+            // interstitials never reward
+            if (placement.adType == TYPE_REWARDEDVIDEO) {
+                dispatchLuaEvent(placementEvent(PHASE_REWARD, placement));
+            }
         }
 
         @Override
-        public void onAdClosed(KidozInterstitialAd ad)
+        public void onAdClosed(AdNetwork.FullscreenAd ad)
         {
-            currentInterstitialAd = null;
+            adStates.transition(placement.index, AdStateTable.FROM_SHOWING, settledState(placement.pool));
 
-            Map<String, Object> coronaEvent = new HashMap<>();
-            coronaEvent.put(EVENT_PHASE_KEY, PHASE_CLOSED);
-            coronaEvent.put(EVENT_TYPE_KEY, ADTYPE_INTERSTITIAL);
-            dispatchLuaEvent(coronaEvent);
+            placement.metrics.closed(Placement.METRICS_INDEX, SystemClock.elapsedRealtime());
+            dispatchLuaEvent(placementEvent(PHASE_CLOSED, placement));
         }
     }
 
-    private class RewardedDelegate implements KidozRewardedAdCallback
+    // starts a deferred SDK initialization in the first idle window after the app has rendered a number of frames
+    private class DeferredInitTrigger implements Choreographer.FrameCallback, MessageQueue.IdleHandler
     {
-        @Override
-        public void onAdLoaded(KidozRewardedAd ad)
-        {
-            currentRewardedAd = ad;
+        private Choreographer choreographer = null;
+        private int framesLeft = 0;
+        private boolean armed = false;
 
-            if (! kidozObjects.isEmpty()) {
-                KidozAdInfo adObject = (KidozAdInfo)kidozObjects.get(ADTYPE_REWARDEDVIDEO);
-                if (adObject != null) {
-                    adObject.isLoaded = true;
-                    adObject.adInstance = ad;
-                }
+        void arm(int frames)
+        {
+            choreographer = Choreographer.getInstance();
+            framesLeft = frames;
+            armed = true;
+            choreographer.postFrameCallback(this);
+        }
 
-                Map<String, Object> coronaEvent = new HashMap<>();
-                coronaEvent.put(EVENT_PHASE_KEY, PHASE_LOADED);
-                coronaEvent.put(EVENT_TYPE_KEY, ADTYPE_REWARDEDVIDEO);
-                dispatchLuaEvent(coronaEvent);
+        void cancel()
+        {
+            if (armed) {
+                armed = false;
+                choreographer.removeFrameCallback(this);
+                Looper.myQueue().removeIdleHandler(this);
             }
         }
 
         @Override
-        public void onAdFailedToLoad(KidozError error)
+        public void doFrame(long frameTimeNanos)
         {
-            if (! kidozObjects.isEmpty()) {
-                KidozAdInfo adObject = (KidozAdInfo)kidozObjects.get(ADTYPE_REWARDEDVIDEO);
-                if (adObject != null) {
-                    adObject.isLoaded = false;
-                }
+            if (! armed) {
+                return;
+            }
 
-                Map<String, Object> coronaEvent = new HashMap<>();
-                coronaEvent.put(EVENT_PHASE_KEY, PHASE_FAILED);
-                coronaEvent.put(EVENT_TYPE_KEY, ADTYPE_REWARDEDVIDEO);
-                coronaEvent.put(CoronaLuaEvent.ISERROR_KEY, true);
-                coronaEvent.put(CoronaLuaEvent.RESPONSE_KEY, error.getMessage());
-                dispatchLuaEvent(coronaEvent);
+            if (--framesLeft > 0) {
+                choreographer.postFrameCallback(this);
+            }
+            else {
+                Looper.myQueue().addIdleHandler(this);
             }
         }
 
         @Override
-        public void onAdShown(KidozRewardedAd ad)
+        public boolean queueIdle()
         {
-            if (! kidozObjects.isEmpty()) {
-                KidozAdInfo adObject = (KidozAdInfo)kidozObjects.get(ADTYPE_REWARDEDVIDEO);
-                if (adObject != null) {
-                    adObject.isLoaded = false;
-                }
+            if (armed) {
+                armed = false;
+                startSdkInit(CoronaEnvironment.getCoronaActivity());
+            }
+
+            // one-shot
+            return false;
+        }
+    }
+
+    private class StateDelegate implements AdStateTable.Listener
+    {
+        @Override
+        public void onStateChanged(int adType)
+        {
+            stateMirror.changed(coronaRuntimeTaskDispatcher);
+        }
+    }
 
-                Map<String, Object> coronaEvent = new HashMap<>();
-                coronaEvent.put(EVENT_PHASE_KEY, PHASE_DISPLAYED);
-                coronaEvent.put(EVENT_TYPE_KEY, ADTYPE_REWARDEDVIDEO);
-                dispatchLuaEvent(coronaEvent);
+    // lifecycle callbacks arrive on the main thread, where the ads live
+    private class ActivityDelegate implements ActivityScope.Listener
+    {
+        @Override
+        public void onActivityResumed(Activity activity)
+        {
+            rebuildAds((CoronaActivity)activity);
+        }
 
-                sendToBeacon(CoronaBeacon.IMPRESSION, ADTYPE_REWARDEDVIDEO);
+        @Override
+        public void onActivityDestroyed(Activity activity)
+        {
+            if (coronaRuntimeTaskDispatcher != null) {
+                releaseActivityObjects();
+            }
+            else {
+                activityScope.release();
             }
         }
+    }
 
+    // trim callbacks arrive on the main thread, where the ads live
+    private class MemoryDelegate implements ComponentCallbacks2
+    {
         @Override
-        public void onAdFailedToShow(KidozRewardedAd ad, KidozError error)
+        public void onTrimMemory(int level)
         {
-            Map<String, Object> coronaEvent = new HashMap<>();
-            coronaEvent.put(EVENT_PHASE_KEY, PHASE_FAILED);
-            coronaEvent.put(EVENT_TYPE_KEY, ADTYPE_REWARDEDVIDEO);
-            coronaEvent.put(CoronaLuaEvent.ISERROR_KEY, true);
-            coronaEvent.put(CoronaLuaEvent.RESPONSE_KEY, error.getMessage());
-            dispatchLuaEvent(coronaEvent);
+            trimAds(trimStage(level));
         }
 
         @Override
-        public void onAdImpression(KidozRewardedAd ad)
+        public void onLowMemory()
         {
-            // Optional: can dispatch additional event if needed
+            trimAds(TRIM_ALL);
         }
 
         @Override
-        public void onRewardReceived(KidozRewardedAd ad)
+        public void onConfigurationChanged(Configuration newConfig)
         {
-            Map<String, Object> coronaEvent = new HashMap<>();
-            coronaEvent.put(EVENT_PHASE_KEY, PHASE_REWARD);
-            coronaEvent.put(EVENT_TYPE_KEY, ADTYPE_REWARDEDVIDEO);
-            dispatchLuaEvent(coronaEvent);
         }
+    }
 
+    private class WatchdogDelegate implements LoadWatchdog.Listener
+    {
         @Override
-        public void onAdClosed(KidozRewardedAd ad)
+        public void onLoadTimedOut(int placementIndex, long loadTime)
         {
-            currentRewardedAd = null;
+            if ((coronaRuntimeTaskDispatcher != null) && (placementIndex < placements.size())) {
+                handleLoadTimeout(placements.get(placementIndex), loadTime);
+            }
+        }
+    }
 
-            Map<String, Object> coronaEvent = new HashMap<>();
-            coronaEvent.put(EVENT_PHASE_KEY, PHASE_CLOSED);
-            coronaEvent.put(EVENT_TYPE_KEY, ADTYPE_REWARDEDVIDEO);
-            dispatchLuaEvent(coronaEvent);
+    private class SchedulerDelegate implements DeadlineTimer.Listener
+    {
+        @Override
+        public void onDeadline(int slot)
+        {
+            if (slot < SLOT_RETRY + PlacementRegistry.MAX_PLACEMENTS) {
+                retryLoad(slot - SLOT_RETRY);
+            }
+            else if (slot < SLOT_EXPIRY + PlacementRegistry.MAX_PLACEMENTS) {
+                refreshExpiredAds(slot - SLOT_EXPIRY);
+            }
+            else if (slot == SLOT_WATCHDOG) {
+                loadWatchdog.check();
+            }
+            else if (slot == SLOT_RELOAD) {
+                reloadEvictedAds();
+            }
+            else if (slot == SLOT_REBUILD) {
+                rebuildAds(CoronaEnvironment.getCoronaActivity());
+            }
+            else if (slot == SLOT_REFRESH) {
+                refreshBanner();
+            }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,89 @@
+//
+// PendingRequests.java
+// Kidoz Plugin
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package plugin.kidoz;
+
+/**
+ * Load and show requests made while the SDK is still initializing.
+ * <p/>
+ * Requests are merged per placement, so the queue never holds more than one entry per placement and
+ * needs no allocation. Entries keep the order in which their placement was first requested.
+ * The queue only accepts requests between {@link #open()} and the {@link #drain(int[], int[])} that
+ * follows initialization, which makes the check and the hand-off atomic with respect to each other.
+ * <p/>
+ * Thread safe.
+ */
+class PendingRequests
+{
+    static final int LOAD = 1;
+    static final int SHOW = 2;
+
+    private final int[] ops;
+    private final int[] order;
+    private int size = 0;
+    private boolean open = false;
+
+    PendingRequests(int placementCount)
+    {
+        ops = new int[placementCount];
+        order = new int[placementCount];
+    }
+
+    synchronized void open()
+    {
+        open = true;
+    }
+
+    /**
+     * Records the request if initialization is still in progress. Returns false if the queue is
+     * closed, in which case the caller must carry out the request itself.
+     */
+    synchronized boolean add(int placement, int op)
+    {
+        if (! open) {
+            return false;
+        }
+
+        if (ops[placement] == 0) {
+            order[size++] = placement;
+        }
+        ops[placement] |= op;
+
+        return true;
+    }
+
+    /**
+     * Closes the queue and copies its entries, in request order, into the given arrays.
+     * Returns the number of entries copied.
+     */
+    synchronized int drain(int[] placements, int[] placementOps)
+    {
+        int count = size;
+
+        for (int i = 0; i < count; i++) {
+            placements[i] = order[i];
+            placementOps[i] = ops[order[i]];
+            ops[order[i]] = 0;
+        }
+
+        size = 0;
+        open = false;
+
+        return count;
+    }
+
+    synchronized void clear()
+    {
+        for (int i = 0; i < ops.length; i++) {
+            ops[i] = 0;
+        }
+
+        size = 0;
+        open = false;
+    }
+}
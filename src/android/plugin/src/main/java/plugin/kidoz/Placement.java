@@ -0,0 +1,66 @@
+//
+// Placement.java
+// Kidoz Plugin
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package plugin.kidoz;
+
+/**
+ * A placement of an ad type, with its own ads, load and show metrics, and listener.
+ * <p/>
+ * Each ad type has a default placement, and interstitials and rewarded videos can have named ones
+ * too. All of them are loaded and shown the same way. The banner placement keeps no ads of its own,
+ * the banner view holds its ad.
+ * <p/>
+ * Placements are created by {@link PlacementRegistry} and never go away, so their index can key
+ * per-placement state kept elsewhere, such as the lock-free state table read from Lua, the retry and
+ * expiry timers, and the requests held until the SDK is ready. Metrics are allocated with the
+ * placement, so only the placements a game actually uses cost memory.
+ * <p/>
+ * The name, ad type, index and metrics may be read from any thread. Everything else belongs to the
+ * UI thread, where the SDK delivers its callbacks.
+ */
+class Placement
+{
+    // metrics of a placement are the only entry of their table
+    static final int METRICS_INDEX = 0;
+
+    final String name;
+    final int adType;
+    final int index;
+
+    final AdMetrics metrics = new AdMetrics(1);
+    final AdPool<AdNetwork.FullscreenAd> pool = new AdPool<>();
+
+    // receives the callbacks of the loads issued for the bound activity, null until the next load
+    // once that activity went away, so that callbacks of older loads can be told apart
+    AdNetwork.FullscreenAdListener listener = null;
+
+    // a show requested before the SDK was ready, and ads released with their activity or under
+    // memory pressure that are to be loaded again, for banners the banner view
+    boolean showWhenLoaded = false;
+    boolean rebuild = false;
+    boolean evicted = false;
+
+    Placement(String name, int adType, int index)
+    {
+        this.name = name;
+        this.adType = adType;
+        this.index = index;
+    }
+
+    /**
+     * Releases the ads and forgets pending work, keeping the metrics. UI thread only.
+     */
+    void clear()
+    {
+        pool.clear();
+        listener = null;
+        showWhenLoaded = false;
+        rebuild = false;
+        evicted = false;
+    }
+}
@@ -0,0 +1,124 @@
+//
+// PlacementRegistry.java
+// Kidoz Plugin
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package plugin.kidoz;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The placements in use, looked up by name from Lua and by index from the UI thread.
+ * <p/>
+ * Every ad type has a default placement, registered up front at the index of its ad type, which is
+ * what loads and shows made without a placement name use. Named placements follow it.
+ * <p/>
+ * Lookups by name go through a concurrent hash map and lookups by index through an atomic array, so
+ * neither takes a lock, and both are constant time however many placements there are. Only creating
+ * a placement is synchronized, which happens once per name. Placements get consecutive indexes and
+ * are never removed, up to {@link #MAX_PLACEMENTS} including the default ones.
+ * <p/>
+ * Thread safe.
+ */
+class PlacementRegistry
+{
+    // at most one per bit of a long, which is how kidoz.preload() tracks them
+    static final int MAX_PLACEMENTS = 64;
+
+    private final ConcurrentHashMap<String, Placement> byName = new ConcurrentHashMap<>(MAX_PLACEMENTS * 2);
+    private final AtomicReferenceArray<Placement> byIndex = new AtomicReferenceArray<>(MAX_PLACEMENTS);
+
+    // name of the default placements, which are looked up by ad type rather than by name
+    private final String defaultName;
+    private final int adTypeCount;
+
+    // written after the placement is in both lookups, so readers never see a missing index
+    private volatile int size = 0;
+
+    PlacementRegistry(String defaultName, int adTypeCount)
+    {
+        this.defaultName = defaultName;
+        this.adTypeCount = adTypeCount;
+
+        registerDefaults();
+    }
+
+    /**
+     * Returns the placement of the ad type with the given name, the default one for the default name,
+     * or null if it was never registered. A named placement is returned even if it belongs to another
+     * ad type.
+     */
+    Placement get(String name, int adType)
+    {
+        if (name.equals(defaultName)) {
+            return byIndex.get(adType);
+        }
+
+        return byName.get(name);
+    }
+
+    /**
+     * Returns the placement at the given index, which must be below {@link #size()}.
+     */
+    Placement get(int index)
+    {
+        return byIndex.get(index);
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the placement of the ad type with the given name, creating it if there is none yet.
+     * An existing placement is returned as is, even if it belongs to another ad type. Returns null
+     * if the placement would have to be created and the registry is full.
+     */
+    Placement register(String name, int adType)
+    {
+        Placement placement = get(name, adType);
+        if (placement != null) {
+            return placement;
+        }
+
+        synchronized (this) {
+            placement = byName.get(name);
+
+            if ((placement == null) && (size < MAX_PLACEMENTS)) {
+                placement = new Placement(name, adType, size);
+                byIndex.set(placement.index, placement);
+                byName.put(name, placement);
+                size = placement.index + 1;
+            }
+        }
+
+        return placement;
+    }
+
+    /**
+     * Forgets every named placement and starts the default ones afresh. Must not race with lookups,
+     * only called as the plugin shuts down.
+     */
+    synchronized void clear()
+    {
+        byName.clear();
+        for (int i = 0; i < MAX_PLACEMENTS; i++) {
+            byIndex.set(i, null);
+        }
+
+        registerDefaults();
+    }
+
+    private synchronized void registerDefaults()
+    {
+        for (int adType = 0; adType < adTypeCount; adType++) {
+            byIndex.set(adType, new Placement(defaultName, adType, adType));
+        }
+        size = adTypeCount;
+    }
+}
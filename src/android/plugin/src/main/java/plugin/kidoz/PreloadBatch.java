@@ -0,0 +1,92 @@
+//
+// PreloadBatch.java
+// Kidoz Plugin
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package plugin.kidoz;
+
+/**
+ * Placements warmed up by kidoz.preload() that have not reported their first load result yet.
+ * <p/>
+ * Placements are kept as bits of a long indexed like the {@link PlacementRegistry}, so a batch needs
+ * no allocation. Each placement settles with the first loaded or failed result after it joined the
+ * batch, and the batch is complete once all of them have. A preload started while another is still
+ * running joins it, and both are answered by the same aggregate event.
+ * <p/>
+ * Thread safe.
+ */
+class PreloadBatch
+{
+    private long pending = 0;
+    private long loaded = 0;
+    private long failed = 0;
+
+    // results of the last completed batch, kept apart so that a new start cannot change them
+    private long completedLoaded = 0;
+    private long completedFailed = 0;
+
+    /**
+     * Adds the placements in the mask to the batch.
+     */
+    synchronized void start(long placements)
+    {
+        pending |= placements;
+        loaded &= ~placements;
+        failed &= ~placements;
+    }
+
+    /**
+     * Records the load result of the placement. Returns true if it completed the batch, in which case
+     * the results are available from {@link #getLoaded()} and {@link #getFailed()} until the next
+     * batch completes.
+     */
+    synchronized boolean settle(int placement, boolean success)
+    {
+        long bit = 1L << placement;
+
+        if ((pending & bit) == 0) {
+            return false;
+        }
+
+        pending &= ~bit;
+        if (success) {
+            loaded |= bit;
+        }
+        else {
+            failed |= bit;
+        }
+
+        if (pending != 0) {
+            return false;
+        }
+
+        completedLoaded = loaded;
+        completedFailed = failed;
+        loaded = 0;
+        failed = 0;
+
+        return true;
+    }
+
+    synchronized long getLoaded()
+    {
+        return completedLoaded;
+    }
+
+    synchronized long getFailed()
+    {
+        return completedFailed;
+    }
+
+    synchronized void clear()
+    {
+        pending = 0;
+        loaded = 0;
+        failed = 0;
+        completedLoaded = 0;
+        completedFailed = 0;
+    }
+}
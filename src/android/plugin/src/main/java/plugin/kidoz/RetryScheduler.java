@@ -0,0 +1,88 @@
+//
+// RetryScheduler.java
+// Kidoz Plugin
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package plugin.kidoz;
+
+import java.util.Random;
+
+/**
+ * Schedules automatic reloads after failed loads, with exponential backoff and jitter.
+ * <p/>
+ * Each placement owns one slot on a shared {@link DeadlineTimer}, so any number of failing placements
+ * still costs a single queued timer message. Errors back off exponentially from the base delay,
+ * while no-fill responses wait the full cap straight away since the inventory is simply empty.
+ * <p/>
+ * Not thread safe. All methods must be called on the UI thread.
+ */
+class RetryScheduler
+{
+    static final long DEFAULT_BASE_DELAY_MS = 2000;
+    static final long DEFAULT_MAX_DELAY_MS  = 60000;
+    static final double DEFAULT_JITTER      = 0.2;
+    static final int DEFAULT_MAX_ATTEMPTS   = 5;
+
+    private final DeadlineTimer timer;
+    private final int firstSlot;
+    private final int[] attempts;
+    private final Random random = new Random();
+
+    private boolean enabled     = false;
+    private long baseDelayMs    = DEFAULT_BASE_DELAY_MS;
+    private long maxDelayMs     = DEFAULT_MAX_DELAY_MS;
+    private double jitter       = DEFAULT_JITTER;
+    private int maxAttempts     = DEFAULT_MAX_ATTEMPTS;
+
+    RetryScheduler(DeadlineTimer timer, int firstSlot, int adTypeCount)
+    {
+        this.timer = timer;
+        this.firstSlot = firstSlot;
+        this.attempts = new int[adTypeCount];
+    }
+
+    void configure(long baseDelayMs, long maxDelayMs, double jitter, int maxAttempts)
+    {
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = Math.max(baseDelayMs, maxDelayMs);
+        this.jitter = jitter;
+        this.maxAttempts = maxAttempts;
+        this.enabled = true;
+    }
+
+    /**
+     * Schedules the next attempt for the ad type. Returns the delay in milliseconds, or -1 if no retry was
+     * scheduled because retries are disabled, a retry is already pending, or all attempts are used up.
+     */
+    long scheduleRetry(int adType, boolean noFill)
+    {
+        if ((! enabled) || timer.isScheduled(firstSlot + adType) || (attempts[adType] >= maxAttempts)) {
+            return -1;
+        }
+
+        int attempt = attempts[adType]++;
+        long delay = noFill ? maxDelayMs : Math.min(maxDelayMs, baseDelayMs << Math.min(attempt, 20));
+        delay -= (long)(delay * jitter * random.nextDouble());
+
+        timer.schedule(firstSlot + adType, delay);
+
+        return delay;
+    }
+
+    int getAttempts(int adType)
+    {
+        return attempts[adType];
+    }
+
+    /**
+     * Forgets previous failures and drops any pending retry, after a successful or explicit load.
+     */
+    void reset(int adType)
+    {
+        attempts[adType] = 0;
+        timer.cancel(firstSlot + adType);
+    }
+}
@@ -0,0 +1,135 @@
+//
+// StateMirror.java
+// Kidoz Plugin
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package plugin.kidoz;
+
+import com.naef.jnlua.LuaState;
+
+import com.ansca.corona.CoronaLua;
+import com.ansca.corona.CoronaRuntime;
+import com.ansca.corona.CoronaRuntimeTask;
+import com.ansca.corona.CoronaRuntimeTaskDispatcher;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Copy of the placement states in a Lua table, so that polling them from Lua is a plain table read.
+ * <p/>
+ * The table maps each ad type name to the state name of its default placement, and its
+ * {@link #PLACEMENTS_KEY} table maps the name of each named placement to its state name. A state
+ * change only schedules this task, and any number of changes before it runs share that one task,
+ * which writes just the fields whose state differs from the one last written. A named placement
+ * appears with the first update after it was registered. The event queue also updates the table
+ * right before it delivers an event, since an event may reach the runtime ahead of this task. The
+ * instance is reused, so mirroring does not allocate.
+ * <p/>
+ * {@link #changed(CoronaRuntimeTaskDispatcher)} may be called on any thread, everything else runs on
+ * the Lua thread.
+ */
+class StateMirror implements CoronaRuntimeTask
+{
+    // indexed like the AdStateTable states
+    static final String[] STATE_NAMES = { "idle", "loading", "ready", "showing", "expired", "failed" };
+
+    static final String PLACEMENTS_KEY = "placements";
+
+    // a placement not written to the table yet
+    private static final int UNMIRRORED = -1;
+
+    private final AdStateTable states;
+    private final PlacementRegistry placements;
+    private final String[] adTypeNames;
+    private final int[] mirrored = new int[PlacementRegistry.MAX_PLACEMENTS];
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private int tableRef = CoronaLua.REFNIL;
+    private int placementsRef = CoronaLua.REFNIL;
+
+    StateMirror(AdStateTable states, PlacementRegistry placements, String[] adTypeNames)
+    {
+        this.states = states;
+        this.placements = placements;
+        this.adTypeNames = adTypeNames;
+    }
+
+    /**
+     * Creates the table from the current states and leaves it on top of the stack.
+     */
+    void create(LuaState L)
+    {
+        release(L);
+
+        L.newTable(0, adTypeNames.length + 1);
+
+        L.newTable();
+        placementsRef = CoronaLua.newRef(L, -1);
+        L.setField(-2, PLACEMENTS_KEY);
+
+        tableRef = CoronaLua.newRef(L, -1);
+
+        Arrays.fill(mirrored, UNMIRRORED);
+        update(L);
+    }
+
+    void release(LuaState L)
+    {
+        CoronaLua.deleteRef(L, tableRef);
+        CoronaLua.deleteRef(L, placementsRef);
+        tableRef = CoronaLua.REFNIL;
+        placementsRef = CoronaLua.REFNIL;
+    }
+
+    /**
+     * Schedules an update of the table, unless one is already pending.
+     */
+    void changed(CoronaRuntimeTaskDispatcher dispatcher)
+    {
+        if ((dispatcher != null) && scheduled.compareAndSet(false, true)) {
+            dispatcher.send(this);
+        }
+    }
+
+    @Override
+    public void executeUsing(CoronaRuntime runtime)
+    {
+        // cleared before reading, so a change made while this runs schedules another update
+        scheduled.set(false);
+
+        update(runtime.getLuaState());
+    }
+
+    /**
+     * Writes the states that changed since the last update to the table.
+     */
+    void update(LuaState L)
+    {
+        if (tableRef == CoronaLua.REFNIL) {
+            return;
+        }
+
+        int count = placements.size();
+
+        for (int i = 0; i < count; i++) {
+            int state = states.get(i);
+
+            if (state == mirrored[i]) {
+                continue;
+            }
+
+            mirrored[i] = state;
+
+            // default placements come first, one per ad type
+            boolean named = (i >= adTypeNames.length);
+
+            L.rawGet(LuaState.REGISTRYINDEX, named ? placementsRef : tableRef);
+            L.pushString(STATE_NAMES[state]);
+            L.setField(-2, named ? placements.get(i).name : adTypeNames[i]);
+            L.pop(1);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+//
+// UiExecutor.java
+// Kidoz Plugin
+//
+// Copyright (c) 2016 CoronaLabs inc. All rights reserved.
+
+// @formatter:off
+
+package plugin.kidoz;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the plugin's work on the UI thread in batches, one main looper message per batch.
+ * <p/>
+ * The first task submitted posts a single message, and every task submitted until it runs joins the
+ * same batch, so a burst of API calls from one Lua frame costs the UI thread one message instead of
+ * one per call. Optionally the batch waits for the next Choreographer frame, which collects everything
+ * submitted during the frame interval and runs it at the start of the next frame, before it is drawn.
+ * Tasks run in submission order; tasks submitted by a running task go to the next batch. Work that
+ * must not wait for a frame, which never comes while the app is in the background, is submitted with
+ * {@link #executeNow(Runnable)} and takes the batch it joins along without waiting.
+ * <p/>
+ * The UI thread time of each batch is recorded, in microseconds, along with the number of batches
+ * and tasks, so the plugin's share of the frame budget can be monitored. After warm-up neither
+ * submitting nor running a batch allocates.
+ * <p/>
+ * Tasks may be submitted from any thread. Statistics may be read and reset from any thread.
+ */
+class UiExecutor implements Runnable, Choreographer.FrameCallback
+{
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    // tasks waiting for the next batch, and the ones of the batch running (guarded by this)
+    private ArrayList<Runnable> pending = new ArrayList<>(INITIAL_CAPACITY);
+    private ArrayList<Runnable> running = new ArrayList<>(INITIAL_CAPACITY);
+    private boolean scheduled = false;
+    private boolean waitingForFrame = false;
+    private boolean cancelFrame = false;
+    private boolean urgent = false;
+
+    private volatile boolean alignToFrame = false;
+
+    private final LatencyHistogram batchTime = new LatencyHistogram();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong tasks = new AtomicLong();
+    private final AtomicLong maxTasks = new AtomicLong();
+
+    /**
+     * Makes batches posted from now on wait for the next frame before they run.
+     */
+    void setAlignToFrame(boolean alignToFrame)
+    {
+        this.alignToFrame = alignToFrame;
+    }
+
+    void execute(Runnable task)
+    {
+        submit(task, false);
+    }
+
+    /**
+     * Like {@link #execute(Runnable)}, but the batch runs with the next looper message even if it was
+     * waiting for a frame, such as for lifecycle work.
+     */
+    void executeNow(Runnable task)
+    {
+        submit(task, true);
+    }
+
+    /**
+     * Like {@link #executeNow(Runnable)}, and waits up to the given time for the task to finish. On the
+     * UI thread the task runs right away instead. Returns false if it did not finish in time, in which
+     * case it still runs later.
+     */
+    boolean executeAndWait(final Runnable task, long timeoutMs)
+    {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            task.run();
+            return true;
+        }
+
+        final CountDownLatch done = new CountDownLatch(1);
+        executeNow(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                }
+                finally {
+                    done.countDown();
+                }
+            }
+        });
+
+        try {
+            return done.await(timeoutMs, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Microseconds each batch kept the UI thread busy.
+     */
+    LatencyHistogram getBatchTime()
+    {
+        return batchTime;
+    }
+
+    long getBatches()
+    {
+        return batches.get();
+    }
+
+    long getTasks()
+    {
+        return tasks.get();
+    }
+
+    long getMaxTasks()
+    {
+        return maxTasks.get();
+    }
+
+    void resetCounters()
+    {
+        batchTime.reset();
+        batches.set(0);
+        tasks.set(0);
+        maxTasks.set(0);
+    }
+
+    private void submit(Runnable task, boolean now)
+    {
+        boolean post;
+        synchronized (this) {
+            pending.add(task);
+            urgent |= now;
+
+            // a batch waiting for its frame gets a message of its own
+            post = (! scheduled) || (now && waitingForFrame);
+            if (now && waitingForFrame) {
+                waitingForFrame = false;
+                cancelFrame = true;
+            }
+            scheduled = true;
+        }
+
+        if (post) {
+            handler.post(this);
+        }
+    }
+
+    // the batch message, which either runs the batch or hands it to the next frame (UI thread)
+    @Override
+    public void run()
+    {
+        boolean wait;
+        boolean cancel;
+        synchronized (this) {
+            // the batch already ran, or is already waiting for its frame
+            if ((! scheduled) || waitingForFrame) {
+                return;
+            }
+
+            wait = alignToFrame && (! urgent);
+            waitingForFrame = wait;
+            cancel = cancelFrame;
+            cancelFrame = false;
+        }
+
+        if (wait) {
+            Choreographer.getInstance().postFrameCallback(this);
+            return;
+        }
+
+        if (cancel) {
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+        runBatch();
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos)
+    {
+        synchronized (this) {
+            if (! waitingForFrame) {
+                return;
+            }
+        }
+
+        runBatch();
+    }
+
+    private void runBatch()
+    {
+        ArrayList<Runnable> batch;
+        synchronized (this) {
+            batch = pending;
+            pending = running;
+            running = batch;
+            scheduled = false;
+            waitingForFrame = false;
+            cancelFrame = false;
+            urgent = false;
+        }
+
+        long startedAt = System.nanoTime();
+        int count = batch.size();
+
+        try {
+            for (int i = 0; i < count; i++) {
+                batch.get(i).run();
+            }
+        }
+        finally {
+            batch.clear();
+
+            batchTime.record((System.nanoTime() - startedAt) / 1000);
+            batches.incrementAndGet();
+            tasks.addAndGet(count);
+
+            long currentMax;
+            while (count > (currentMax = maxTasks.get())) {
+                if (maxTasks.compareAndSet(currentMax, count)) {
+                    break;
+                }
+            }
+        }
+    }
+}